@@ -0,0 +1,24 @@
+package eco.market.cart;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartBatchRequest {
+    private List<Operation> operations;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Operation {
+        // "add" suma la cantidad, "update" la fija (0 quita la línea) y "remove" quita la línea
+        private String type;
+        private Integer productId;
+        private int quantity;
+    }
+}
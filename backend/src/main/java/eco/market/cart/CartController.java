@@ -1,5 +1,6 @@
 package eco.market.cart;
 
+import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -11,9 +12,11 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import eco.market.entity.Pedido;
 import eco.market.model.Cart;
 import eco.market.model.User;
 import eco.market.service.CartService;
+import eco.market.service.PedidoService;
 import lombok.RequiredArgsConstructor;
 
 @RestController
@@ -22,6 +25,7 @@ import lombok.RequiredArgsConstructor;
 public class CartController {
 
     private final CartService cartService;
+    private final PedidoService pedidoService;
 
     @GetMapping
     public ResponseEntity<Cart> getCart(@AuthenticationPrincipal User user) {
@@ -33,6 +37,25 @@ public class CartController {
         return ResponseEntity.ok(cartService.addItemToCart(user, request));
     }
 
+    // Varias altas, cambios y bajas en una sola llamada (restaurar un carrito, "volver a comprar")
+    @PostMapping("/items:batch")
+    public ResponseEntity<Cart> applyBatch(@AuthenticationPrincipal User user, @RequestBody CartBatchRequest request) {
+        return ResponseEntity.ok(cartService.applyBatch(user, request));
+    }
+
+    // El pedido sale del carrito guardado en el servidor, con los precios del catálogo; los errores
+    // (sin stock, carrito vacío) se devuelven como en POST /api/pedidos
+    @PostMapping("/checkout")
+    public ResponseEntity<?> checkout(@AuthenticationPrincipal User user, @Valid @RequestBody CheckoutRequest request) {
+        try {
+            Pedido pedido = pedidoService.crearPedidoDesdeCarrito(user, request.getShippingAddress(),
+                    request.getPaymentMethod());
+            return ResponseEntity.ok(pedido);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
     @PutMapping("/items/{productId}")
     public ResponseEntity<Cart> updateItem(
             @AuthenticationPrincipal User user,
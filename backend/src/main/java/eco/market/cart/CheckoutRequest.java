@@ -0,0 +1,15 @@
+package eco.market.cart;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutRequest {
+    @NotBlank(message = "Shipping address is required")
+    private String shippingAddress;
+    private String paymentMethod;
+}
@@ -0,0 +1,25 @@
+package eco.market.config;
+
+import eco.market.repository.PedidoVendedorRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+// Rellena Pedidos_Vendedor con los pedidos creados antes de que existiera la tabla.
+// Se ejecuta antes de aceptar peticiones, así no compite con los pedidos nuevos.
+@Component
+@DependsOn("entityManagerFactory")
+public class PedidosVendedorInicializador {
+
+    @Autowired
+    private PedidoVendedorRepository pedidoVendedorRepository;
+
+    @PostConstruct
+    public void rellenar() {
+        int filas = pedidoVendedorRepository.rellenarDesdePedidos();
+        if (filas > 0) {
+            System.out.println("Pedidos_Vendedor: " + filas + " filas creadas a partir de pedidos existentes");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package eco.market.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Detalles_Pedido, Notificaciones y Reseñas pasaron de IDENTITY a secuencias con pool.
+// En una base de datos con filas previas cada secuencia debe arrancar por encima del id
+// máximo más un bloque completo, porque Hibernate reparte ids hacia abajo desde el valor leído.
+@Component
+@DependsOn("entityManagerFactory")
+public class SecuenciasInicializador {
+
+    // Debe coincidir con el allocationSize de las entidades
+    private static final int BLOQUE = 50;
+
+    // secuencia, tabla, columna id
+    private static final String[][] SECUENCIAS = {
+            {"detalles_pedido_seq", "detalles_pedido", "detalle_id"},
+            {"notificaciones_seq", "notificaciones", "notificacion_id"},
+            {"resenas_seq", "reseñas", "reseña_id"}
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void ajustarSecuencias() {
+        String producto = jdbcTemplate.execute((ConnectionCallback<String>) conexion ->
+                conexion.getMetaData().getDatabaseProductName().toLowerCase());
+        // MySQL no tiene secuencias: Hibernate usa una tabla con una columna next_val
+        boolean tablaSecuencia = producto.contains("mysql") || producto.contains("mariadb");
+
+        for (String[] secuencia : SECUENCIAS) {
+            Long maximo = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(" + secuencia[2] + "), 0) FROM " + secuencia[1], Long.class);
+            if (maximo == null || maximo == 0) {
+                continue;
+            }
+            long inicio = maximo + BLOQUE + 1;
+            if (tablaSecuencia) {
+                // Nunca hacia atrás: otro nodo puede tener ya un bloque reservado
+                jdbcTemplate.update("UPDATE " + secuencia[0] + " SET next_val = GREATEST(next_val, ?)", inicio);
+            } else {
+                jdbcTemplate.execute("ALTER SEQUENCE " + secuencia[0] + " RESTART WITH " + inicio);
+            }
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package eco.market.controller;
 
+import eco.market.dto.ProductoPaginaResponse;
 import eco.market.dto.ProductoResponse;
-import eco.market.entity.Producto;
+import eco.market.dto.VerificacionLoteRequest;
 import eco.market.repository.ProductoRepository;
+import eco.market.service.AlmacenCarritos;
+import eco.market.service.DespachadorEventos;
+import eco.market.service.ProductoCambiadoEvent;
+import eco.market.service.ProductoJsonCache;
+import eco.market.service.ProductoService;
+import eco.market.service.SecuenciadorVentasFlash;
+import jakarta.validation.Valid;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/admin")
@@ -19,26 +28,55 @@ public class AdminController {
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ProductoJsonCache productoJsonCache;
+
+    @Autowired
+    private DespachadorEventos despachadorEventos;
+
+    @Autowired
+    private SecuenciadorVentasFlash secuenciadorVentasFlash;
+
+    @Autowired
+    private AlmacenCarritos almacenCarritos;
+
+    // Los más antiguos primero y acotado; si hay más, la cabecera X-Siguiente-Cursor sirve para
+    // seguir en /productos/pendientes/pagina
     @GetMapping("/productos/pendientes")
     public ResponseEntity<List<ProductoResponse>> obtenerProductosPendientes() {
-        // En una app real, filtraríamos por estaVerificado = false
-        // Como no tenemos un método específico en el repo para esto aún,
-        // podemos usar findAll y filtrar, o agregar el método al repo.
-        // Agreguemos el método al repo primero o usemos uno existente.
-        // Revisando ProductoRepository, tenemos
-        // findByEstaActivoTrueAndEstaVerificadoTrue
-        // Necesitamos lo opuesto o algo general.
-
-        // Por ahora, para simplificar y no tocar el repo de nuevo si falla,
-        // vamos a traer todos y filtrar en memoria (no ideal para prod pero ok para
-        // MVP)
-        List<Producto> productos = productoRepository.findAll();
-        List<ProductoResponse> pendientes = productos.stream()
-                .filter(p -> !p.getEstaVerificado() && p.getEstaActivo())
-                .map(this::mapToResponse)
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(pendientes);
+        ProductoPaginaResponse pendientes = productoService.obtenerProductosPendientes();
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+        if (pendientes.getSiguienteCursor() != null) {
+            respuesta.header("X-Siguiente-Cursor", pendientes.getSiguienteCursor());
+        }
+        return respuesta.body(pendientes.getProductos());
+    }
+
+    @GetMapping("/productos/pendientes/pagina")
+    public ResponseEntity<?> obtenerPaginaPendientes(@RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer tamano) {
+        try {
+            ProductoPaginaResponse pagina = productoService.obtenerPaginaPendientes(cursor, tamano);
+            return ResponseEntity.ok(pagina);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
+    @PutMapping("/productos/verificar")
+    public ResponseEntity<?> verificarProductos(@Valid @RequestBody VerificacionLoteRequest request) {
+        try {
+            int actualizados = productoService.verificarProductos(request.getProductoIds(), request.getAprobado());
+            return ResponseEntity.ok(Map.of("actualizados", actualizados));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
     }
 
     @PutMapping("/productos/{id}/verificar")
@@ -52,25 +90,38 @@ public class AdminController {
                 producto.setEstaActivo(false);
             }
             productoRepository.save(producto);
+            eventPublisher.publishEvent(new ProductoCambiadoEvent(id));
             return ResponseEntity.ok("Producto " + (aprobado ? "aprobado" : "rechazado"));
         }).orElse(ResponseEntity.notFound().build());
     }
 
-    // Helper para mapear a DTO (duplicado de Service, idealmente usar Mapper)
-    private ProductoResponse mapToResponse(Producto producto) {
-        ProductoResponse response = new ProductoResponse();
-        response.setProductoId(producto.getProductoId());
-        response.setNombreProducto(producto.getNombreProducto());
-        response.setDescripcion(producto.getDescripcion());
-        response.setPrecio(producto.getPrecio());
-        response.setStock(producto.getStock());
-        response.setImagenPrincipal(producto.getImagenPrincipal());
-        response.setNombreCategoria(producto.getCategoria().getNombreCategoria());
-        response.setNombreVendedor(producto.getVendedor().getNombre() + " " + producto.getVendedor().getApellido());
-        response.setEsOrganico(producto.getEsOrganico());
-        response.setEsVegano(producto.getEsVegano());
-        response.setPeso(producto.getPeso());
-        response.setUnidadMedida(producto.getUnidadMedida());
-        return response;
+    @GetMapping("/metricas/cache-productos")
+    public ResponseEntity<Map<String, Object>> obtenerMetricasCacheProductos() {
+        return ResponseEntity.ok(productoJsonCache.metricas());
+    }
+
+    @GetMapping("/metricas/eventos-salida")
+    public ResponseEntity<Map<String, Object>> obtenerMetricasEventosSalida() {
+        return ResponseEntity.ok(despachadorEventos.metricas());
+    }
+
+    // Activa o desactiva el modo venta flash de un producto (solo en este nodo)
+    @PutMapping("/productos/{id}/venta-flash")
+    public ResponseEntity<?> marcarVentaFlash(@PathVariable Integer id, @RequestParam boolean activa) {
+        if (!productoRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        secuenciadorVentasFlash.marcar(id, activa);
+        return ResponseEntity.ok(Map.of("productos", secuenciadorVentasFlash.productos()));
+    }
+
+    @GetMapping("/metricas/ventas-flash")
+    public ResponseEntity<Map<String, Object>> obtenerMetricasVentasFlash() {
+        return ResponseEntity.ok(secuenciadorVentasFlash.metricas());
+    }
+
+    @GetMapping("/metricas/carritos")
+    public ResponseEntity<Map<String, Object>> obtenerMetricasCarritos() {
+        return ResponseEntity.ok(almacenCarritos.metricas());
     }
 }
@@ -2,9 +2,11 @@ package eco.market.controller;
 
 import eco.market.entity.Categoria;
 import eco.market.service.ProductoService;
+import eco.market.service.VersionColecciones;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import java.util.List;
 
 @RestController
@@ -14,10 +16,18 @@ public class CategoriaController {
     
     @Autowired
     private ProductoService productoService;
+
+    @Autowired
+    private VersionColecciones versionColecciones;
     
     @GetMapping
-    public ResponseEntity<List<Categoria>> obtenerCategorias() {
+    public ResponseEntity<List<Categoria>> obtenerCategorias(WebRequest webRequest) {
+        String etag = versionColecciones.etag(VersionColecciones.Coleccion.CATEGORIAS);
+        long ultimaModificacion = versionColecciones.ultimaModificacion(VersionColecciones.Coleccion.CATEGORIAS);
+        if (webRequest.checkNotModified(etag, ultimaModificacion)) {
+            return null;
+        }
         List<Categoria> categorias = productoService.obtenerCategorias();
-        return ResponseEntity.ok(categorias);
+        return ResponseEntity.ok().eTag(etag).lastModified(ultimaModificacion).body(categorias);
     }
 }
\ No newline at end of file
@@ -3,9 +3,11 @@ package eco.market.controller;
 import eco.market.dto.CuponRequest;
 import eco.market.entity.Cupon;
 import eco.market.service.CuponService;
+import eco.market.service.VersionColecciones;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import java.util.List;
 
 @RestController
@@ -16,6 +18,9 @@ public class CuponController {
     @Autowired
     private CuponService cuponService;
 
+    @Autowired
+    private VersionColecciones versionColecciones;
+
     @PostMapping
     public ResponseEntity<?> crearCupon(@RequestBody CuponRequest request) {
         try {
@@ -47,9 +52,14 @@ public class CuponController {
     }
 
     @GetMapping("/activos")
-    public ResponseEntity<List<Cupon>> obtenerCuponesActivos() {
+    public ResponseEntity<List<Cupon>> obtenerCuponesActivos(WebRequest webRequest) {
+        String etag = versionColecciones.etag(VersionColecciones.Coleccion.CUPONES);
+        long ultimaModificacion = versionColecciones.ultimaModificacion(VersionColecciones.Coleccion.CUPONES);
+        if (webRequest.checkNotModified(etag, ultimaModificacion)) {
+            return null;
+        }
         List<Cupon> cupones = cuponService.obtenerCuponesActivos();
-        return ResponseEntity.ok(cupones);
+        return ResponseEntity.ok().eTag(etag).lastModified(ultimaModificacion).body(cupones);
     }
 
     @DeleteMapping("/{id}")
@@ -1,7 +1,11 @@
 package eco.market.controller;
 
+import eco.market.dto.PedidoDetalleResponse;
+import eco.market.dto.PedidoPaginaResponse;
 import eco.market.dto.PedidoRequest;
+import eco.market.dto.PedidoVendedorPaginaResponse;
 import eco.market.entity.Pedido;
+import eco.market.service.IdempotenciaPedidosService;
 import eco.market.service.PedidoService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -19,11 +23,18 @@ public class PedidoController {
     @Autowired
     private PedidoService pedidoService;
 
+    @Autowired
+    private IdempotenciaPedidosService idempotenciaPedidosService;
+
+    // Con Idempotency-Key, los reintentos del cliente devuelven el pedido ya creado
     @PostMapping
-    public ResponseEntity<?> crearPedido(@RequestBody PedidoRequest request) {
+    public ResponseEntity<?> crearPedido(@RequestBody PedidoRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
             String email = obtenerEmailAutenticado();
-            Pedido pedido = pedidoService.crearPedido(request, email);
+            Pedido pedido = idempotencyKey == null
+                    ? pedidoService.crearPedido(request, email)
+                    : idempotenciaPedidosService.crearPedido(request, email, idempotencyKey);
             return ResponseEntity.ok(pedido);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error: " + e.getMessage());
@@ -41,6 +52,29 @@ public class PedidoController {
         }
     }
 
+    @GetMapping("/mis-pedidos/pagina")
+    public ResponseEntity<?> obtenerPaginaMisPedidos(@RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer tamano) {
+        try {
+            String email = obtenerEmailAutenticado();
+            PedidoPaginaResponse pagina = pedidoService.obtenerPaginaMisPedidos(email, cursor, tamano);
+            return ResponseEntity.ok(pagina);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> obtenerDetallePedido(@PathVariable Integer id) {
+        try {
+            String email = obtenerEmailAutenticado();
+            PedidoDetalleResponse detalle = pedidoService.obtenerDetallePedido(email, id);
+            return ResponseEntity.ok(detalle);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
     @PutMapping("/{id}/estado")
     public ResponseEntity<?> actualizarEstadoPedido(@PathVariable Integer id, @RequestParam String estado) {
         try {
@@ -69,16 +103,20 @@ public class PedidoController {
         return authentication.getName();
     }
 
+    // Página de pedidos del vendedor, opcionalmente por estado. El cuerpo sigue siendo una lista;
+    // el cursor de la página siguiente va en la cabecera X-Siguiente-Cursor
     @GetMapping("/vendedor")
-    public ResponseEntity<?> obtenerPedidosVendedor() {
+    public ResponseEntity<?> obtenerPedidosVendedor(@RequestParam(required = false) String estado,
+            @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer tamano) {
         try {
             String email = obtenerEmailAutenticado();
-            System.out.println("DEBUG: Fetching orders for seller email: " + email);
-            List<Pedido> pedidos = pedidoService.obtenerPedidosVendedor(email);
-            System.out.println("DEBUG: Found " + pedidos.size() + " orders for seller: " + email);
-            return ResponseEntity.ok(pedidos);
+            PedidoVendedorPaginaResponse pagina = pedidoService.obtenerPedidosVendedor(email, estado, cursor, tamano);
+            ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+            if (pagina.getSiguienteCursor() != null) {
+                respuesta.header("X-Siguiente-Cursor", pagina.getSiguienteCursor());
+            }
+            return respuesta.body(pagina.getPedidos());
         } catch (Exception e) {
-            e.printStackTrace();
             return ResponseEntity.badRequest().body("Error: " + e.getMessage());
         }
     }
@@ -1,16 +1,36 @@
 package eco.market.controller;
 
+import eco.market.dto.AjusteInventarioRequest;
+import eco.market.dto.AjusteInventarioResponse;
+import eco.market.dto.FacetasResponse;
+import eco.market.dto.ImportacionResponse;
+import eco.market.dto.ProductoPaginaResponse;
 import eco.market.dto.ProductoResponse;
+import eco.market.dto.SugerenciaResponse;
 import eco.market.entity.Categoria;
+import eco.market.service.ExportacionProductosService;
+import eco.market.service.FormatoCatalogo;
+import eco.market.service.ImportacionProductosService;
+import eco.market.service.ProductoJsonCache;
 import eco.market.service.ProductoService;
+import eco.market.service.VersionColecciones;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import eco.market.dto.ProductoRequest;
 import jakarta.validation.Valid;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/productos")
@@ -20,17 +40,113 @@ public class ProductoController {
     @Autowired
     private ProductoService productoService;
 
+    @Autowired
+    private VersionColecciones versionColecciones;
+
+    @Autowired
+    private ProductoJsonCache productoJsonCache;
+
+    @Autowired
+    private ExportacionProductosService exportacionProductosService;
+
+    @Autowired
+    private ImportacionProductosService importacionProductosService;
+
     @GetMapping
-    public ResponseEntity<List<ProductoResponse>> obtenerTodosLosProductos() {
+    public ResponseEntity<List<ProductoResponse>> obtenerTodosLosProductos(WebRequest webRequest) {
+        String etag = versionColecciones.etag(VersionColecciones.Coleccion.PRODUCTOS);
+        long ultimaModificacion = versionColecciones.ultimaModificacion(VersionColecciones.Coleccion.PRODUCTOS);
+        if (webRequest.checkNotModified(etag, ultimaModificacion)) {
+            return null;
+        }
         List<ProductoResponse> productos = productoService.obtenerTodosLosProductos();
-        return ResponseEntity.ok(productos);
+        return ResponseEntity.ok().eTag(etag).lastModified(ultimaModificacion).body(productos);
+    }
+
+    @GetMapping("/pagina")
+    public ResponseEntity<?> obtenerPaginaProductos(@RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer tamano) {
+        try {
+            ProductoPaginaResponse pagina = productoService.obtenerPaginaProductos(cursor, tamano);
+            return ResponseEntity.ok(pagina);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/buscar")
+    public ResponseEntity<?> buscarProductos(@RequestParam String q, @RequestParam(required = false) Integer limite) {
+        try {
+            List<ProductoResponse> productos = productoService.buscarProductos(q, limite);
+            return ResponseEntity.ok(productos);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/sugerencias")
+    public ResponseEntity<List<SugerenciaResponse>> obtenerSugerencias(@RequestParam String prefix,
+            @RequestParam(required = false) Integer limite) {
+        return ResponseEntity.ok(productoService.obtenerSugerencias(prefix, limite));
+    }
+
+    @GetMapping("/filtrar")
+    public ResponseEntity<FacetasResponse> filtrarProductos(
+            @RequestParam(required = false) Boolean esOrganico,
+            @RequestParam(required = false) Boolean esVegano,
+            @RequestParam(required = false) List<Integer> categoriaId,
+            @RequestParam(required = false) BigDecimal precioMin,
+            @RequestParam(required = false) BigDecimal precioMax,
+            @RequestParam(required = false) Integer pagina,
+            @RequestParam(required = false) Integer tamano) {
+        FacetasResponse resultado = productoService.filtrarProductos(esOrganico, esVegano, categoriaId,
+                precioMin, precioMax, pagina, tamano);
+        return ResponseEntity.ok(resultado);
+    }
+
+    // Exportación completa del catálogo activo para socios; se escribe directamente en la respuesta
+    @GetMapping("/export")
+    public void exportarProductos(@RequestParam(defaultValue = "ndjson") String formato,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletResponse response) throws IOException {
+        FormatoCatalogo tipo;
+        try {
+            tipo = FormatoCatalogo.desde(formato);
+        } catch (Exception e) {
+            // Sin sendError: el reenvío a /error no es público y acabaría en 403
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write("Error: " + e.getMessage());
+            return;
+        }
+
+        String extension = tipo == FormatoCatalogo.CSV ? "csv" : "ndjson";
+        response.setContentType(tipo == FormatoCatalogo.CSV
+                ? "text/csv;charset=UTF-8" : "application/x-ndjson;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"catalogo." + extension + "\"");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        OutputStream salida = response.getOutputStream();
+        if (gzip) {
+            salida = new GZIPOutputStream(salida, 64 * 1024);
+        }
+        exportacionProductosService.exportar(tipo, salida);
+        if (salida instanceof GZIPOutputStream gzipSalida) {
+            gzipSalida.finish();
+        }
+        salida.flush();
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<?> obtenerProductoPorId(@PathVariable Integer id) {
         try {
             ProductoResponse producto = productoService.obtenerProductoPorId(id);
-            return ResponseEntity.ok(producto);
+            // Se escriben directamente los bytes JSON ya serializados de la caché
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(productoJsonCache.obtener(producto));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error: " + e.getMessage());
         }
@@ -53,6 +169,32 @@ public class ProductoController {
         }
     }
 
+    // Alta masiva: el cuerpo (CSV con cabecera o NDJSON) se procesa en streaming sin cargarlo en memoria
+    @PostMapping("/importar")
+    public ResponseEntity<?> importarProductos(@RequestParam(defaultValue = "ndjson") String formato,
+            HttpServletRequest request) {
+        try {
+            String email = obtenerEmailAutenticado();
+            ImportacionResponse resultado = importacionProductosService.importar(
+                    FormatoCatalogo.desde(formato), request.getInputStream(), email);
+            return ResponseEntity.ok(resultado);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
+    // Ajuste masivo de precio y stock de los productos del vendedor autenticado
+    @PatchMapping("/inventario")
+    public ResponseEntity<?> ajustarInventario(@RequestBody List<AjusteInventarioRequest> ajustes) {
+        try {
+            String email = obtenerEmailAutenticado();
+            AjusteInventarioResponse resultado = productoService.ajustarInventario(ajustes, email);
+            return ResponseEntity.ok(resultado);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<?> actualizarProducto(@PathVariable Integer id, @Valid @RequestBody ProductoRequest request) {
         try {
@@ -0,0 +1,18 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AjusteInventarioRequest {
+    private Integer productoId;
+    // precio y stock son opcionales: solo se cambian los que vienen informados
+    private BigDecimal precio;
+    private Integer stock;
+    // Si se envía, la fila solo se aplica cuando coincide con la versión actual del producto
+    private Long version;
+}
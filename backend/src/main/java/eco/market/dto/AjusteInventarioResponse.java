@@ -0,0 +1,26 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AjusteInventarioResponse {
+    private int actualizados;
+    // Productos cuya versión ya no coincide con la enviada
+    private List<Integer> conflictos = new ArrayList<>();
+    private List<ErrorAjuste> errores = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ErrorAjuste {
+        // Posición del ajuste en la solicitud, empezando en 1
+        private int fila;
+        private String mensaje;
+    }
+}
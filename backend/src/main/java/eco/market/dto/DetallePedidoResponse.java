@@ -0,0 +1,19 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetallePedidoResponse {
+    private Integer detalleId;
+    private Integer productoId;
+    private String nombreProducto;
+    private String imagenPrincipal;
+    private Integer cantidad;
+    private BigDecimal precioUnitario;
+    private BigDecimal subtotal;
+}
@@ -0,0 +1,17 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetasResponse {
+    private long total;
+    private List<ProductoResponse> productos;
+    // Conteos por faceta (esOrganico, esVegano, categoria, precio) -> valor -> número de productos
+    private Map<String, Map<String, Long>> facetas;
+}
@@ -0,0 +1,26 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportacionResponse {
+    private long procesadas;
+    private long importadas;
+    private long rechazadas;
+    // Solo se listan los primeros errores; rechazadas lleva el conteo completo
+    private List<ErrorFila> errores = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ErrorFila {
+        private long fila;
+        private String mensaje;
+    }
+}
@@ -0,0 +1,17 @@
+package eco.market.dto;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoDetalleResponse {
+    // Se serializa con los mismos campos del resumen al primer nivel
+    @JsonUnwrapped
+    private PedidoResumenResponse pedido;
+    private List<DetallePedidoResponse> detalles;
+}
@@ -0,0 +1,21 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoResumenResponse {
+    private Integer pedidoId;
+    private LocalDateTime fechaPedido;
+    private String estado;
+    private BigDecimal total;
+    private String direccionEnvio;
+    private String metodoPago;
+    // Número de líneas del pedido; el detalle se pide aparte
+    private Integer totalLineas;
+}
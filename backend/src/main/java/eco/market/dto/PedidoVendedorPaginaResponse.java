@@ -0,0 +1,15 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoVendedorPaginaResponse {
+    private List<PedidoVendedorResponse> pedidos;
+    // Token opaco para pedir la página siguiente; null cuando no hay más resultados
+    private String siguienteCursor;
+}
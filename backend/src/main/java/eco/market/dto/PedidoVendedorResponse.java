@@ -0,0 +1,31 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Mismos nombres que el Pedido que devolvía antes /api/pedidos/vendedor, sin las líneas
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoVendedorResponse {
+    private Integer pedidoId;
+    private LocalDateTime fechaPedido;
+    private String estado;
+    private BigDecimal total;
+    private BigDecimal totalVendedor;
+    private Integer totalLineas;
+    private String direccionEnvio;
+    private Comprador usuario;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Comprador {
+        private String nombre;
+        private String apellido;
+        private String email;
+    }
+}
@@ -1,10 +1,15 @@
 package eco.market.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class ProductoResponse {
     private Integer productoId;
     private String nombreProducto;
@@ -19,7 +24,12 @@ public class ProductoResponse {
     private String unidadMedida;
     private BigDecimal calificacionPromedio;
     private Integer totalCalificaciones;
+    private Integer categoriaId;
     private String nombreCategoria;
     private String nombreVendedor;
     private LocalDateTime fechaCreacion;
+
+    // Versión de la fila (@Version); solo se usa internamente como clave de caché
+    @JsonIgnore
+    private Long version;
 }
\ No newline at end of file
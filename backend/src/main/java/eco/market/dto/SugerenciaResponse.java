@@ -0,0 +1,15 @@
+package eco.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SugerenciaResponse {
+    private String texto;
+    // "producto" o "categoria"
+    private String tipo;
+    private Integer id;
+}
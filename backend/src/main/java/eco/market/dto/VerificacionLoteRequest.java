@@ -0,0 +1,15 @@
+package eco.market.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class VerificacionLoteRequest {
+    @NotEmpty(message = "Debe indicar al menos un producto")
+    private List<Integer> productoIds;
+
+    @NotNull(message = "Debe indicar si se aprueban o se rechazan")
+    private Boolean aprobado;
+}
@@ -0,0 +1,36 @@
+package eco.market.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+// Resultado de un POST /api/pedidos con cabecera Idempotency-Key, compartido entre nodos
+@Entity
+@Table(name = "Claves_Idempotencia", indexes = {
+        @Index(name = "idx_claves_idempotencia_expiracion", columnList = "fecha_expiracion")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClaveIdempotencia {
+    // SHA-256 del email del usuario y la clave enviada por el cliente
+    @Id
+    @Column(name = "clave", length = 64)
+    private String clave;
+
+    // SHA-256 del cuerpo de la solicitud, para rechazar la misma clave con otro pedido
+    @Column(name = "huella_solicitud", nullable = false, length = 64)
+    private String huellaSolicitud;
+
+    // Null mientras el pedido se está creando
+    @Column(name = "pedido_id")
+    private Integer pedidoId;
+
+    @Column(name = "fecha_creacion", nullable = false)
+    private LocalDateTime fechaCreacion = LocalDateTime.now();
+
+    @Column(name = "fecha_expiracion", nullable = false)
+    private LocalDateTime fechaExpiracion;
+}
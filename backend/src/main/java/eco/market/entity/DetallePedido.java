@@ -13,7 +13,9 @@ import java.math.BigDecimal;
 @AllArgsConstructor
 public class DetallePedido {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia con pool (tabla de secuencia en MySQL) para que Hibernate pueda agrupar los INSERT
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "detalle_pedido_seq")
+    @SequenceGenerator(name = "detalle_pedido_seq", sequenceName = "detalles_pedido_seq", allocationSize = 50)
     @Column(name = "detalle_id")
     private Integer detalleId;
 
@@ -0,0 +1,20 @@
+package eco.market.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Hasta qué reserva del diario del inventario en memoria está ya escrita en Productos.stock.
+// Se actualiza en la misma transacción que el descuento, así que el arranque sabe qué reaplicar.
+@Entity
+@Table(name = "Diario_Inventario")
+@Data
+@NoArgsConstructor
+public class DiarioInventario {
+    @Id
+    @Column(name = "diario_id")
+    private Integer diarioId;
+
+    @Column(name = "secuencia_volcada", nullable = false)
+    private Long secuenciaVolcada;
+}
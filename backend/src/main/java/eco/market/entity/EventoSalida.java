@@ -0,0 +1,59 @@
+package eco.market.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
+
+// Bandeja de salida: efectos secundarios de un pedido (notificaciones, correos) que se guardan
+// en la misma transacción y se despachan en segundo plano después del commit
+@Entity
+@Table(name = "Eventos_Salida", indexes = {
+        @Index(name = "idx_eventos_salida_pendientes", columnList = "estado, tipo, proximo_intento, evento_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoSalida {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "evento_id")
+    private Long eventoId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo", nullable = false, length = 20)
+    private TipoEvento tipo;
+
+    // JSON con los datos del efecto
+    @Column(name = "carga", nullable = false, columnDefinition = "TEXT")
+    private String carga;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "estado", nullable = false, length = 20)
+    private EstadoEvento estado = EstadoEvento.PENDIENTE;
+
+    @Column(name = "intentos", nullable = false)
+    private Integer intentos = 0;
+
+    @Column(name = "ultimo_error", length = 500)
+    private String ultimoError;
+
+    @Column(name = "fecha_creacion", nullable = false)
+    private LocalDateTime fechaCreacion = LocalDateTime.now();
+
+    // También sirve de reserva: al tomar un lote se aplaza para que otro nodo no lo repita
+    @Column(name = "proximo_intento", nullable = false)
+    private LocalDateTime proximoIntento = LocalDateTime.now();
+
+    @Column(name = "fecha_procesado")
+    private LocalDateTime fechaProcesado;
+
+    public enum TipoEvento {
+        NOTIFICACION, CORREO_COMPRA
+    }
+
+    public enum EstadoEvento {
+        PENDIENTE, ENVIADO, FALLIDO
+    }
+}
@@ -13,7 +13,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class Notificacion {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notificacion_seq")
+    @SequenceGenerator(name = "notificacion_seq", sequenceName = "notificaciones_seq", allocationSize = 50)
     @Column(name = "notificacion_id")
     private Integer notificacionId;
     
@@ -9,7 +9,9 @@ import java.math.BigDecimal;
 import java.util.List;
 
 @Entity
-@Table(name = "Pedidos")
+@Table(name = "Pedidos", indexes = {
+        @Index(name = "idx_pedidos_usuario_fecha", columnList = "usuario_id, fecha_pedido, pedido_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,86 @@
+package eco.market.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Modelo de lectura del panel del vendedor: una fila por pedido y vendedor con lo que el panel
+// muestra, copiado al crear el pedido para no unir Pedidos, Detalles_Pedido y Productos
+@Entity
+@Table(name = "Pedidos_Vendedor", indexes = {
+        @Index(name = "idx_pedidos_vendedor_fecha", columnList = "vendedor_id, fecha_pedido, pedido_id"),
+        @Index(name = "idx_pedidos_vendedor_estado", columnList = "vendedor_id, estado, fecha_pedido, pedido_id")
+})
+@IdClass(PedidoVendedor.Clave.class)
+@Data
+@NoArgsConstructor
+public class PedidoVendedor implements Persistable<PedidoVendedor.Clave> {
+    @Id
+    @Column(name = "pedido_id")
+    private Integer pedidoId;
+
+    @Id
+    @Column(name = "vendedor_id")
+    private Integer vendedorId;
+
+    @Column(name = "fecha_pedido", nullable = false)
+    private LocalDateTime fechaPedido;
+
+    @Column(name = "estado", length = 20)
+    private String estado;
+
+    // Total del pedido completo y parte que corresponde a este vendedor
+    @Column(name = "total", nullable = false, precision = 10, scale = 2)
+    private BigDecimal total;
+
+    @Column(name = "total_vendedor", nullable = false, precision = 10, scale = 2)
+    private BigDecimal totalVendedor;
+
+    @Column(name = "total_lineas", nullable = false)
+    private Integer totalLineas;
+
+    @Column(name = "nombre_comprador", length = 100)
+    private String nombreComprador;
+
+    @Column(name = "apellido_comprador", length = 100)
+    private String apellidoComprador;
+
+    @Column(name = "email_comprador", length = 150)
+    private String emailComprador;
+
+    @Column(name = "direccion_envio", length = 255)
+    private String direccionEnvio;
+
+    // Las filas solo se insertan una vez: saveAll las persiste sin consultar antes si existen
+    @Transient
+    private boolean nueva = true;
+
+    @PostLoad
+    @PostPersist
+    void marcarGuardada() {
+        nueva = false;
+    }
+
+    @Override
+    public Clave getId() {
+        return new Clave(pedidoId, vendedorId);
+    }
+
+    @Override
+    public boolean isNew() {
+        return nueva;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Clave implements Serializable {
+        private Integer pedidoId;
+        private Integer vendedorId;
+    }
+}
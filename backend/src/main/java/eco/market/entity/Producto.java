@@ -8,7 +8,11 @@ import java.time.LocalDateTime;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "Productos")
+// El catálogo (activos y verificados) y la cola de moderación (activos sin verificar) filtran por igualdad
+// en las dos columnas y ordenan por fecha, así que ambos comparten este índice
+@Table(name = "Productos", indexes = {
+        @Index(name = "idx_productos_catalogo", columnList = "esta_activo, esta_verificado, fecha_creacion, producto_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -13,7 +13,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class Resena {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "resena_seq")
+    @SequenceGenerator(name = "resena_seq", sequenceName = "resenas_seq", allocationSize = 50)
     @Column(name = "reseña_id")
     private Integer resenaId;
 
@@ -0,0 +1,33 @@
+package eco.market.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Stock retenido por un producto en el carrito de un usuario hasta fecha_expiracion.
+// La cantidad ya está descontada de Productos.stock; al vencer se devuelve.
+@Entity
+@Table(name = "Reservas_Carrito", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_reservas_carrito_usuario_producto", columnNames = { "usuario_id", "producto_id" })
+})
+@Data
+@NoArgsConstructor
+public class ReservaCarrito {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "reserva_id")
+    private Long reservaId;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Integer usuarioId;
+
+    @Column(name = "producto_id", nullable = false)
+    private Integer productoId;
+
+    @Column(name = "cantidad", nullable = false)
+    private Integer cantidad;
+
+    @Column(name = "fecha_expiracion", nullable = false)
+    private LocalDateTime fechaExpiracion;
+}
@@ -3,6 +3,8 @@ package eco.market.repository;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import eco.market.model.Cart;
@@ -11,4 +13,8 @@ import eco.market.model.User;
 @Repository
 public interface CartRepository extends JpaRepository<Cart, Integer> {
     Optional<Cart> findByUser(User user);
+
+    // Carrito con sus líneas y productos en una sola consulta
+    @Query("SELECT DISTINCT c FROM Cart c LEFT JOIN FETCH c.items i LEFT JOIN FETCH i.product WHERE c.user = :user")
+    Optional<Cart> findConItemsByUser(@Param("user") User user);
 }
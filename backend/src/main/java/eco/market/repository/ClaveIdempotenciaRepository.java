@@ -0,0 +1,56 @@
+package eco.market.repository;
+
+import eco.market.entity.ClaveIdempotencia;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ClaveIdempotenciaRepository extends JpaRepository<ClaveIdempotencia, String> {
+
+    // Proyección: se relee de la base de datos en cada consulta, sin pasar por el contexto de persistencia
+    interface Estado {
+        String getHuellaSolicitud();
+
+        Integer getPedidoId();
+
+        LocalDateTime getFechaCreacion();
+
+        LocalDateTime getFechaExpiracion();
+    }
+
+    Optional<Estado> findEstadoByClave(String clave);
+
+    // INSERT explícito para que una clave ya registrada por otro nodo falle por clave duplicada
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO claves_idempotencia (clave, huella_solicitud, fecha_creacion, fecha_expiracion) "
+            + "VALUES (:clave, :huella, :creacion, :expiracion)", nativeQuery = true)
+    int registrar(@Param("clave") String clave, @Param("huella") String huella,
+            @Param("creacion") LocalDateTime creacion, @Param("expiracion") LocalDateTime expiracion);
+
+    // La fecha de creación identifica la reserva: 0 filas si otra solicitud la reclamó mientras tanto
+    @Modifying
+    @Query("UPDATE ClaveIdempotencia c SET c.pedidoId = :pedidoId "
+            + "WHERE c.clave = :clave AND c.fechaCreacion = :creacion AND c.pedidoId IS NULL")
+    int completar(@Param("clave") String clave, @Param("creacion") LocalDateTime creacion,
+            @Param("pedidoId") Integer pedidoId);
+
+    // Solo borra esa reserva y si sigue en curso, nunca un resultado ya guardado
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ClaveIdempotencia c WHERE c.clave = :clave AND c.fechaCreacion = :creacion "
+            + "AND c.pedidoId IS NULL")
+    int liberar(@Param("clave") String clave, @Param("creacion") LocalDateTime creacion);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ClaveIdempotencia c WHERE c.fechaExpiracion < :ahora")
+    int eliminarExpiradas(@Param("ahora") LocalDateTime ahora);
+}
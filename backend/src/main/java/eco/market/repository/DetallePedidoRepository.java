@@ -1,9 +1,18 @@
 package eco.market.repository;
 
+import eco.market.dto.DetallePedidoResponse;
 import eco.market.entity.DetallePedido;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.List;
 
 @Repository
 public interface DetallePedidoRepository extends JpaRepository<DetallePedido, Integer> {
+
+    @Query("SELECT new eco.market.dto.DetallePedidoResponse(d.detalleId, pr.productoId, pr.nombreProducto, " +
+            "pr.imagenPrincipal, d.cantidad, d.precioUnitario, d.subtotal) " +
+            "FROM DetallePedido d JOIN d.producto pr WHERE d.pedido.pedidoId = :pedidoId ORDER BY d.detalleId")
+    List<DetallePedidoResponse> findResponsesByPedidoId(@Param("pedidoId") Integer pedidoId);
 }
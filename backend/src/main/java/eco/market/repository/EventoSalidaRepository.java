@@ -0,0 +1,47 @@
+package eco.market.repository;
+
+import eco.market.entity.EventoSalida;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EventoSalidaRepository extends JpaRepository<EventoSalida, Long> {
+
+    // Las filas bloqueadas por otro nodo se saltan (lock timeout -2 = SKIP LOCKED donde se soporta)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM EventoSalida e WHERE e.estado = eco.market.entity.EventoSalida.EstadoEvento.PENDIENTE "
+            + "AND e.tipo = :tipo AND e.proximoIntento <= :ahora ORDER BY e.eventoId")
+    List<EventoSalida> findListos(@Param("tipo") EventoSalida.TipoEvento tipo, @Param("ahora") LocalDateTime ahora,
+            Limit limit);
+
+    @Modifying
+    @Query("UPDATE EventoSalida e SET e.estado = eco.market.entity.EventoSalida.EstadoEvento.ENVIADO, "
+            + "e.intentos = e.intentos + 1, e.fechaProcesado = :ahora WHERE e.eventoId IN :ids")
+    int marcarEnviados(@Param("ids") Collection<Long> ids, @Param("ahora") LocalDateTime ahora);
+
+    @Query("SELECT MIN(e.fechaCreacion) FROM EventoSalida e "
+            + "WHERE e.estado = eco.market.entity.EventoSalida.EstadoEvento.PENDIENTE")
+    LocalDateTime findFechaPendienteMasAntigua();
+
+    long countByEstado(EventoSalida.EstadoEvento estado);
+
+    long countByEstadoAndTipo(EventoSalida.EstadoEvento estado, EventoSalida.TipoEvento tipo);
+
+    @Modifying
+    @Query("DELETE FROM EventoSalida e WHERE e.estado = eco.market.entity.EventoSalida.EstadoEvento.ENVIADO "
+            + "AND e.fechaProcesado < :antes")
+    int eliminarEnviados(@Param("antes") LocalDateTime antes);
+}
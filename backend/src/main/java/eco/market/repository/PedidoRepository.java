@@ -1,16 +1,34 @@
 package eco.market.repository;
 
+import eco.market.dto.PedidoResumenResponse;
 import eco.market.entity.Pedido;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PedidoRepository extends JpaRepository<Pedido, Integer> {
     List<Pedido> findByUsuario_UsuarioId(Integer usuarioId);
 
-    @Query("SELECT DISTINCT p FROM Pedido p JOIN FETCH p.detalles d WHERE d.producto.vendedor.usuarioId = :vendedorId")
-    List<Pedido> findByDetalles_Producto_Vendedor_UsuarioId(@Param("vendedorId") Integer vendedorId);
+    // Resumen del pedido en un único SELECT; el número de líneas sale de una subconsulta, sin cargar detalles
+    String PROYECCION_RESUMEN = "SELECT new eco.market.dto.PedidoResumenResponse(p.pedidoId, p.fechaPedido, " +
+            "p.estado, p.total, p.direccionEnvio, p.metodoPago, SIZE(p.detalles)) FROM Pedido p ";
+
+    // Historial por keyset, del más reciente al más antiguo
+    @Query(PROYECCION_RESUMEN + "WHERE p.usuario.usuarioId = :usuarioId ORDER BY p.fechaPedido DESC, p.pedidoId DESC")
+    List<PedidoResumenResponse> findResumenesFirstPage(@Param("usuarioId") Integer usuarioId, Limit limit);
+
+    @Query(PROYECCION_RESUMEN + "WHERE p.usuario.usuarioId = :usuarioId AND (p.fechaPedido < :fecha " +
+            "OR (p.fechaPedido = :fecha AND p.pedidoId < :pedidoId)) ORDER BY p.fechaPedido DESC, p.pedidoId DESC")
+    List<PedidoResumenResponse> findResumenesAfter(@Param("usuarioId") Integer usuarioId,
+            @Param("fecha") LocalDateTime fecha, @Param("pedidoId") Integer pedidoId, Limit limit);
+
+    @Query(PROYECCION_RESUMEN + "WHERE p.pedidoId = :pedidoId AND p.usuario.usuarioId = :usuarioId")
+    Optional<PedidoResumenResponse> findResumen(@Param("pedidoId") Integer pedidoId,
+            @Param("usuarioId") Integer usuarioId);
 }
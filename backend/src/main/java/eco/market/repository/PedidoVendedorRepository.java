@@ -0,0 +1,56 @@
+package eco.market.repository;
+
+import eco.market.entity.PedidoVendedor;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PedidoVendedorRepository extends JpaRepository<PedidoVendedor, PedidoVendedor.Clave> {
+
+    // Keyset sobre (vendedor_id, fecha_pedido, pedido_id) y (vendedor_id, estado, fecha_pedido, pedido_id)
+    @Query("SELECT pv FROM PedidoVendedor pv WHERE pv.vendedorId = :vendedorId " +
+            "ORDER BY pv.fechaPedido DESC, pv.pedidoId DESC")
+    List<PedidoVendedor> findFirstPage(@Param("vendedorId") Integer vendedorId, Limit limit);
+
+    @Query("SELECT pv FROM PedidoVendedor pv WHERE pv.vendedorId = :vendedorId AND (pv.fechaPedido < :fecha " +
+            "OR (pv.fechaPedido = :fecha AND pv.pedidoId < :pedidoId)) ORDER BY pv.fechaPedido DESC, pv.pedidoId DESC")
+    List<PedidoVendedor> findAfter(@Param("vendedorId") Integer vendedorId, @Param("fecha") LocalDateTime fecha,
+            @Param("pedidoId") Integer pedidoId, Limit limit);
+
+    @Query("SELECT pv FROM PedidoVendedor pv WHERE pv.vendedorId = :vendedorId AND pv.estado = :estado " +
+            "ORDER BY pv.fechaPedido DESC, pv.pedidoId DESC")
+    List<PedidoVendedor> findFirstPageByEstado(@Param("vendedorId") Integer vendedorId,
+            @Param("estado") String estado, Limit limit);
+
+    @Query("SELECT pv FROM PedidoVendedor pv WHERE pv.vendedorId = :vendedorId AND pv.estado = :estado " +
+            "AND (pv.fechaPedido < :fecha OR (pv.fechaPedido = :fecha AND pv.pedidoId < :pedidoId)) " +
+            "ORDER BY pv.fechaPedido DESC, pv.pedidoId DESC")
+    List<PedidoVendedor> findAfterByEstado(@Param("vendedorId") Integer vendedorId, @Param("estado") String estado,
+            @Param("fecha") LocalDateTime fecha, @Param("pedidoId") Integer pedidoId, Limit limit);
+
+    @Modifying
+    @Query("UPDATE PedidoVendedor pv SET pv.estado = :estado WHERE pv.pedidoId = :pedidoId")
+    int actualizarEstado(@Param("pedidoId") Integer pedidoId, @Param("estado") String estado);
+
+    // Carga inicial desde los pedidos existentes; solo añade los pedidos que aún no tienen filas
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO pedidos_vendedor (pedido_id, vendedor_id, fecha_pedido, estado, total, " +
+            "total_vendedor, total_lineas, nombre_comprador, apellido_comprador, email_comprador, direccion_envio) " +
+            "SELECT p.pedido_id, pr.vendedor_id, p.fecha_pedido, p.estado, p.total, SUM(d.subtotal), COUNT(*), " +
+            "u.nombre, u.apellido, u.email, p.direccion_envio " +
+            "FROM pedidos p JOIN detalles_pedido d ON d.pedido_id = p.pedido_id " +
+            "JOIN productos pr ON pr.producto_id = d.producto_id JOIN usuarios u ON u.usuario_id = p.usuario_id " +
+            "WHERE p.fecha_pedido IS NOT NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM pedidos_vendedor pv WHERE pv.pedido_id = p.pedido_id) " +
+            "GROUP BY p.pedido_id, pr.vendedor_id, p.fecha_pedido, p.estado, p.total, u.nombre, u.apellido, " +
+            "u.email, p.direccion_envio", nativeQuery = true)
+    int rellenarDesdePedidos();
+}
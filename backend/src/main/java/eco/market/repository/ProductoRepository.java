@@ -1,13 +1,19 @@
 package eco.market.repository;
 
+import eco.market.dto.ProductoResponse;
 import eco.market.entity.Producto;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface ProductoRepository extends JpaRepository<Producto, Integer> {
+public interface ProductoRepository extends JpaRepository<Producto, Integer>, ProductoRepositoryCustom {
     List<Producto> findByEstaActivoTrueAndEstaVerificadoTrue();
 
     List<Producto> findByCategoria_CategoriaIdAndEstaActivoTrueAndEstaVerificadoTrue(Integer categoriaId);
@@ -16,4 +22,69 @@ public interface ProductoRepository extends JpaRepository<Producto, Integer> {
     List<Producto> findActiveProductsOrderByDate();
 
     List<Producto> findByVendedor(eco.market.entity.Usuario vendedor);
-}
\ No newline at end of file
+
+    // Proyección a ProductoResponse en un único SELECT con JOIN, sin cargar Categoria, Usuario ni Rol
+    String PROYECCION_RESPONSE = "SELECT new eco.market.dto.ProductoResponse(p.productoId, p.nombreProducto, " +
+            "p.descripcion, p.precio, p.precioOriginal, p.stock, p.imagenPrincipal, p.esOrganico, p.esVegano, " +
+            "p.peso, p.unidadMedida, p.calificacionPromedio, p.totalCalificaciones, c.categoriaId, c.nombreCategoria, " +
+            "CONCAT(v.nombre, ' ', v.apellido), p.fechaCreacion, p.version) " +
+            "FROM Producto p JOIN p.categoria c JOIN p.vendedor v ";
+
+    @Query(PROYECCION_RESPONSE + "WHERE p.estaActivo = true AND p.estaVerificado = true " +
+            "ORDER BY p.fechaCreacion DESC, p.productoId DESC")
+    List<ProductoResponse> findCatalogResponses();
+
+    @Query(PROYECCION_RESPONSE + "WHERE p.productoId IN :ids AND p.estaActivo = true AND p.estaVerificado = true")
+    List<ProductoResponse> findCatalogResponsesByIds(@Param("ids") Collection<Integer> ids);
+
+    // Paginación por keyset: primera página y páginas siguientes a partir del cursor (fecha, id)
+    @Query(PROYECCION_RESPONSE + "WHERE p.estaActivo = true AND p.estaVerificado = true " +
+            "ORDER BY p.fechaCreacion DESC, p.productoId DESC")
+    List<ProductoResponse> findActiveResponsesFirstPage(Limit limit);
+
+    @Query(PROYECCION_RESPONSE + "WHERE p.estaActivo = true AND p.estaVerificado = true AND (p.fechaCreacion < :fecha " +
+            "OR (p.fechaCreacion = :fecha AND p.productoId < :productoId)) " +
+            "ORDER BY p.fechaCreacion DESC, p.productoId DESC")
+    List<ProductoResponse> findActiveResponsesAfter(@Param("fecha") LocalDateTime fecha,
+            @Param("productoId") Integer productoId, Limit limit);
+
+    @Query(PROYECCION_RESPONSE + "WHERE c.categoriaId = :categoriaId AND p.estaActivo = true AND p.estaVerificado = true")
+    List<ProductoResponse> findResponsesByCategoria(@Param("categoriaId") Integer categoriaId);
+
+    @Query("SELECT p.productoId FROM Producto p WHERE p.productoId IN :ids AND p.vendedor.usuarioId = :vendedorId")
+    List<Integer> findIdsByVendedor(@Param("ids") Collection<Integer> ids, @Param("vendedorId") Integer vendedorId);
+
+    @Query("SELECT p.productoId, p.version FROM Producto p WHERE p.productoId IN :ids AND p.vendedor.usuarioId = :vendedorId")
+    List<Object[]> findVersionesByVendedor(@Param("ids") Collection<Integer> ids, @Param("vendedorId") Integer vendedorId);
+
+    @Query(PROYECCION_RESPONSE + "WHERE v.email = :email")
+    List<ProductoResponse> findResponsesByVendedorEmail(@Param("email") String email);
+
+    // Cola de moderación por keyset, los más antiguos primero (índice idx_productos_catalogo:
+    // esta_activo, esta_verificado, fecha_creacion, producto_id)
+    @Query(PROYECCION_RESPONSE + "WHERE p.estaVerificado = false AND p.estaActivo = true " +
+            "ORDER BY p.fechaCreacion ASC, p.productoId ASC")
+    List<ProductoResponse> findPendingResponsesFirstPage(Limit limit);
+
+    @Query(PROYECCION_RESPONSE + "WHERE p.estaVerificado = false AND p.estaActivo = true AND (p.fechaCreacion > :fecha " +
+            "OR (p.fechaCreacion = :fecha AND p.productoId > :productoId)) " +
+            "ORDER BY p.fechaCreacion ASC, p.productoId ASC")
+    List<ProductoResponse> findPendingResponsesAfter(@Param("fecha") LocalDateTime fecha,
+            @Param("productoId") Integer productoId, Limit limit);
+
+    // Productos de un pedido en una sola consulta, con categoría y vendedor, ordenados por id
+    @Query("SELECT p FROM Producto p JOIN FETCH p.categoria JOIN FETCH p.vendedor v JOIN FETCH v.rol " +
+            "WHERE p.productoId IN :ids ORDER BY p.productoId")
+    List<Producto> findAllByIdOrdenados(@Param("ids") Collection<Integer> ids);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Producto p SET p.estaVerificado = true, p.version = p.version + 1, p.fechaActualizacion = :ahora " +
+            "WHERE p.productoId IN :ids AND p.estaVerificado = false AND p.estaActivo = true")
+    int aprobarPendientes(@Param("ids") Collection<Integer> ids, @Param("ahora") LocalDateTime ahora);
+
+    // Un producto rechazado se desactiva, igual que en la verificación individual
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Producto p SET p.estaActivo = false, p.version = p.version + 1, p.fechaActualizacion = :ahora " +
+            "WHERE p.productoId IN :ids AND p.estaVerificado = false AND p.estaActivo = true")
+    int rechazarPendientes(@Param("ids") Collection<Integer> ids, @Param("ahora") LocalDateTime ahora);
+}
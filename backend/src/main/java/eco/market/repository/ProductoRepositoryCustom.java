@@ -0,0 +1,23 @@
+package eco.market.repository;
+
+import eco.market.dto.AjusteInventarioRequest;
+import eco.market.entity.Producto;
+import java.util.List;
+import java.util.SortedMap;
+
+public interface ProductoRepositoryCustom {
+    // Inserta los productos con un único PreparedStatement en lote JDBC, sin pasar por el contexto de persistencia
+    int insertarEnLote(List<Producto> productos);
+
+    // UPDATE condicional en lote limitado a los productos del vendedor; devuelve las filas afectadas por ajuste.
+    // Con conVersion solo se actualizan las filas cuya versión coincide con la del ajuste.
+    // Si el driver no informa el conteo de una sentencia la posición vale Statement.SUCCESS_NO_INFO.
+    int[] ajustarEnLote(List<AjusteInventarioRequest> ajustes, Integer vendedorId, boolean conVersion);
+
+    // Descuento condicional de stock para varios productos en un solo lote JDBC. Las filas se
+    // actualizan en orden de id para que dos pedidos concurrentes tomen los bloqueos en el mismo orden.
+    int[] descontarStockEnLote(SortedMap<Integer, Integer> cantidades);
+
+    // Devuelve stock retenido (reservas de carrito vencidas o liberadas) en un solo lote JDBC, en orden de id
+    void devolverStockEnLote(SortedMap<Integer, Integer> cantidades);
+}
@@ -0,0 +1,105 @@
+package eco.market.repository;
+
+import eco.market.dto.AjusteInventarioRequest;
+import eco.market.entity.Producto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+public class ProductoRepositoryImpl implements ProductoRepositoryCustom {
+
+    private static final String INSERT_PRODUCTO = "INSERT INTO productos (vendedor_id, categoria_id, nombre_producto, "
+            + "descripcion, precio, precio_original, stock, imagen_principal, es_organico, es_vegano, peso, unidad_medida, "
+            + "calificacion_promedio, total_calificaciones, esta_activo, esta_verificado, fecha_creacion, "
+            + "fecha_actualizacion, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String AJUSTE_PRODUCTO = "UPDATE productos SET precio = COALESCE(?, precio), "
+            + "stock = COALESCE(?, stock), version = version + 1, fecha_actualizacion = ? "
+            + "WHERE producto_id = ? AND vendedor_id = ?";
+
+    private static final String DESCUENTO_STOCK = "UPDATE productos SET stock = stock - ?, version = version + 1 "
+            + "WHERE producto_id = ? AND stock >= ?";
+
+    private static final String DEVOLUCION_STOCK = "UPDATE productos SET stock = stock + ?, version = version + 1 "
+            + "WHERE producto_id = ?";
+
+    private static final String AJUSTE_PRODUCTO_CON_VERSION = AJUSTE_PRODUCTO + " AND version = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int insertarEnLote(List<Producto> productos) {
+        jdbcTemplate.batchUpdate(INSERT_PRODUCTO, productos, productos.size(), (ps, p) -> {
+            ps.setInt(1, p.getVendedor().getUsuarioId());
+            ps.setInt(2, p.getCategoria().getCategoriaId());
+            ps.setString(3, p.getNombreProducto());
+            ps.setString(4, p.getDescripcion());
+            ps.setBigDecimal(5, p.getPrecio());
+            ps.setObject(6, p.getPrecioOriginal(), Types.DECIMAL);
+            ps.setInt(7, p.getStock());
+            ps.setString(8, p.getImagenPrincipal());
+            ps.setBoolean(9, p.getEsOrganico());
+            ps.setBoolean(10, p.getEsVegano());
+            ps.setObject(11, p.getPeso(), Types.DECIMAL);
+            ps.setString(12, p.getUnidadMedida());
+            ps.setBigDecimal(13, p.getCalificacionPromedio());
+            ps.setInt(14, p.getTotalCalificaciones());
+            ps.setBoolean(15, p.getEstaActivo());
+            ps.setBoolean(16, p.getEstaVerificado());
+            ps.setTimestamp(17, Timestamp.valueOf(p.getFechaCreacion()));
+            ps.setTimestamp(18, Timestamp.valueOf(p.getFechaActualizacion()));
+        });
+        return productos.size();
+    }
+
+    @Override
+    public int[] ajustarEnLote(List<AjusteInventarioRequest> ajustes, Integer vendedorId, boolean conVersion) {
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+        int[][] lotes = jdbcTemplate.batchUpdate(conVersion ? AJUSTE_PRODUCTO_CON_VERSION : AJUSTE_PRODUCTO,
+                ajustes, ajustes.size(), (ps, a) -> {
+                    ps.setObject(1, a.getPrecio(), Types.DECIMAL);
+                    ps.setObject(2, a.getStock(), Types.INTEGER);
+                    ps.setTimestamp(3, ahora);
+                    ps.setInt(4, a.getProductoId());
+                    ps.setInt(5, vendedorId);
+                    if (conVersion) {
+                        ps.setLong(6, a.getVersion());
+                    }
+                });
+        return lotes.length == 0 ? new int[0] : lotes[0];
+    }
+
+    @Override
+    public int[] descontarStockEnLote(SortedMap<Integer, Integer> cantidades) {
+        if (cantidades.isEmpty()) {
+            return new int[0];
+        }
+        List<Map.Entry<Integer, Integer>> lineas = new ArrayList<>(cantidades.entrySet());
+        int[][] lotes = jdbcTemplate.batchUpdate(DESCUENTO_STOCK, lineas, lineas.size(), (ps, linea) -> {
+            ps.setInt(1, linea.getValue());
+            ps.setInt(2, linea.getKey());
+            ps.setInt(3, linea.getValue());
+        });
+        return lotes.length == 0 ? new int[0] : lotes[0];
+    }
+
+    @Override
+    public void devolverStockEnLote(SortedMap<Integer, Integer> cantidades) {
+        if (cantidades.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Integer, Integer>> lineas = new ArrayList<>(cantidades.entrySet());
+        jdbcTemplate.batchUpdate(DEVOLUCION_STOCK, lineas, lineas.size(), (ps, linea) -> {
+            ps.setInt(1, linea.getValue());
+            ps.setInt(2, linea.getKey());
+        });
+    }
+}
@@ -0,0 +1,43 @@
+package eco.market.repository;
+
+import eco.market.entity.ReservaCarrito;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ReservaCarritoRepository extends JpaRepository<ReservaCarrito, Long> {
+
+    interface Vencimiento {
+        Long getReservaId();
+
+        LocalDateTime getFechaExpiracion();
+    }
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<ReservaCarrito> findByUsuarioIdAndProductoId(Integer usuarioId, Integer productoId);
+
+    // Reservas del usuario que cubren las líneas de un pedido, bloqueadas para consumirlas
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM ReservaCarrito r WHERE r.usuarioId = :usuarioId AND r.productoId IN :productoIds "
+            + "ORDER BY r.productoId")
+    List<ReservaCarrito> findParaConsumir(@Param("usuarioId") Integer usuarioId,
+            @Param("productoIds") Collection<Integer> productoIds);
+
+    // Una reserva renovada después de programarse sigue viva y no se libera
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM ReservaCarrito r WHERE r.reservaId IN :ids AND r.fechaExpiracion <= :ahora")
+    List<ReservaCarrito> findVencidas(@Param("ids") Collection<Long> ids, @Param("ahora") LocalDateTime ahora);
+
+    // Para reconstruir la rueda de vencimientos al arrancar
+    @Query("SELECT r.reservaId AS reservaId, r.fechaExpiracion AS fechaExpiracion FROM ReservaCarrito r")
+    List<Vencimiento> findVencimientos();
+}
@@ -0,0 +1,382 @@
+package eco.market.service;
+
+import eco.market.model.Cart;
+import eco.market.model.CartItem;
+import eco.market.model.Product;
+import eco.market.model.User;
+import eco.market.repository.CartRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Carritos activos en memoria con escritura diferida. Las lecturas no tocan la base de datos
+// y los cambios solo marcan el carrito como pendiente; un volcado en segundo plano reescribe
+// las líneas de los carritos pendientes en CarritoCompras/ItemsCarrito por lotes, así que
+// varias operaciones seguidas sobre un carrito acaban en una sola escritura.
+// Se vuelca en cada pasada del temporizador y al desalojar un carrito del LRU; el checkout
+// quita las líneas compradas dentro de la transacción del pedido.
+//
+// Pensado para un solo nodo (o sesiones fijas por usuario): otro nodo no vería los cambios
+// hasta el siguiente volcado.
+@Service
+public class AlmacenCarritos {
+
+    private static final String BORRAR_LINEAS = "DELETE FROM items_carrito WHERE carrito_id = ?";
+    private static final String INSERTAR_LINEA = "INSERT INTO items_carrito (carrito_id, producto_id, cantidad, "
+            + "precio_unitario) VALUES (?, ?, ?, ?)";
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${app.carrito.almacen.max-carritos:10000}")
+    private int maximoCarritos;
+
+    @Value("${app.carrito.almacen.tamano-lote:200}")
+    private int tamanoLote;
+
+    // Orden de acceso: el primero es el menos usado
+    private final LinkedHashMap<Integer, CarritoEnMemoria> carritos = new LinkedHashMap<>(16, 0.75f, true);
+    // Desalojados con cambios sin volcar; si el usuario vuelve antes del volcado se recuperan de aquí
+    private final Map<Integer, CarritoEnMemoria> desalojados = new ConcurrentHashMap<>();
+    private final Set<Integer> pendientes = ConcurrentHashMap.newKeySet();
+    // Por usuario, no por carrito: un carrito desalojado y recargado sigue bloqueado
+    private final Set<Integer> enCheckout = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService hiloVolcado = Executors.newSingleThreadExecutor(tarea -> {
+        Thread thread = new Thread(tarea, "carritos-volcado");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean volcadoProgramado = new AtomicBoolean();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong cargas = new AtomicLong();
+    private final AtomicLong volcados = new AtomicLong();
+
+    private static class CarritoEnMemoria {
+        private final Integer carritoId;
+        private final Integer usuarioId;
+        // Por producto, en el orden en que se añadieron
+        private final LinkedHashMap<Integer, CartItem> lineas = new LinkedHashMap<>();
+        private long version;
+        private long versionVolcada;
+        // Fuera del LRU y ya volcado: quien lo tenga debe volver a cargarlo
+        private boolean retirado;
+
+        CarritoEnMemoria(Integer carritoId, Integer usuarioId) {
+            this.carritoId = carritoId;
+            this.usuarioId = usuarioId;
+        }
+    }
+
+    private record Instantanea(CarritoEnMemoria carrito, long version, List<CartItem> lineas) {
+    }
+
+    @PreDestroy
+    public void detener() {
+        hiloVolcado.shutdownNow();
+        volcar();
+    }
+
+    public Cart obtener(User user) {
+        CarritoEnMemoria carrito = cargar(user);
+        synchronized (carrito) {
+            return copiar(carrito, user);
+        }
+    }
+
+    public CartItem linea(User user, Integer productoId) {
+        CarritoEnMemoria carrito = cargar(user);
+        synchronized (carrito) {
+            CartItem linea = carrito.lineas.get(productoId);
+            return linea == null ? null : copiar(linea);
+        }
+    }
+
+    // Aplica el cambio sobre las líneas (por id de producto) y deja el carrito pendiente de volcar
+    public Cart modificar(User user, Consumer<Map<Integer, CartItem>> cambio) {
+        while (true) {
+            CarritoEnMemoria carrito = cargar(user);
+            synchronized (carrito) {
+                if (carrito.retirado) {
+                    continue;
+                }
+                cambio.accept(carrito.lineas);
+                carrito.version++;
+                pendientes.add(carrito.usuarioId);
+                return copiar(carrito, user);
+            }
+        }
+    }
+
+    public CartItem nuevaLinea(Product product, int cantidad) {
+        return CartItem.builder()
+                .product(product)
+                .cantidad(cantidad)
+                .precio_unitario(product.getPrecio())
+                .build();
+    }
+
+    // Abre el checkout dentro de la transacción del pedido y devuelve las líneas a comprar. Las líneas
+    // de la tabla se borran con la transacción y, solo si se confirma, lo comprado se descuenta del
+    // carrito en memoria (lo que se añadió mientras tanto se queda). Mientras no termine, otro
+    // checkout del mismo usuario (doble clic, reintento) falla en vez de comprar lo mismo otra vez.
+    public Cart iniciarCheckout(User user) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("El checkout del carrito necesita una transacción");
+        }
+        Integer usuarioId = user.getUsuario_id();
+        if (!enCheckout.add(usuarioId)) {
+            throw new RuntimeException("Ya hay un checkout en curso para este carrito");
+        }
+        Cart cart;
+        try {
+            cart = obtener(user);
+            jdbcTemplate.update(BORRAR_LINEAS, cart.getCarritoId());
+        } catch (RuntimeException e) {
+            enCheckout.remove(usuarioId);
+            throw e;
+        }
+
+        Map<Integer, Integer> compradas = new LinkedHashMap<>();
+        cart.getItems().forEach(item -> compradas.put(item.getProduct().getProducto_id(), item.getCantidad()));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                modificar(user, lineas -> compradas.forEach((productoId, cantidad) -> {
+                    CartItem linea = lineas.get(productoId);
+                    if (linea == null) {
+                        return;
+                    }
+                    if (linea.getCantidad() <= cantidad) {
+                        lineas.remove(productoId);
+                    } else {
+                        linea.setCantidad(linea.getCantidad() - cantidad);
+                    }
+                }));
+            }
+
+            @Override
+            public void afterCompletion(int estado) {
+                enCheckout.remove(usuarioId);
+            }
+        });
+        return cart;
+    }
+
+    // Escribe ya el carrito del usuario
+    public synchronized void volcar(Integer usuarioId) {
+        CarritoEnMemoria carrito;
+        synchronized (carritos) {
+            carrito = carritos.get(usuarioId);
+        }
+        if (carrito == null) {
+            carrito = desalojados.get(usuarioId);
+        }
+        if (carrito != null) {
+            escribir(List.of(instantanea(carrito)));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.carrito.almacen.intervalo-volcado-ms:1000}")
+    public synchronized void volcar() {
+        List<Instantanea> lote = new ArrayList<>(tamanoLote);
+        for (Integer usuarioId : List.copyOf(pendientes)) {
+            CarritoEnMemoria carrito;
+            synchronized (carritos) {
+                carrito = carritos.get(usuarioId);
+            }
+            if (carrito == null) {
+                carrito = desalojados.get(usuarioId);
+            }
+            if (carrito == null) {
+                pendientes.remove(usuarioId);
+                continue;
+            }
+            lote.add(instantanea(carrito));
+            if (lote.size() == tamanoLote) {
+                escribir(lote);
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) {
+            escribir(lote);
+        }
+    }
+
+    public Map<String, Object> metricas() {
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        synchronized (carritos) {
+            metricas.put("carritos", carritos.size());
+        }
+        metricas.put("pendientes", pendientes.size());
+        metricas.put("aciertos", aciertos.get());
+        metricas.put("cargas", cargas.get());
+        metricas.put("volcados", volcados.get());
+        return metricas;
+    }
+
+    // Candados siempre en el orden "carritos" y después el carrito
+    private CarritoEnMemoria cargar(User user) {
+        Integer usuarioId = user.getUsuario_id();
+        while (true) {
+            synchronized (carritos) {
+                CarritoEnMemoria carrito = carritos.get(usuarioId);
+                if (carrito != null) {
+                    aciertos.incrementAndGet();
+                    return carrito;
+                }
+            }
+
+            CarritoEnMemoria carrito = desalojados.get(usuarioId);
+            if (carrito == null) {
+                carrito = leer(user);
+                cargas.incrementAndGet();
+            }
+
+            synchronized (carritos) {
+                // Otro hilo pudo cargarlo (o desalojarlo con cambios) mientras tanto
+                CarritoEnMemoria existente = carritos.get(usuarioId);
+                if (existente != null) {
+                    return existente;
+                }
+                CarritoEnMemoria desalojado = desalojados.get(usuarioId);
+                if (desalojado != null && desalojado != carrito) {
+                    continue;
+                }
+                synchronized (carrito) {
+                    if (carrito.retirado) {
+                        continue;
+                    }
+                    desalojados.remove(usuarioId, carrito);
+                    carritos.put(usuarioId, carrito);
+                }
+                desalojar();
+                return carrito;
+            }
+        }
+    }
+
+    // Una consulta con líneas y productos; el carrito se crea en la tabla la primera vez
+    private CarritoEnMemoria leer(User user) {
+        return transactionTemplate.execute(status -> {
+            Cart cart = cartRepository.findConItemsByUser(user)
+                    .orElseGet(() -> cartRepository.save(Cart.builder().user(user).items(new ArrayList<>()).build()));
+            CarritoEnMemoria carrito = new CarritoEnMemoria(cart.getCarritoId(), user.getUsuario_id());
+            cart.getItems().forEach(item -> carrito.lineas.put(item.getProduct().getProducto_id(), copiar(item)));
+            return carrito;
+        });
+    }
+
+    // Se llama con el candado de "carritos". Los que tienen cambios sin volcar esperan al volcado.
+    private void desalojar() {
+        while (carritos.size() > maximoCarritos) {
+            Map.Entry<Integer, CarritoEnMemoria> masAntiguo = carritos.entrySet().iterator().next();
+            CarritoEnMemoria carrito = masAntiguo.getValue();
+            carritos.remove(masAntiguo.getKey());
+            synchronized (carrito) {
+                if (carrito.version == carrito.versionVolcada) {
+                    carrito.retirado = true;
+                    continue;
+                }
+                desalojados.put(masAntiguo.getKey(), carrito);
+            }
+            if (volcadoProgramado.compareAndSet(false, true)) {
+                hiloVolcado.execute(() -> {
+                    volcadoProgramado.set(false);
+                    volcar();
+                });
+            }
+        }
+    }
+
+    private Instantanea instantanea(CarritoEnMemoria carrito) {
+        synchronized (carrito) {
+            List<CartItem> lineas = new ArrayList<>(carrito.lineas.size());
+            carrito.lineas.values().forEach(linea -> lineas.add(copiar(linea)));
+            return new Instantanea(carrito, carrito.version, lineas);
+        }
+    }
+
+    // Reemplaza las líneas de cada carrito del lote: un DELETE y un INSERT por línea, todo en lotes JDBC
+    private void escribir(List<Instantanea> lote) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(BORRAR_LINEAS, lote, lote.size(),
+                        (ps, instantanea) -> ps.setInt(1, instantanea.carrito().carritoId));
+                List<Object[]> lineas = new ArrayList<>();
+                for (Instantanea instantanea : lote) {
+                    for (CartItem linea : instantanea.lineas()) {
+                        lineas.add(new Object[] { instantanea.carrito().carritoId, linea.getProduct().getProducto_id(),
+                                linea.getCantidad(), linea.getPrecio_unitario() });
+                    }
+                }
+                if (!lineas.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERTAR_LINEA, lineas);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Siguen pendientes y se reintentan en la siguiente pasada
+            System.err.println("Error volcando carritos: " + e.getMessage());
+            return;
+        }
+
+        for (Instantanea instantanea : lote) {
+            CarritoEnMemoria carrito = instantanea.carrito();
+            synchronized (carrito) {
+                carrito.versionVolcada = Math.max(carrito.versionVolcada, instantanea.version());
+                // Si cambió durante la escritura sigue pendiente
+                if (carrito.version == carrito.versionVolcada) {
+                    pendientes.remove(carrito.usuarioId);
+                    if (desalojados.remove(carrito.usuarioId, carrito)) {
+                        carrito.retirado = true;
+                    }
+                }
+            }
+        }
+        volcados.addAndGet(lote.size());
+    }
+
+    private static Cart copiar(CarritoEnMemoria carrito, User user) {
+        List<CartItem> items = new ArrayList<>(carrito.lineas.size());
+        Cart cart = Cart.builder().carritoId(carrito.carritoId).user(user).items(items).build();
+        carrito.lineas.values().forEach(linea -> {
+            CartItem item = copiar(linea);
+            item.setCart(cart);
+            items.add(item);
+        });
+        return cart;
+    }
+
+    private static CartItem copiar(CartItem linea) {
+        return CartItem.builder()
+                .product(linea.getProduct())
+                .cantidad(linea.getCantidad())
+                .precio_unitario(linea.getPrecio_unitario())
+                .build();
+    }
+}
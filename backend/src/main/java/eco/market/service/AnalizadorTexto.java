@@ -0,0 +1,69 @@
+package eco.market.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// Normalización de texto en español compartida por los índices en memoria del catálogo:
+// minúsculas, sin acentos ni diacríticos, sin palabras vacías y con un stemming ligero.
+public final class AnalizadorTexto {
+
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Set<String> PALABRAS_VACIAS = Set.of(
+            "a", "al", "algo", "ante", "con", "contra", "de", "del", "desde", "e", "el", "en", "entre", "es",
+            "esta", "este", "esto", "hasta", "la", "las", "le", "les", "lo", "los", "mas", "mi", "muy", "ni", "no",
+            "o", "para", "pero", "por", "que", "se", "sin", "sobre", "su", "sus", "tu", "u", "un", "una", "unas",
+            "unos", "y", "ya");
+
+    private AnalizadorTexto() {
+    }
+
+    // Minúsculas y sin acentos ("Plátanos Orgánicos" -> "platanos organicos")
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String descompuesto = Normalizer.normalize(texto.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return DIACRITICOS.matcher(descompuesto).replaceAll("");
+    }
+
+    // Términos indexables: normalizados, sin palabras vacías y reducidos a su raíz
+    public static List<String> terminos(String texto) {
+        List<String> terminos = new ArrayList<>();
+        for (String palabra : SEPARADORES.split(normalizar(texto))) {
+            if (!palabra.isEmpty() && !PALABRAS_VACIAS.contains(palabra)) {
+                terminos.add(raiz(palabra));
+            }
+        }
+        return terminos;
+    }
+
+    // Stemmer ligero para español: elimina plurales y la vocal final de género,
+    // de modo que "manzana", "manzanas" y "manzano" comparten la raíz "manzan".
+    static String raiz(String palabra) {
+        int longitud = palabra.length();
+        if (longitud < 5) {
+            return palabra;
+        }
+        char ultima = palabra.charAt(longitud - 1);
+        if (ultima == 'o' || ultima == 'a' || ultima == 'e') {
+            return palabra.substring(0, longitud - 1);
+        }
+        if (ultima == 's') {
+            char penultima = palabra.charAt(longitud - 2);
+            if (palabra.endsWith("eses")) {
+                return palabra.substring(0, longitud - 2);
+            }
+            if (penultima == 'o' || penultima == 'a' || penultima == 'e') {
+                return palabra.substring(0, longitud - 2);
+            }
+            return palabra.substring(0, longitud - 1);
+        }
+        return palabra;
+    }
+}
@@ -0,0 +1,266 @@
+package eco.market.service;
+
+import eco.market.dto.ProductoResponse;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Índice invertido en memoria sobre nombre y descripción de los productos del catálogo,
+// con ranking BM25. Se alimenta desde CatalogoService, así que las búsquedas no consultan la BD.
+@Service
+public class BuscadorProductos implements IndiceCatalogo {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // Una coincidencia en el nombre pesa como varias en la descripción
+    private static final int PESO_NOMBRE = 3;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Postings> indice = new HashMap<>();
+    private final Map<Integer, Integer> ordinales = new HashMap<>();
+    private final Deque<Integer> ordinalesLibres = new ArrayDeque<>();
+    private ProductoResponse[] documentos = new ProductoResponse[1024];
+    private String[][] terminosDocumento = new String[1024][];
+    private int[] longitudes = new int[1024];
+    private int siguienteOrdinal;
+    private int totalDocumentos;
+    private long sumaLongitudes;
+
+    // Puntuaciones por ordinal reutilizadas entre búsquedas del mismo hilo, en vez de un float[] por consulta
+    private final ThreadLocal<Acumulador> acumuladores = ThreadLocal.withInitial(Acumulador::new);
+
+    public List<ProductoResponse> buscar(String consulta, int limite) {
+        Set<String> terminos = new LinkedHashSet<>(AnalizadorTexto.terminos(consulta));
+        if (terminos.isEmpty() || limite <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (totalDocumentos == 0) {
+                return List.of();
+            }
+            float longitudMedia = (float) sumaLongitudes / totalDocumentos;
+            Acumulador acumulador = acumuladores.get();
+            if (acumulador.puntuaciones.length < siguienteOrdinal) {
+                acumulador.puntuaciones = new float[documentos.length];
+            }
+            float[] puntuaciones = acumulador.puntuaciones;
+            int totalTocados = 0;
+
+            try {
+                for (String termino : terminos) {
+                    Postings postings = indice.get(termino);
+                    if (postings == null) {
+                        continue;
+                    }
+                    double idf = Math.log(1 + (totalDocumentos - postings.tamano + 0.5) / (postings.tamano + 0.5));
+                    for (int i = 0; i < postings.tamano; i++) {
+                        int documento = postings.documentos[i];
+                        int tf = postings.frecuencias[i];
+                        float normalizacion = K1 * (1 - B + B * longitudes[documento] / longitudMedia);
+                        if (puntuaciones[documento] == 0) {
+                            if (totalTocados == acumulador.tocados.length) {
+                                acumulador.tocados = Arrays.copyOf(acumulador.tocados, totalTocados * 2);
+                            }
+                            acumulador.tocados[totalTocados++] = documento;
+                        }
+                        puntuaciones[documento] += (float) (idf * tf * (K1 + 1) / (tf + normalizacion));
+                    }
+                }
+                int[] tocados = acumulador.tocados;
+
+                // Top-K con un min-heap acotado de ordinales: el peor candidato queda en la raíz
+                int[] heap = new int[Math.min(limite, totalTocados)];
+                int enHeap = 0;
+                for (int i = 0; i < totalTocados; i++) {
+                    int documento = tocados[i];
+                    if (enHeap < heap.length) {
+                        heap[enHeap] = documento;
+                        subir(heap, enHeap++, puntuaciones);
+                    } else if (puntuaciones[documento] > puntuaciones[heap[0]]) {
+                        heap[0] = documento;
+                        bajar(heap, enHeap, puntuaciones);
+                    }
+                }
+
+                ProductoResponse[] resultado = new ProductoResponse[enHeap];
+                while (enHeap > 0) {
+                    resultado[enHeap - 1] = ProductoCatalogo.copia(documentos[heap[0]]);
+                    heap[0] = heap[--enHeap];
+                    bajar(heap, enHeap, puntuaciones);
+                }
+                return Arrays.asList(resultado);
+            } finally {
+                // El búfer queda a cero para la siguiente búsqueda del hilo sin recorrerlo entero
+                for (int i = 0; i < totalTocados; i++) {
+                    puntuaciones[acumulador.tocados[i]] = 0;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void subir(int[] heap, int posicion, float[] puntuaciones) {
+        while (posicion > 0) {
+            int padre = (posicion - 1) / 2;
+            if (puntuaciones[heap[posicion]] >= puntuaciones[heap[padre]]) {
+                return;
+            }
+            intercambiar(heap, posicion, padre);
+            posicion = padre;
+        }
+    }
+
+    private static void bajar(int[] heap, int tamano, float[] puntuaciones) {
+        int posicion = 0;
+        while (true) {
+            int menor = posicion;
+            int izquierda = 2 * posicion + 1;
+            int derecha = izquierda + 1;
+            if (izquierda < tamano && puntuaciones[heap[izquierda]] < puntuaciones[heap[menor]]) {
+                menor = izquierda;
+            }
+            if (derecha < tamano && puntuaciones[heap[derecha]] < puntuaciones[heap[menor]]) {
+                menor = derecha;
+            }
+            if (menor == posicion) {
+                return;
+            }
+            intercambiar(heap, posicion, menor);
+            posicion = menor;
+        }
+    }
+
+    private static void intercambiar(int[] heap, int i, int j) {
+        int temporal = heap[i];
+        heap[i] = heap[j];
+        heap[j] = temporal;
+    }
+
+    @Override
+    public void reconstruir(Collection<ProductoResponse> productos) {
+        lock.writeLock().lock();
+        try {
+            indice.clear();
+            ordinales.clear();
+            ordinalesLibres.clear();
+            int capacidad = Math.max(1024, productos.size());
+            documentos = new ProductoResponse[capacidad];
+            terminosDocumento = new String[capacidad][];
+            longitudes = new int[capacidad];
+            siguienteOrdinal = 0;
+            totalDocumentos = 0;
+            sumaLongitudes = 0;
+            productos.forEach(this::indexar);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void actualizar(Set<Integer> afectados, Collection<ProductoResponse> actuales) {
+        lock.writeLock().lock();
+        try {
+            afectados.forEach(this::desindexar);
+            actuales.forEach(this::indexar);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexar(ProductoResponse producto) {
+        Map<String, Integer> frecuencias = new HashMap<>();
+        for (String termino : AnalizadorTexto.terminos(producto.getNombreProducto())) {
+            frecuencias.merge(termino, PESO_NOMBRE, Integer::sum);
+        }
+        for (String termino : AnalizadorTexto.terminos(producto.getDescripcion())) {
+            frecuencias.merge(termino, 1, Integer::sum);
+        }
+
+        int ordinal = ordinalesLibres.isEmpty() ? siguienteOrdinal++ : ordinalesLibres.pop();
+        if (ordinal >= documentos.length) {
+            int capacidad = documentos.length * 2;
+            documentos = Arrays.copyOf(documentos, capacidad);
+            terminosDocumento = Arrays.copyOf(terminosDocumento, capacidad);
+            longitudes = Arrays.copyOf(longitudes, capacidad);
+        }
+
+        int longitud = 0;
+        for (Map.Entry<String, Integer> entrada : frecuencias.entrySet()) {
+            indice.computeIfAbsent(entrada.getKey(), k -> new Postings()).agregar(ordinal, entrada.getValue());
+            longitud += entrada.getValue();
+        }
+
+        documentos[ordinal] = producto;
+        terminosDocumento[ordinal] = frecuencias.keySet().toArray(new String[0]);
+        longitudes[ordinal] = longitud;
+        ordinales.put(producto.getProductoId(), ordinal);
+        totalDocumentos++;
+        sumaLongitudes += longitud;
+    }
+
+    private void desindexar(Integer productoId) {
+        Integer ordinal = ordinales.remove(productoId);
+        if (ordinal == null) {
+            return;
+        }
+        for (String termino : terminosDocumento[ordinal]) {
+            Postings postings = indice.get(termino);
+            postings.eliminar(ordinal);
+            if (postings.tamano == 0) {
+                indice.remove(termino);
+            }
+        }
+        totalDocumentos--;
+        sumaLongitudes -= longitudes[ordinal];
+        documentos[ordinal] = null;
+        terminosDocumento[ordinal] = null;
+        longitudes[ordinal] = 0;
+        ordinalesLibres.push(ordinal);
+    }
+
+    private static final class Acumulador {
+        private float[] puntuaciones = new float[0];
+        private int[] tocados = new int[16];
+    }
+
+    // Lista de apariciones de un término: ordinal de documento y frecuencia ponderada
+    private static final class Postings {
+        private int[] documentos = new int[4];
+        private int[] frecuencias = new int[4];
+        private int tamano;
+
+        void agregar(int documento, int frecuencia) {
+            if (tamano == documentos.length) {
+                documentos = Arrays.copyOf(documentos, tamano * 2);
+                frecuencias = Arrays.copyOf(frecuencias, tamano * 2);
+            }
+            documentos[tamano] = documento;
+            frecuencias[tamano] = frecuencia;
+            tamano++;
+        }
+
+        void eliminar(int documento) {
+            for (int i = 0; i < tamano; i++) {
+                if (documentos[i] == documento) {
+                    tamano--;
+                    documentos[i] = documentos[tamano];
+                    frecuencias[i] = frecuencias[tamano];
+                    return;
+                }
+            }
+        }
+    }
+}
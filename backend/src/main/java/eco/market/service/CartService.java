@@ -1,94 +1,207 @@
 package eco.market.service;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import eco.market.cart.AddItemRequest;
+import eco.market.cart.CartBatchRequest;
 import eco.market.cart.UpdateItemRequest;
 import eco.market.model.Cart;
 import eco.market.model.CartItem;
 import eco.market.model.Product;
 import eco.market.model.User;
-import eco.market.repository.CartItemRepository;
-import eco.market.repository.CartRepository;
 import eco.market.repository.ProductRepository;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 
 @Service
 @RequiredArgsConstructor
 public class CartService {
 
-    private final CartRepository cartRepository;
-    private final CartItemRepository cartItemRepository;
+    private final AlmacenCarritos almacenCarritos;
     private final ProductRepository productRepository;
 
-    @Transactional
-    public Cart getCart(User user) {
-        return cartRepository.findByUser(user)
-                .orElseGet(() -> createCart(user));
-    }
+    // Solo existe con app.carrito.reservas.habilitado=true
+    @Autowired(required = false)
+    private ReservasCarrito reservasCarrito;
 
-    private Cart createCart(User user) {
-        Cart newCart = Cart.builder()
-                .user(user)
-                .items(new ArrayList<>())
-                .build();
-        return cartRepository.save(newCart);
+    @Value("${app.carrito.max-operaciones-lote:200}")
+    private int maxOperacionesLote;
+
+    public Cart getCart(User user) {
+        return almacenCarritos.obtener(user);
     }
 
-    @Transactional
     public Cart addItemToCart(User user, AddItemRequest request) {
-        Cart cart = getCart(user);
-        Product product = productRepository.findById(request.getProductId())
-                .orElseThrow(() -> new RuntimeException("Product not found"));
-
-        // Check if item is already in cart
-        CartItem existingItem = cartItemRepository.findByCartAndProduct(cart, product)
-                .orElse(null);
-
-        if (existingItem != null) {
-            existingItem.setCantidad(existingItem.getCantidad() + request.getQuantity());
-            cartItemRepository.save(existingItem);
-        } else {
-            CartItem newItem = CartItem.builder()
-                    .cart(cart)
-                    .product(product)
-                    .cantidad(request.getQuantity())
-                    .precio_unitario(product.getPrecio())
-                    .build();
-            cart.getItems().add(newItem);
-            cartRepository.save(cart);
+        if (request.getQuantity() <= 0) {
+            throw new RuntimeException("Invalid quantity for product " + request.getProductId());
         }
-        return cart;
+        // Solo un producto que aún no está en el carrito se lee de la base de datos
+        CartItem existingItem = almacenCarritos.linea(user, request.getProductId());
+        Product product = existingItem != null ? existingItem.getProduct()
+                : productRepository.findById(request.getProductId())
+                        .orElseThrow(() -> new RuntimeException("Product not found"));
+
+        // Retiene el stock mientras el producto esté en el carrito
+        if (reservasCarrito != null) {
+            reservasCarrito.reservar(user.getUsuario_id(), product.getProducto_id(), request.getQuantity());
+        }
+
+        return almacenCarritos.modificar(user, items -> {
+            CartItem item = items.get(product.getProducto_id());
+            if (item != null) {
+                item.setCantidad(item.getCantidad() + request.getQuantity());
+            } else {
+                items.put(product.getProducto_id(), almacenCarritos.nuevaLinea(product, request.getQuantity()));
+            }
+        });
     }
 
-    @Transactional
     public Cart updateItemQuantity(User user, Integer productId, UpdateItemRequest request) {
-        Cart cart = getCart(user);
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
-        
-        CartItem cartItem = cartItemRepository.findByCartAndProduct(cart, product)
-                .orElseThrow(() -> new RuntimeException("Item not in cart"));
-
-        cartItem.setCantidad(request.getQuantity());
-        cartItemRepository.save(cartItem);
-        return cart;
+        if (almacenCarritos.linea(user, productId) == null) {
+            throw new RuntimeException("Item not in cart");
+        }
+        if (request.getQuantity() < 0) {
+            throw new RuntimeException("Invalid quantity for product " + productId);
+        }
+
+        if (reservasCarrito != null) {
+            reservasCarrito.ajustar(user.getUsuario_id(), productId, request.getQuantity());
+        }
+        // Igual que "update" en applyBatch: 0 quita la línea
+        return almacenCarritos.modificar(user, items -> {
+            CartItem item = items.get(productId);
+            if (request.getQuantity() == 0) {
+                items.remove(productId);
+            } else if (item != null) {
+                item.setCantidad(request.getQuantity());
+            }
+        });
     }
 
-    @Transactional
     public void removeItemFromCart(User user, Integer productId) {
-        Cart cart = getCart(user);
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found"));
+        if (almacenCarritos.linea(user, productId) == null) {
+            throw new RuntimeException("Item not in cart");
+        }
 
-        CartItem cartItem = cartItemRepository.findByCartAndProduct(cart, product)
-                .orElseThrow(() -> new RuntimeException("Item not in cart"));
+        if (reservasCarrito != null) {
+            reservasCarrito.ajustar(user.getUsuario_id(), productId, 0);
+        }
+        almacenCarritos.modificar(user, items -> items.remove(productId));
+    }
+
+    // Aplica todas las operaciones o ninguna: los productos nuevos se leen con un solo findAllById,
+    // las reservas se ajustan en una transacción y el carrito cambia una vez (un único volcado).
+    // Las operaciones, las cantidades reservadas y el cambio se hacen con el candado del carrito,
+    // así otra petición no puede cambiarlo en medio y un error no deja reservas sin su línea.
+    public Cart applyBatch(User user, CartBatchRequest request) {
+        List<CartBatchRequest.Operation> operations = request.getOperations();
+        if (operations == null || operations.isEmpty()) {
+            return almacenCarritos.obtener(user);
+        }
+        if (operations.size() > maxOperacionesLote) {
+            throw new RuntimeException("Too many operations (max " + maxOperacionesLote + ")");
+        }
+
+        Set<Integer> enCarrito = almacenCarritos.obtener(user).getItems().stream()
+                .map(item -> item.getProduct().getProducto_id())
+                .collect(Collectors.toSet());
+        Map<Integer, Product> products = new HashMap<>();
+        productRepository.findAllById(productosNuevos(operations, enCarrito, products))
+                .forEach(product -> products.put(product.getProducto_id(), product));
+
+        return almacenCarritos.modificar(user, items -> {
+            // Una línea quitada por otra petición desde la lectura anterior se vuelve a leer aquí
+            Set<Integer> faltan = productosNuevos(operations, items.keySet(), products);
+            if (!faltan.isEmpty()) {
+                productRepository.findAllById(faltan).forEach(product -> products.put(product.getProducto_id(), product));
+            }
 
-        cart.getItems().remove(cartItem);
-        cartItemRepository.delete(cartItem);
-        cartRepository.save(cart);
+            // Sobre una copia de las líneas, para que un error no deje el carrito a medias
+            Map<Integer, CartItem> copia = new LinkedHashMap<>();
+            items.forEach((productId, item) -> copia.put(productId, CartItem.builder()
+                    .product(item.getProduct())
+                    .cantidad(item.getCantidad())
+                    .precio_unitario(item.getPrecio_unitario())
+                    .build()));
+            aplicarOperaciones(copia, operations, products);
+
+            if (reservasCarrito != null) {
+                SortedMap<Integer, Integer> cantidades = new TreeMap<>();
+                operations.forEach(op -> cantidades.put(op.getProductId(), 0));
+                copia.forEach((productId, item) -> {
+                    if (cantidades.containsKey(productId)) {
+                        cantidades.put(productId, item.getCantidad());
+                    }
+                });
+                reservasCarrito.ajustar(user.getUsuario_id(), cantidades);
+            }
+            items.clear();
+            items.putAll(copia);
+        });
+    }
+
+    private Set<Integer> productosNuevos(List<CartBatchRequest.Operation> operations, Set<Integer> enCarrito,
+            Map<Integer, Product> leidos) {
+        return operations.stream()
+                .filter(op -> "add".equals(op.getType()) && op.getProductId() != null
+                        && !enCarrito.contains(op.getProductId()) && !leidos.containsKey(op.getProductId()))
+                .map(CartBatchRequest.Operation::getProductId)
+                .collect(Collectors.toSet());
+    }
+
+    private void aplicarOperaciones(Map<Integer, CartItem> items, List<CartBatchRequest.Operation> operations,
+            Map<Integer, Product> products) {
+        for (CartBatchRequest.Operation op : operations) {
+            if (op.getProductId() == null || op.getType() == null) {
+                throw new RuntimeException("Invalid operation");
+            }
+            CartItem item = items.get(op.getProductId());
+            switch (op.getType()) {
+                case "add" -> {
+                    if (op.getQuantity() <= 0) {
+                        throw new RuntimeException("Invalid quantity for product " + op.getProductId());
+                    }
+                    if (item != null) {
+                        item.setCantidad(item.getCantidad() + op.getQuantity());
+                    } else {
+                        Product product = products.get(op.getProductId());
+                        if (product == null) {
+                            throw new RuntimeException("Product not found: " + op.getProductId());
+                        }
+                        items.put(op.getProductId(), almacenCarritos.nuevaLinea(product, op.getQuantity()));
+                    }
+                }
+                case "update" -> {
+                    if (item == null) {
+                        throw new RuntimeException("Item not in cart: " + op.getProductId());
+                    }
+                    if (op.getQuantity() < 0) {
+                        throw new RuntimeException("Invalid quantity for product " + op.getProductId());
+                    }
+                    if (op.getQuantity() == 0) {
+                        items.remove(op.getProductId());
+                    } else {
+                        item.setCantidad(op.getQuantity());
+                    }
+                }
+                case "remove" -> {
+                    if (item == null) {
+                        throw new RuntimeException("Item not in cart: " + op.getProductId());
+                    }
+                    items.remove(op.getProductId());
+                }
+                default -> throw new RuntimeException("Unknown operation: " + op.getType());
+            }
+        }
     }
 }
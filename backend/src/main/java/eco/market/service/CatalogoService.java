@@ -0,0 +1,148 @@
+package eco.market.service;
+
+import eco.market.dto.ProductoResponse;
+import eco.market.entity.Categoria;
+import eco.market.repository.CategoriaRepository;
+import eco.market.repository.ProductoRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Modelo de lectura en memoria del catálogo público. Las lecturas no toman locks
+// ni consultan la base de datos; las escrituras sustituyen el snapshot completo.
+// Los cambios de productos se aplican en un hilo propio: la petición que los confirma no espera
+// y los ids que llegan dentro de la misma ventana se releen y aplican juntos.
+@Service
+public class CatalogoService {
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private VersionColecciones versionColecciones;
+
+    @Autowired(required = false)
+    private List<IndiceCatalogo> indices = List.of();
+
+    @Value("${app.catalogo.actualizacion.espera-ms:20}")
+    private long esperaActualizacionMs;
+
+    private final AtomicReference<CatalogoSnapshot> snapshot = new AtomicReference<>();
+    private final Set<Integer> pendientes = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean programado = new AtomicBoolean();
+    private ScheduledExecutorService actualizador;
+
+    @PostConstruct
+    public void iniciar() {
+        actualizador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "catalogo-actualizador");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PreDestroy
+    public void detener() {
+        actualizador.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void recargar() {
+        // Las mismas instancias van al snapshot y a los índices; solo salen de ellos como copias
+        List<ProductoResponse> productos = productoRepository.findCatalogResponses();
+        List<Categoria> categorias = categoriaRepository.findByEstaActivaTrue();
+        snapshot.set(CatalogoSnapshot.crear(productos, categorias));
+        indices.forEach(indice -> indice.reconstruir(productos));
+        versionColecciones.incrementar(VersionColecciones.Coleccion.PRODUCTOS);
+        versionColecciones.incrementar(VersionColecciones.Coleccion.CATEGORIAS);
+    }
+
+    // Solo apunta los ids; el hilo del catálogo los aplica tras una breve espera
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductoCambiado(ProductoCambiadoEvent event) {
+        pendientes.addAll(event.getProductoIds());
+        if (programado.compareAndSet(false, true)) {
+            actualizador.schedule(this::actualizarEnSegundoPlano, esperaActualizacionMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void actualizarEnSegundoPlano() {
+        // Se libera antes de leer los ids para que lo que llegue durante la pasada programe otra
+        programado.set(false);
+        try {
+            aplicarCambiosPendientes();
+        } catch (RuntimeException e) {
+            System.err.println("Error actualizando el catálogo en memoria: " + e.getMessage());
+            if (programado.compareAndSet(false, true)) {
+                actualizador.schedule(this::actualizarEnSegundoPlano, esperaActualizacionMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Relee los productos pendientes y los aplica sobre el snapshot actual. Al volver, todo cambio
+    // notificado antes de la llamada ya está aplicado.
+    public synchronized void aplicarCambiosPendientes() {
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        Set<Integer> afectados = new HashSet<>(pendientes);
+        pendientes.removeAll(afectados);
+
+        CatalogoSnapshot actual = snapshot.get();
+        if (actual == null) {
+            versionColecciones.incrementar(VersionColecciones.Coleccion.PRODUCTOS);
+            return;
+        }
+        List<ProductoResponse> productos;
+        try {
+            productos = productoRepository.findCatalogResponsesByIds(afectados);
+        } catch (RuntimeException e) {
+            // Se reintentan en la siguiente pasada
+            pendientes.addAll(afectados);
+            throw e;
+        }
+        snapshot.set(actual.conCambios(afectados, productos));
+        indices.forEach(indice -> indice.actualizar(afectados, productos));
+        // La versión cambia después de publicar el snapshot para no asociar un ETag nuevo a datos viejos
+        versionColecciones.incrementar(VersionColecciones.Coleccion.PRODUCTOS);
+    }
+
+    public boolean estaCargado() {
+        return snapshot.get() != null;
+    }
+
+    public List<ProductoResponse> obtenerProductos() {
+        return ProductoCatalogo.copias(snapshot.get().getProductos());
+    }
+
+    public List<ProductoResponse> obtenerProductosPorCategoria(Integer categoriaId) {
+        return ProductoCatalogo.copias(snapshot.get().getProductosPorCategoria(categoriaId));
+    }
+
+    public ProductoResponse obtenerProducto(Integer productoId) {
+        return ProductoCatalogo.copia(snapshot.get().getProducto(productoId));
+    }
+
+    public List<Categoria> obtenerCategorias() {
+        return snapshot.get().getCategorias();
+    }
+}
@@ -0,0 +1,120 @@
+package eco.market.service;
+
+import eco.market.dto.ProductoResponse;
+import eco.market.entity.Categoria;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Vista inmutable del catálogo público (productos activos y verificados).
+// Nunca se modifica: cada cambio produce un snapshot nuevo a partir del anterior.
+public final class CatalogoSnapshot {
+
+    // Mismo orden que el listado público: más recientes primero
+    static final Comparator<ProductoResponse> ORDEN_CATALOGO = Comparator
+            .comparing(ProductoResponse::getFechaCreacion, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(ProductoResponse::getProductoId, Comparator.reverseOrder());
+
+    private final List<ProductoResponse> productos;
+    private final Map<Integer, ProductoResponse> porId;
+    private final Map<Integer, List<ProductoResponse>> porCategoria;
+    private final List<Categoria> categorias;
+
+    private CatalogoSnapshot(List<ProductoResponse> productos, Map<Integer, ProductoResponse> porId,
+            Map<Integer, List<ProductoResponse>> porCategoria, List<Categoria> categorias) {
+        this.productos = productos;
+        this.porId = porId;
+        this.porCategoria = porCategoria;
+        this.categorias = categorias;
+    }
+
+    public static CatalogoSnapshot crear(Collection<ProductoResponse> productos, List<Categoria> categorias) {
+        List<ProductoResponse> ordenados = new ArrayList<>(productos);
+        ordenados.sort(ORDEN_CATALOGO);
+
+        Map<Integer, ProductoResponse> porId = new HashMap<>();
+        Map<Integer, List<ProductoResponse>> porCategoria = new HashMap<>();
+        for (ProductoResponse producto : ordenados) {
+            porId.put(producto.getProductoId(), producto);
+            porCategoria.computeIfAbsent(producto.getCategoriaId(), k -> new ArrayList<>()).add(producto);
+        }
+        porCategoria.replaceAll((k, lista) -> Collections.unmodifiableList(lista));
+
+        return new CatalogoSnapshot(Collections.unmodifiableList(ordenados), Collections.unmodifiableMap(porId),
+                Collections.unmodifiableMap(porCategoria), List.copyOf(categorias));
+    }
+
+    // Devuelve un snapshot nuevo sustituyendo los productos indicados; los ids de
+    // "afectados" que no aparecen en "actuales" dejan de estar en el catálogo.
+    public CatalogoSnapshot conCambios(Set<Integer> afectados, Collection<ProductoResponse> actuales) {
+        Set<Integer> categoriasAfectadas = new HashSet<>();
+        Map<Integer, ProductoResponse> nuevoPorId = new HashMap<>(porId);
+        for (Integer id : afectados) {
+            ProductoResponse anterior = nuevoPorId.remove(id);
+            if (anterior != null) {
+                categoriasAfectadas.add(anterior.getCategoriaId());
+            }
+        }
+        for (ProductoResponse producto : actuales) {
+            nuevoPorId.put(producto.getProductoId(), producto);
+            categoriasAfectadas.add(producto.getCategoriaId());
+        }
+
+        List<ProductoResponse> nuevosProductos = reemplazar(productos, afectados, actuales);
+
+        Map<Integer, List<ProductoResponse>> nuevoPorCategoria = new HashMap<>(porCategoria);
+        for (Integer categoriaId : categoriasAfectadas) {
+            List<ProductoResponse> deCategoria = actuales.stream()
+                    .filter(p -> p.getCategoriaId().equals(categoriaId))
+                    .toList();
+            List<ProductoResponse> lista = reemplazar(porCategoria.getOrDefault(categoriaId, List.of()),
+                    afectados, deCategoria);
+            if (lista.isEmpty()) {
+                nuevoPorCategoria.remove(categoriaId);
+            } else {
+                nuevoPorCategoria.put(categoriaId, lista);
+            }
+        }
+
+        return new CatalogoSnapshot(nuevosProductos, Collections.unmodifiableMap(nuevoPorId),
+                Collections.unmodifiableMap(nuevoPorCategoria), categorias);
+    }
+
+    private static List<ProductoResponse> reemplazar(List<ProductoResponse> ordenados, Set<Integer> afectados,
+            Collection<ProductoResponse> nuevos) {
+        List<ProductoResponse> resultado = new ArrayList<>(ordenados.size() + nuevos.size());
+        for (ProductoResponse producto : ordenados) {
+            if (!afectados.contains(producto.getProductoId())) {
+                resultado.add(producto);
+            }
+        }
+        for (ProductoResponse producto : nuevos) {
+            int posicion = Collections.binarySearch(resultado, producto, ORDEN_CATALOGO);
+            resultado.add(posicion < 0 ? -posicion - 1 : posicion, producto);
+        }
+        return Collections.unmodifiableList(resultado);
+    }
+
+    public List<ProductoResponse> getProductos() {
+        return productos;
+    }
+
+    public ProductoResponse getProducto(Integer productoId) {
+        return porId.get(productoId);
+    }
+
+    public List<ProductoResponse> getProductosPorCategoria(Integer categoriaId) {
+        return porCategoria.getOrDefault(categoriaId, List.of());
+    }
+
+    public List<Categoria> getCategorias() {
+        return categorias;
+    }
+}
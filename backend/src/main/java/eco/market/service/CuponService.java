@@ -14,6 +14,9 @@ public class CuponService {
     @Autowired
     private CuponRepository cuponRepository;
 
+    @Autowired
+    private VersionColecciones versionColecciones;
+
     public Cupon crearCupon(CuponRequest request) {
         Cupon cupon = new Cupon();
         cupon.setCodigo(request.getCodigo().toUpperCase());
@@ -28,7 +31,9 @@ public class CuponService {
         cupon.setEstaActivo(true);
         cupon.setUsosActuales(0);
 
-        return cuponRepository.save(cupon);
+        cupon = cuponRepository.save(cupon);
+        versionColecciones.incrementar(VersionColecciones.Coleccion.CUPONES);
+        return cupon;
     }
 
     public Cupon validarCupon(String codigo) {
@@ -62,6 +67,7 @@ public class CuponService {
 
         cupon.setUsosActuales(cupon.getUsosActuales() + 1);
         cuponRepository.save(cupon);
+        versionColecciones.incrementar(VersionColecciones.Coleccion.CUPONES);
     }
 
     public List<Cupon> obtenerCuponesActivos() {
@@ -73,5 +79,6 @@ public class CuponService {
                 .orElseThrow(() -> new RuntimeException("Cupón no encontrado"));
         cupon.setEstaActivo(false);
         cuponRepository.save(cupon);
+        versionColecciones.incrementar(VersionColecciones.Coleccion.CUPONES);
     }
 }
@@ -0,0 +1,31 @@
+package eco.market.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+// Cursor opaco de la paginación por clave (fecha, id), compartido por los listados paginados
+final class CursorPagina {
+
+    record Posicion(LocalDateTime fecha, Integer id) {
+    }
+
+    private CursorPagina() {
+    }
+
+    static String codificar(LocalDateTime fecha, Integer id) {
+        String valor = fecha + "_" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Posicion decodificar(String cursor) {
+        try {
+            String valor = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separador = valor.lastIndexOf('_');
+            return new Posicion(LocalDateTime.parse(valor.substring(0, separador)),
+                    Integer.valueOf(valor.substring(separador + 1)));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Cursor de paginación inválido");
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package eco.market.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eco.market.entity.EventoSalida;
+import eco.market.entity.Notificacion;
+import eco.market.repository.EventoSalidaRepository;
+import eco.market.repository.NotificacionRepository;
+import eco.market.repository.UsuarioRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Despacho de la bandeja de salida (Eventos_Salida). Los eventos se guardan en la transacción
+// del pedido y, tras el commit, un hilo por tipo los toma en lotes: las notificaciones se
+// insertan con un solo saveAll y los correos se envían por una sola conexión SMTP.
+// Un fallo reprograma el evento con espera exponencial hasta agotar los intentos.
+@Service
+public class DespachadorEventos {
+
+    public record NotificacionPendiente(Integer usuarioId, String titulo, String mensaje,
+            Notificacion.TipoNotificacion tipo) {
+    }
+
+    public record ComprobanteCompra(String email, String nombre, Integer pedidoId, BigDecimal total) {
+    }
+
+    @Autowired
+    private EventoSalidaRepository eventoSalidaRepository;
+
+    @Autowired
+    private NotificacionRepository notificacionRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${app.eventos-salida.tamano-lote:100}")
+    private int tamanoLote;
+
+    @Value("${app.eventos-salida.max-intentos:8}")
+    private int maximoIntentos;
+
+    @Value("${app.eventos-salida.reintento-base-ms:1000}")
+    private long reintentoBase;
+
+    @Value("${app.eventos-salida.reintento-max-ms:600000}")
+    private long reintentoMaximo;
+
+    // Tiempo que un lote tomado queda reservado para este nodo
+    @Value("${app.eventos-salida.reserva-ms:300000}")
+    private long reserva;
+
+    @Value("${app.eventos-salida.retencion-dias:7}")
+    private long retencionDias;
+
+    // Un carril por tipo, para que un servidor SMTP lento no retrase las notificaciones
+    private final Map<EventoSalida.TipoEvento, Carril> carriles = new EnumMap<>(EventoSalida.TipoEvento.class);
+
+    private final AtomicLong enviados = new AtomicLong();
+    private final AtomicLong reintentos = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong retrasoTotalMs = new AtomicLong();
+    private final AtomicLong retrasoMaximoMs = new AtomicLong();
+
+    private static class Carril {
+        private final ExecutorService hilo;
+        private final AtomicBoolean programado = new AtomicBoolean();
+
+        Carril(String nombre) {
+            hilo = Executors.newSingleThreadExecutor(tarea -> {
+                Thread thread = new Thread(tarea, nombre);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public DespachadorEventos() {
+        for (EventoSalida.TipoEvento tipo : EventoSalida.TipoEvento.values()) {
+            carriles.put(tipo, new Carril("eventos-salida-" + tipo.name().toLowerCase()));
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        carriles.values().forEach(carril -> carril.hilo.shutdownNow());
+    }
+
+    public EventoSalida notificacion(Integer usuarioId, String titulo, String mensaje,
+            Notificacion.TipoNotificacion tipo) {
+        return evento(EventoSalida.TipoEvento.NOTIFICACION, new NotificacionPendiente(usuarioId, titulo, mensaje, tipo));
+    }
+
+    public EventoSalida comprobanteCompra(String email, String nombre, Integer pedidoId, BigDecimal total) {
+        return evento(EventoSalida.TipoEvento.CORREO_COMPRA, new ComprobanteCompra(email, nombre, pedidoId, total));
+    }
+
+    // Se llama dentro de la transacción que produce los eventos; si esta se revierte, no se envía nada
+    public void registrar(List<EventoSalida> eventos) {
+        eventoSalidaRepository.saveAll(eventos);
+        Set<EventoSalida.TipoEvento> tipos = Collections.newSetFromMap(new EnumMap<>(EventoSalida.TipoEvento.class));
+        eventos.forEach(evento -> tipos.add(evento.getTipo()));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    tipos.forEach(DespachadorEventos.this::despertar);
+                }
+            });
+        } else {
+            tipos.forEach(this::despertar);
+        }
+    }
+
+    // Recoge reintentos vencidos y eventos de otros nodos o de antes de un reinicio
+    @Scheduled(fixedDelayString = "${app.eventos-salida.intervalo-ms:5000}")
+    public void revisarPendientes() {
+        carriles.keySet().forEach(this::despertar);
+    }
+
+    @Scheduled(fixedDelayString = "${app.eventos-salida.intervalo-limpieza-ms:3600000}")
+    public void eliminarEnviados() {
+        transactionTemplate.executeWithoutResult(status ->
+                eventoSalidaRepository.eliminarEnviados(LocalDateTime.now().minusDays(retencionDias)));
+    }
+
+    public Map<String, Object> metricas() {
+        LocalDateTime masAntiguo = eventoSalidaRepository.findFechaPendienteMasAntigua();
+        long enviadosTotal = enviados.get();
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("pendientes", eventoSalidaRepository.countByEstado(EventoSalida.EstadoEvento.PENDIENTE));
+        metricas.put("fallidos", eventoSalidaRepository.countByEstado(EventoSalida.EstadoEvento.FALLIDO));
+        metricas.put("retrasoActualMs", masAntiguo == null ? 0
+                : Math.max(0, Duration.between(masAntiguo, LocalDateTime.now()).toMillis()));
+        metricas.put("enviados", enviadosTotal);
+        metricas.put("reintentos", reintentos.get());
+        metricas.put("descartados", descartados.get());
+        metricas.put("retrasoPromedioMs", enviadosTotal == 0 ? 0 : retrasoTotalMs.get() / enviadosTotal);
+        metricas.put("retrasoMaximoMs", retrasoMaximoMs.get());
+        return metricas;
+    }
+
+    private EventoSalida evento(EventoSalida.TipoEvento tipo, Object carga) {
+        EventoSalida evento = new EventoSalida();
+        evento.setTipo(tipo);
+        try {
+            evento.setCarga(objectMapper.writeValueAsString(carga));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("No se pudo serializar el evento " + tipo, e);
+        }
+        return evento;
+    }
+
+    // Varias llamadas seguidas se juntan en una sola pasada del carril
+    private void despertar(EventoSalida.TipoEvento tipo) {
+        Carril carril = carriles.get(tipo);
+        if (carril.programado.compareAndSet(false, true)) {
+            carril.hilo.execute(() -> {
+                carril.programado.set(false);
+                drenar(tipo);
+            });
+        }
+    }
+
+    private void drenar(EventoSalida.TipoEvento tipo) {
+        try {
+            List<EventoSalida> lote;
+            do {
+                lote = tomarLote(tipo);
+                if (tipo == EventoSalida.TipoEvento.NOTIFICACION) {
+                    enviarNotificaciones(lote);
+                } else {
+                    enviarCorreos(lote);
+                }
+            } while (lote.size() == tamanoLote);
+        } catch (RuntimeException e) {
+            System.err.println("Error despachando eventos " + tipo + ": " + e.getMessage());
+        }
+    }
+
+    private List<EventoSalida> tomarLote(EventoSalida.TipoEvento tipo) {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime ahora = LocalDateTime.now();
+            List<EventoSalida> lote = eventoSalidaRepository.findListos(tipo, ahora, Limit.of(tamanoLote));
+            lote.forEach(evento -> evento.setProximoIntento(ahora.plus(Duration.ofMillis(reserva))));
+            return lote;
+        });
+    }
+
+    private void enviarNotificaciones(List<EventoSalida> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Notificacion> notificaciones = new ArrayList<>(lote.size());
+                for (EventoSalida evento : lote) {
+                    NotificacionPendiente pendiente = leer(evento, NotificacionPendiente.class);
+                    Notificacion notificacion = new Notificacion();
+                    notificacion.setUsuario(usuarioRepository.getReferenceById(pendiente.usuarioId()));
+                    notificacion.setTitulo(pendiente.titulo());
+                    notificacion.setMensaje(pendiente.mensaje());
+                    notificacion.setTipo(pendiente.tipo());
+                    notificacion.setFechaCreacion(evento.getFechaCreacion());
+                    notificaciones.add(notificacion);
+                }
+                notificacionRepository.saveAll(notificaciones);
+                eventoSalidaRepository.marcarEnviados(ids(lote), LocalDateTime.now());
+            });
+            contarEnviados(lote);
+        } catch (RuntimeException e) {
+            if (lote.size() == 1) {
+                fallar(lote, e.getMessage());
+            } else {
+                // Se reintenta uno a uno para que un evento defectuoso no bloquee al resto del lote
+                lote.forEach(evento -> enviarNotificaciones(List.of(evento)));
+            }
+        }
+    }
+
+    private void enviarCorreos(List<EventoSalida> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        Map<SimpleMailMessage, EventoSalida> mensajes = new IdentityHashMap<>();
+        for (EventoSalida evento : lote) {
+            ComprobanteCompra comprobante = leer(evento, ComprobanteCompra.class);
+            mensajes.put(emailService.buildPurchaseReceipt(comprobante.email(), comprobante.nombre(),
+                    comprobante.pedidoId(), comprobante.total()), evento);
+        }
+
+        List<EventoSalida> fallidos = new ArrayList<>();
+        String error = null;
+        try {
+            emailService.sendBatch(mensajes.keySet().toArray(new SimpleMailMessage[0]));
+        } catch (MailSendException e) {
+            error = e.getMessage();
+            for (Object mensaje : e.getFailedMessages().keySet()) {
+                EventoSalida evento = mensajes.get(mensaje);
+                if (evento != null) {
+                    fallidos.add(evento);
+                }
+            }
+            if (fallidos.isEmpty()) {
+                fallidos.addAll(lote);
+            }
+        } catch (MailException e) {
+            error = e.getMessage();
+            fallidos.addAll(lote);
+        }
+
+        List<EventoSalida> enviadosLote = new ArrayList<>(lote);
+        enviadosLote.removeAll(fallidos);
+        if (!enviadosLote.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status ->
+                    eventoSalidaRepository.marcarEnviados(ids(enviadosLote), LocalDateTime.now()));
+            contarEnviados(enviadosLote);
+        }
+        if (!fallidos.isEmpty()) {
+            fallar(fallidos, error);
+        }
+    }
+
+    private void fallar(List<EventoSalida> eventos, String error) {
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime ahora = LocalDateTime.now();
+            for (EventoSalida evento : eventoSalidaRepository.findAllById(ids(eventos))) {
+                evento.setIntentos(evento.getIntentos() + 1);
+                evento.setUltimoError(error == null || error.length() <= 500 ? error : error.substring(0, 500));
+                if (evento.getIntentos() >= maximoIntentos) {
+                    evento.setEstado(EventoSalida.EstadoEvento.FALLIDO);
+                    descartados.incrementAndGet();
+                    System.err.println("Evento " + evento.getEventoId() + " descartado tras "
+                            + evento.getIntentos() + " intentos: " + error);
+                } else {
+                    evento.setProximoIntento(ahora.plus(Duration.ofMillis(espera(evento.getIntentos()))));
+                    reintentos.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    // 1 s, 2 s, 4 s... hasta el máximo configurado
+    private long espera(int intentos) {
+        return Math.min(reintentoBase << Math.min(intentos - 1, 30), reintentoMaximo);
+    }
+
+    private void contarEnviados(List<EventoSalida> eventos) {
+        LocalDateTime ahora = LocalDateTime.now();
+        for (EventoSalida evento : eventos) {
+            long retraso = Duration.between(evento.getFechaCreacion(), ahora).toMillis();
+            retrasoTotalMs.addAndGet(retraso);
+            retrasoMaximoMs.accumulateAndGet(retraso, Math::max);
+        }
+        enviados.addAndGet(eventos.size());
+    }
+
+    private <T> T leer(EventoSalida evento, Class<T> tipo) {
+        try {
+            return objectMapper.readValue(evento.getCarga(), tipo);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Evento " + evento.getEventoId() + " con carga inválida", e);
+        }
+    }
+
+    private List<Long> ids(List<EventoSalida> eventos) {
+        return eventos.stream().map(EventoSalida::getEventoId).toList();
+    }
+}
@@ -100,8 +100,8 @@ public class EmailService {
         }
     }
 
-    @org.springframework.scheduling.annotation.Async
-    public void sendPurchaseReceipt(String email, String nombre, Integer pedidoId, java.math.BigDecimal total) {
+    public SimpleMailMessage buildPurchaseReceipt(String email, String nombre, Integer pedidoId,
+            java.math.BigDecimal total) {
         SimpleMailMessage message = new SimpleMailMessage();
         message.setTo(email);
         message.setSubject("Confirmación de Pedido #" + pedidoId + " - Ecomarket");
@@ -121,12 +121,12 @@ public class EmailService {
                 total);
 
         message.setText(text);
+        return message;
+    }
 
-        try {
-            mailSender.send(message);
-            System.out.println("Comprobante de compra enviado a: " + email);
-        } catch (Exception e) {
-            System.err.println("Error enviando comprobante de compra: " + e.getMessage());
-        }
+    // Envío síncrono de varios mensajes por una sola conexión SMTP. Los errores se propagan
+    // (MailSendException indica qué mensajes fallaron) para que quien llama pueda reintentar.
+    public void sendBatch(SimpleMailMessage... messages) {
+        mailSender.send(messages);
     }
 }
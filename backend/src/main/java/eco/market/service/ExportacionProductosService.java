@@ -0,0 +1,156 @@
+package eco.market.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import eco.market.dto.ProductoResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// Exportación del catálogo activo para socios y feeds. Las filas se leen de un cursor del servidor
+// y se escriben una a una en la salida, así la memoria no depende del tamaño del catálogo.
+//
+// En MySQL el driver solo respeta el fetch size con useCursorFetch=true, que convierte todas las
+// sentencias en preparadas del lado del servidor. Para no pagar eso en el resto de consultas, la
+// exportación usa su propio pool pequeño y solo sus conexiones llevan la propiedad.
+@Service
+public class ExportacionProductosService {
+
+    private static final String CABECERA_CSV = "productoId,nombreProducto,descripcion,precio,precioOriginal,stock,"
+            + "imagenPrincipal,esOrganico,esVegano,peso,unidadMedida,calificacionPromedio,totalCalificaciones,"
+            + "categoriaId,nombreCategoria,nombreVendedor,fechaCreacion";
+
+    // Mismas columnas y orden que ProductoRepository.findCatalogResponses
+    private static final String CONSULTA_CATALOGO = "SELECT p.producto_id, p.nombre_producto, p.descripcion, "
+            + "p.precio, p.precio_original, p.stock, p.imagen_principal, p.es_organico, p.es_vegano, p.peso, "
+            + "p.unidad_medida, p.calificacion_promedio, p.total_calificaciones, c.categoria_id, c.nombre_categoria, "
+            + "CONCAT(v.nombre, ' ', v.apellido) AS nombre_vendedor, p.fecha_creacion, p.version "
+            + "FROM productos p JOIN categorias c ON c.categoria_id = p.categoria_id "
+            + "JOIN usuarios v ON v.usuario_id = p.vendedor_id "
+            + "WHERE p.esta_activo = true AND p.esta_verificado = true "
+            + "ORDER BY p.fecha_creacion DESC, p.producto_id DESC";
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.exportacion.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${app.exportacion.conexiones:2}")
+    private int conexiones;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void iniciar() {
+        // Pool perezoso: no abre conexiones hasta la primera exportación
+        dataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("exportacion");
+        dataSource.setMaximumPoolSize(conexiones);
+        dataSource.setMinimumIdle(0);
+        dataSource.setReadOnly(true);
+        if (dataSource.getJdbcUrl() != null && dataSource.getJdbcUrl().startsWith("jdbc:mysql:")) {
+            dataSource.addDataSourceProperty("useCursorFetch", "true");
+        }
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @PreDestroy
+    public void detener() {
+        dataSource.close();
+    }
+
+    // El Stream mantiene la conexión y el cursor abiertos hasta que se cierra
+    public long exportar(FormatoCatalogo formato, OutputStream salida) throws IOException {
+        try (Stream<ProductoResponse> productos = jdbcTemplate.queryForStream(CONSULTA_CATALOGO, this::leerFila)) {
+            return formato == FormatoCatalogo.CSV ? escribirCsv(productos, salida) : escribirNdjson(productos, salida);
+        }
+    }
+
+    private ProductoResponse leerFila(ResultSet rs, int fila) throws SQLException {
+        return new ProductoResponse(rs.getObject("producto_id", Integer.class), rs.getString("nombre_producto"),
+                rs.getString("descripcion"), rs.getBigDecimal("precio"), rs.getBigDecimal("precio_original"),
+                rs.getObject("stock", Integer.class), rs.getString("imagen_principal"),
+                rs.getObject("es_organico", Boolean.class), rs.getObject("es_vegano", Boolean.class),
+                rs.getBigDecimal("peso"), rs.getString("unidad_medida"), rs.getBigDecimal("calificacion_promedio"),
+                rs.getObject("total_calificaciones", Integer.class), rs.getObject("categoria_id", Integer.class),
+                rs.getString("nombre_categoria"), rs.getString("nombre_vendedor"),
+                rs.getObject("fecha_creacion", LocalDateTime.class), rs.getObject("version", Long.class));
+    }
+
+    private long escribirNdjson(Stream<ProductoResponse> productos, OutputStream salida) throws IOException {
+        long total = 0;
+        ObjectWriter writer = objectMapper.writerFor(ProductoResponse.class);
+        Iterator<ProductoResponse> iterador = productos.iterator();
+        while (iterador.hasNext()) {
+            salida.write(writer.writeValueAsBytes(iterador.next()));
+            salida.write('\n');
+            total++;
+        }
+        salida.flush();
+        return total;
+    }
+
+    private long escribirCsv(Stream<ProductoResponse> productos, OutputStream salida) throws IOException {
+        long total = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+        writer.write(CABECERA_CSV);
+        writer.write('\n');
+        Iterator<ProductoResponse> iterador = productos.iterator();
+        while (iterador.hasNext()) {
+            ProductoResponse p = iterador.next();
+            escribirFila(writer, p.getProductoId(), p.getNombreProducto(), p.getDescripcion(), p.getPrecio(),
+                    p.getPrecioOriginal(), p.getStock(), p.getImagenPrincipal(), p.getEsOrganico(), p.getEsVegano(),
+                    p.getPeso(), p.getUnidadMedida(), p.getCalificacionPromedio(), p.getTotalCalificaciones(),
+                    p.getCategoriaId(), p.getNombreCategoria(), p.getNombreVendedor(), p.getFechaCreacion());
+            total++;
+        }
+        writer.flush();
+        return total;
+    }
+
+    private void escribirFila(Writer writer, Object... valores) throws IOException {
+        for (int i = 0; i < valores.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escaparCsv(valores[i]));
+        }
+        writer.write('\n');
+    }
+
+    // RFC 4180: se entrecomillan los campos con comas, comillas o saltos de línea
+    private String escaparCsv(Object valor) {
+        if (valor == null) {
+            return "";
+        }
+        String texto = valor instanceof BigDecimal decimal ? decimal.toPlainString() : valor.toString();
+        if (texto.indexOf(',') < 0 && texto.indexOf('"') < 0 && texto.indexOf('\n') < 0 && texto.indexOf('\r') < 0) {
+            return texto;
+        }
+        return "\"" + texto.replace("\"", "\"\"") + "\"";
+    }
+}
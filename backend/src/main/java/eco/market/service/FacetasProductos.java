@@ -0,0 +1,287 @@
+package eco.market.service;
+
+import eco.market.dto.FacetasResponse;
+import eco.market.dto.ProductoResponse;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Motor de facetas del catálogo: un bitmap comprimido (Roaring) por valor de faceta sobre
+// ordinales de producto. Los filtros se resuelven con intersecciones y los conteos de la
+// barra lateral con cardinalidades de intersección, sin recorrer productos.
+@Service
+public class FacetasProductos implements IndiceCatalogo {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final BigDecimal[] limitesPrecio;
+    private final Map<Integer, Integer> ordinales = new HashMap<>();
+    private final Deque<Integer> ordinalesLibres = new ArrayDeque<>();
+    private ProductoResponse[] documentos = new ProductoResponse[1024];
+    private int siguienteOrdinal;
+
+    private final RoaringBitmap todos = new RoaringBitmap();
+    private final RoaringBitmap organicos = new RoaringBitmap();
+    private final RoaringBitmap veganos = new RoaringBitmap();
+    private final Map<Integer, RoaringBitmap> porCategoria = new TreeMap<>();
+    private final RoaringBitmap[] porRangoPrecio;
+
+    public FacetasProductos(@Value("${app.catalogo.facetas.rangos-precio:5,10,20,50}") BigDecimal[] limitesPrecio) {
+        this.limitesPrecio = limitesPrecio.clone();
+        Arrays.sort(this.limitesPrecio);
+        this.porRangoPrecio = new RoaringBitmap[this.limitesPrecio.length + 1];
+        for (int i = 0; i < porRangoPrecio.length; i++) {
+            porRangoPrecio[i] = new RoaringBitmap();
+        }
+    }
+
+    public FacetasResponse filtrar(Boolean esOrganico, Boolean esVegano, List<Integer> categoriaIds,
+            BigDecimal precioMin, BigDecimal precioMax, int pagina, int tamano) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap filtroOrganico = filtroBooleano(organicos, esOrganico);
+            RoaringBitmap filtroVegano = filtroBooleano(veganos, esVegano);
+            RoaringBitmap filtroCategoria = filtroCategorias(categoriaIds);
+            RoaringBitmap filtroPrecio = filtroPrecio(precioMin, precioMax);
+
+            RoaringBitmap resultado = interseccion(filtroOrganico, filtroVegano, filtroCategoria, filtroPrecio);
+
+            // Facetas disyuntivas: cada faceta se cuenta aplicando todos los filtros menos el suyo
+            Map<String, Map<String, Long>> facetas = new LinkedHashMap<>();
+            facetas.put("esOrganico", conteoBooleano(organicos,
+                    interseccion(filtroVegano, filtroCategoria, filtroPrecio)));
+            facetas.put("esVegano", conteoBooleano(veganos,
+                    interseccion(filtroOrganico, filtroCategoria, filtroPrecio)));
+
+            RoaringBitmap sinCategoria = interseccion(filtroOrganico, filtroVegano, filtroPrecio);
+            Map<String, Long> conteoCategorias = new LinkedHashMap<>();
+            porCategoria.forEach((categoriaId, bitmap) -> conteoCategorias.put(String.valueOf(categoriaId),
+                    (long) RoaringBitmap.andCardinality(sinCategoria, bitmap)));
+            facetas.put("categoria", conteoCategorias);
+
+            RoaringBitmap sinPrecio = interseccion(filtroOrganico, filtroVegano, filtroCategoria);
+            Map<String, Long> conteoPrecios = new LinkedHashMap<>();
+            for (int i = 0; i < porRangoPrecio.length; i++) {
+                conteoPrecios.put(etiquetaRango(i), (long) RoaringBitmap.andCardinality(sinPrecio, porRangoPrecio[i]));
+            }
+            facetas.put("precio", conteoPrecios);
+
+            return new FacetasResponse(resultado.getLongCardinality(), pagina(resultado, pagina, tamano), facetas);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void reconstruir(Collection<ProductoResponse> productos) {
+        lock.writeLock().lock();
+        try {
+            ordinales.clear();
+            ordinalesLibres.clear();
+            documentos = new ProductoResponse[Math.max(1024, productos.size())];
+            siguienteOrdinal = 0;
+            todos.clear();
+            organicos.clear();
+            veganos.clear();
+            porCategoria.clear();
+            for (RoaringBitmap rango : porRangoPrecio) {
+                rango.clear();
+            }
+            productos.forEach(this::agregar);
+            optimizar();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void actualizar(Set<Integer> afectados, Collection<ProductoResponse> actuales) {
+        lock.writeLock().lock();
+        try {
+            afectados.forEach(this::quitar);
+            actuales.forEach(this::agregar);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void agregar(ProductoResponse producto) {
+        int ordinal = ordinalesLibres.isEmpty() ? siguienteOrdinal++ : ordinalesLibres.pop();
+        if (ordinal >= documentos.length) {
+            documentos = Arrays.copyOf(documentos, documentos.length * 2);
+        }
+        documentos[ordinal] = producto;
+        ordinales.put(producto.getProductoId(), ordinal);
+
+        todos.add(ordinal);
+        if (Boolean.TRUE.equals(producto.getEsOrganico())) {
+            organicos.add(ordinal);
+        }
+        if (Boolean.TRUE.equals(producto.getEsVegano())) {
+            veganos.add(ordinal);
+        }
+        porCategoria.computeIfAbsent(producto.getCategoriaId(), k -> new RoaringBitmap()).add(ordinal);
+        porRangoPrecio[rango(producto.getPrecio())].add(ordinal);
+    }
+
+    private void quitar(Integer productoId) {
+        Integer ordinal = ordinales.remove(productoId);
+        if (ordinal == null) {
+            return;
+        }
+        ProductoResponse producto = documentos[ordinal];
+        todos.remove(ordinal);
+        organicos.remove(ordinal);
+        veganos.remove(ordinal);
+        RoaringBitmap categoria = porCategoria.get(producto.getCategoriaId());
+        categoria.remove(ordinal);
+        if (categoria.isEmpty()) {
+            porCategoria.remove(producto.getCategoriaId());
+        }
+        porRangoPrecio[rango(producto.getPrecio())].remove(ordinal);
+        documentos[ordinal] = null;
+        ordinalesLibres.push(ordinal);
+    }
+
+    private void optimizar() {
+        todos.runOptimize();
+        organicos.runOptimize();
+        veganos.runOptimize();
+        porCategoria.values().forEach(RoaringBitmap::runOptimize);
+        Arrays.stream(porRangoPrecio).forEach(RoaringBitmap::runOptimize);
+    }
+
+    // null significa "sin filtro" para que las intersecciones lo ignoren
+    private RoaringBitmap filtroBooleano(RoaringBitmap marcados, Boolean valor) {
+        if (valor == null) {
+            return null;
+        }
+        return valor ? marcados : RoaringBitmap.andNot(todos, marcados);
+    }
+
+    private RoaringBitmap filtroCategorias(List<Integer> categoriaIds) {
+        if (categoriaIds == null || categoriaIds.isEmpty()) {
+            return null;
+        }
+        RoaringBitmap union = new RoaringBitmap();
+        for (Integer categoriaId : categoriaIds) {
+            RoaringBitmap bitmap = porCategoria.get(categoriaId);
+            if (bitmap != null) {
+                union.or(bitmap);
+            }
+        }
+        return union;
+    }
+
+    // Los rangos completamente incluidos se toman tal cual; en los de los extremos
+    // se comprueba el precio de cada producto.
+    private RoaringBitmap filtroPrecio(BigDecimal precioMin, BigDecimal precioMax) {
+        if (precioMin == null && precioMax == null) {
+            return null;
+        }
+        RoaringBitmap resultado = new RoaringBitmap();
+        for (int i = 0; i < porRangoPrecio.length; i++) {
+            BigDecimal desde = i == 0 ? null : limitesPrecio[i - 1];
+            BigDecimal hasta = i == limitesPrecio.length ? null : limitesPrecio[i];
+            if ((precioMax != null && desde != null && desde.compareTo(precioMax) > 0)
+                    || (precioMin != null && hasta != null && hasta.compareTo(precioMin) <= 0)) {
+                continue;
+            }
+            boolean completo = (precioMin == null || (desde != null && desde.compareTo(precioMin) >= 0))
+                    && (precioMax == null || (hasta != null && hasta.compareTo(precioMax) <= 0));
+            if (completo) {
+                resultado.or(porRangoPrecio[i]);
+            } else {
+                porRangoPrecio[i].forEach((int ordinal) -> {
+                    BigDecimal precio = documentos[ordinal].getPrecio();
+                    if ((precioMin == null || precio.compareTo(precioMin) >= 0)
+                            && (precioMax == null || precio.compareTo(precioMax) <= 0)) {
+                        resultado.add(ordinal);
+                    }
+                });
+            }
+        }
+        return resultado;
+    }
+
+    private RoaringBitmap interseccion(RoaringBitmap... filtros) {
+        RoaringBitmap resultado = todos.clone();
+        for (RoaringBitmap filtro : filtros) {
+            if (filtro != null) {
+                resultado.and(filtro);
+            }
+        }
+        return resultado;
+    }
+
+    private Map<String, Long> conteoBooleano(RoaringBitmap marcados, RoaringBitmap base) {
+        long conValor = RoaringBitmap.andCardinality(base, marcados);
+        Map<String, Long> conteo = new LinkedHashMap<>();
+        conteo.put("true", conValor);
+        conteo.put("false", base.getLongCardinality() - conValor);
+        return conteo;
+    }
+
+    // Los ordinales se reutilizan, así que el orden del bitmap no dice nada: la página sale en el orden
+    // del catálogo, conservando en un heap acotado solo los primeros desde + tamano resultados
+    private List<ProductoResponse> pagina(RoaringBitmap resultado, int pagina, int tamano) {
+        long desde = (long) pagina * tamano;
+        long cardinalidad = resultado.getLongCardinality();
+        if (desde >= cardinalidad) {
+            return new ArrayList<>();
+        }
+        int primeros = (int) Math.min(cardinalidad, desde + tamano);
+        PriorityQueue<ProductoResponse> heap = new PriorityQueue<>(primeros,
+                CatalogoSnapshot.ORDEN_CATALOGO.reversed());
+        resultado.forEach((int ordinal) -> {
+            ProductoResponse producto = documentos[ordinal];
+            if (heap.size() < primeros) {
+                heap.add(producto);
+            } else if (CatalogoSnapshot.ORDEN_CATALOGO.compare(producto, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(producto);
+            }
+        });
+        List<ProductoResponse> productos = new ArrayList<>(heap.size());
+        while (heap.size() > desde) {
+            productos.add(ProductoCatalogo.copia(heap.poll()));
+        }
+        Collections.reverse(productos);
+        return productos;
+    }
+
+    private int rango(BigDecimal precio) {
+        if (precio == null) {
+            return 0;
+        }
+        int i = 0;
+        while (i < limitesPrecio.length && precio.compareTo(limitesPrecio[i]) >= 0) {
+            i++;
+        }
+        return i;
+    }
+
+    private String etiquetaRango(int i) {
+        if (i == limitesPrecio.length) {
+            return limitesPrecio[i - 1].toPlainString() + "+";
+        }
+        String desde = i == 0 ? "0" : limitesPrecio[i - 1].toPlainString();
+        return desde + "-" + limitesPrecio[i].toPlainString();
+    }
+}
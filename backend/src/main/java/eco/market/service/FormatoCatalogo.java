@@ -0,0 +1,14 @@
+package eco.market.service;
+
+// Formatos de archivo aceptados en la exportación e importación masiva del catálogo
+public enum FormatoCatalogo {
+    NDJSON, CSV;
+
+    public static FormatoCatalogo desde(String formato) {
+        try {
+            return valueOf(formato.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Formato no soportado: " + formato);
+        }
+    }
+}
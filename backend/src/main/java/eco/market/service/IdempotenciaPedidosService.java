@@ -0,0 +1,243 @@
+package eco.market.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eco.market.dto.PedidoRequest;
+import eco.market.entity.Pedido;
+import eco.market.repository.ClaveIdempotenciaRepository;
+import eco.market.repository.PedidoRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// POST /api/pedidos con cabecera Idempotency-Key: la primera solicitud crea el pedido y las
+// repeticiones con la misma clave (del mismo usuario) devuelven ese mismo pedido.
+// En el nodo, un mapa acotado por tamaño y TTL guarda el resultado (o la ejecución en curso,
+// que los duplicados concurrentes esperan); la tabla Claves_Idempotencia lo comparte entre nodos.
+@Service
+public class IdempotenciaPedidosService {
+
+    private static final String CLAVE_REUTILIZADA = "La Idempotency-Key ya se usó con otro pedido";
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private ClaveIdempotenciaRepository claveIdempotenciaRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.idempotencia.ttl-minutos:1440}")
+    private long ttlMinutos;
+
+    @Value("${app.idempotencia.max-claves:10000}")
+    private int maximoClaves;
+
+    // Tiempo máximo que un duplicado espera a la ejecución en curso
+    @Value("${app.idempotencia.espera-max-ms:30000}")
+    private long esperaMaxima;
+
+    // Límite de la transacción que crea el pedido; una reserva en curso caduca al doble
+    @Value("${app.idempotencia.timeout-transaccion-s:30}")
+    private int timeoutTransaccion;
+
+    private TransactionTemplate transaccionPedido;
+
+    // El TTL es fijo, así que el orden de inserción es también el orden de expiración
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>();
+
+    private record Entrada(String huella, CompletableFuture<Integer> pedidoId, LocalDateTime expiracion) {
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        transaccionPedido = new TransactionTemplate(transactionManager);
+        transaccionPedido.setTimeout(timeoutTransaccion);
+    }
+
+    public Pedido crearPedido(PedidoRequest request, String emailUsuario, String idempotencyKey) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > 255) {
+            throw new RuntimeException("Idempotency-Key inválida");
+        }
+        String clave = sha256((emailUsuario + "\n" + idempotencyKey).getBytes(StandardCharsets.UTF_8));
+        String huella = huella(request);
+
+        Entrada entrada;
+        boolean propia = false;
+        synchronized (entradas) {
+            LocalDateTime ahora = LocalDateTime.now();
+            purgar(ahora);
+            entrada = entradas.get(clave);
+            if (entrada == null) {
+                entrada = new Entrada(huella, new CompletableFuture<>(), ahora.plusMinutes(ttlMinutos));
+                entradas.put(clave, entrada);
+                propia = true;
+            }
+        }
+        if (!entrada.huella().equals(huella)) {
+            throw new RuntimeException(CLAVE_REUTILIZADA);
+        }
+        if (!propia) {
+            return cargarPedido(esperar(entrada.pedidoId()));
+        }
+
+        try {
+            Pedido pedido = ejecutar(clave, huella, request, emailUsuario);
+            entrada.pedidoId().complete(pedido.getPedidoId());
+            return pedido;
+        } catch (RuntimeException e) {
+            // Los que esperaban reciben el mismo error; un reintento posterior vuelve a ejecutarse
+            entrada.pedidoId().completeExceptionally(e);
+            synchronized (entradas) {
+                entradas.remove(clave, entrada);
+            }
+            throw e;
+        }
+    }
+
+    // Limpieza de claves caducadas en la tabla compartida
+    @Scheduled(fixedDelayString = "${app.idempotencia.intervalo-limpieza-ms:3600000}")
+    public void eliminarClavesExpiradas() {
+        claveIdempotenciaRepository.eliminarExpiradas(LocalDateTime.now());
+    }
+
+    private Pedido ejecutar(String clave, String huella, PedidoRequest request, String emailUsuario) {
+        long limite = System.currentTimeMillis() + esperaMaxima;
+        LocalDateTime reclamada;
+        while (true) {
+            LocalDateTime ahora = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            Optional<ClaveIdempotenciaRepository.Estado> existente = claveIdempotenciaRepository.findEstadoByClave(clave);
+            if (existente.isPresent()) {
+                ClaveIdempotenciaRepository.Estado estado = existente.get();
+                if (estado.getFechaExpiracion().isBefore(ahora)) {
+                    claveIdempotenciaRepository.eliminarExpiradas(ahora);
+                    continue;
+                }
+                if (!estado.getHuellaSolicitud().equals(huella)) {
+                    throw new RuntimeException(CLAVE_REUTILIZADA);
+                }
+                if (estado.getPedidoId() != null) {
+                    return cargarPedido(estado.getPedidoId());
+                }
+                // En curso en otro nodo. Pasado el doble del timeout de la transacción ya no puede
+                // confirmarse, y aunque llegara a hacerlo su completar no encontraría la reserva
+                if (estado.getFechaCreacion().plusSeconds(2L * timeoutTransaccion).isBefore(ahora)) {
+                    claveIdempotenciaRepository.liberar(clave, estado.getFechaCreacion());
+                    continue;
+                }
+                if (System.currentTimeMillis() > limite) {
+                    throw new RuntimeException("El pedido con esta Idempotency-Key todavía se está procesando");
+                }
+                dormir();
+                continue;
+            }
+            try {
+                claveIdempotenciaRepository.registrar(clave, huella, ahora, ahora.plusMinutes(ttlMinutos));
+                reclamada = ahora;
+                break;
+            } catch (DataIntegrityViolationException e) {
+                // Otro nodo la registró primero: se vuelve a consultar
+            }
+        }
+
+        LocalDateTime creacion = reclamada;
+        try {
+            // El pedido y su resultado se confirman en la misma transacción
+            return transaccionPedido.execute(status -> {
+                Pedido pedido = pedidoService.crearPedido(request, emailUsuario);
+                if (claveIdempotenciaRepository.completar(clave, creacion, pedido.getPedidoId()) != 1) {
+                    throw new RuntimeException("La Idempotency-Key fue reclamada por otra solicitud");
+                }
+                return pedido;
+            });
+        } catch (RuntimeException e) {
+            claveIdempotenciaRepository.liberar(clave, creacion);
+            throw e;
+        }
+    }
+
+    private Integer esperar(CompletableFuture<Integer> pedidoId) {
+        try {
+            return pedidoId.get(esperaMaxima, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("El pedido con esta Idempotency-Key todavía se está procesando");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Espera interrumpida");
+        }
+    }
+
+    private Pedido cargarPedido(Integer pedidoId) {
+        return pedidoRepository.findById(pedidoId)
+                .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
+    }
+
+    // Quita las caducadas y, si aún se supera el máximo, las más antiguas
+    private void purgar(LocalDateTime ahora) {
+        Iterator<Map.Entry<String, Entrada>> iterador = entradas.entrySet().iterator();
+        while (iterador.hasNext()) {
+            Entrada entrada = iterador.next().getValue();
+            if (entrada.expiracion().isAfter(ahora) && entradas.size() < maximoClaves) {
+                break;
+            }
+            iterador.remove();
+        }
+    }
+
+    private String huella(PedidoRequest request) {
+        try {
+            return sha256(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Pedido inválido");
+        }
+    }
+
+    private static String sha256(byte[] datos) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(datos));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void dormir() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Espera interrumpida");
+        }
+    }
+}
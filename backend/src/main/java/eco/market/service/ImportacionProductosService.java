@@ -0,0 +1,267 @@
+package eco.market.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import eco.market.dto.ImportacionResponse;
+import eco.market.dto.ProductoRequest;
+import eco.market.entity.Categoria;
+import eco.market.entity.Producto;
+import eco.market.entity.Usuario;
+import eco.market.repository.CategoriaRepository;
+import eco.market.repository.ProductoRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Alta masiva de productos de un vendedor. El archivo se lee fila a fila, cada fila se valida
+// contra ProductoRequest y un mapa de categorías cargado una sola vez, y las filas válidas se
+// insertan en lotes JDBC. Los productos quedan pendientes de verificación como en el alta normal.
+@Service
+public class ImportacionProductosService {
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.importacion.tamano-lote:1000}")
+    private int tamanoLote;
+
+    @Value("${app.importacion.max-errores:1000}")
+    private int maximoErrores;
+
+    @Transactional
+    public ImportacionResponse importar(FormatoCatalogo formato, InputStream entrada, String emailVendedor)
+            throws IOException {
+        Usuario vendedor = productoService.obtenerVendedor(emailVendedor);
+        Map<Integer, Categoria> categorias = categoriaRepository.findAll().stream()
+                .collect(Collectors.toMap(Categoria::getCategoriaId, Function.identity()));
+
+        ImportacionResponse resultado = new ImportacionResponse();
+        List<Producto> lote = new ArrayList<>(tamanoLote);
+        BufferedReader lector = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+
+        LectorFilas filas = formato == FormatoCatalogo.CSV ? new LectorCsv(lector) : new LectorNdjson(lector);
+        long numeroFila = 0;
+        while (true) {
+            ProductoRequest request;
+            try {
+                request = filas.siguiente();
+            } catch (FilaInvalidaException e) {
+                numeroFila++;
+                resultado.setProcesadas(resultado.getProcesadas() + 1);
+                rechazar(resultado, numeroFila, e.getMessage());
+                continue;
+            }
+            if (request == null) {
+                break;
+            }
+            numeroFila++;
+            resultado.setProcesadas(resultado.getProcesadas() + 1);
+
+            String error = validar(request, categorias);
+            if (error != null) {
+                rechazar(resultado, numeroFila, error);
+                continue;
+            }
+
+            Producto producto = new Producto();
+            producto.setVendedor(vendedor);
+            productoService.actualizarDatosProducto(producto, request, categorias.get(request.getCategoriaId()));
+            producto.setEstaVerificado(false);
+            lote.add(producto);
+
+            if (lote.size() >= tamanoLote) {
+                resultado.setImportadas(resultado.getImportadas() + productoRepository.insertarEnLote(lote));
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) {
+            resultado.setImportadas(resultado.getImportadas() + productoRepository.insertarEnLote(lote));
+        }
+        return resultado;
+    }
+
+    private String validar(ProductoRequest request, Map<Integer, Categoria> categorias) {
+        Set<ConstraintViolation<ProductoRequest>> violaciones = validator.validate(request);
+        if (!violaciones.isEmpty()) {
+            return violaciones.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+        if (!categorias.containsKey(request.getCategoriaId())) {
+            return "Categoría no encontrada: " + request.getCategoriaId();
+        }
+        return null;
+    }
+
+    private void rechazar(ImportacionResponse resultado, long fila, String mensaje) {
+        resultado.setRechazadas(resultado.getRechazadas() + 1);
+        if (resultado.getErrores().size() < maximoErrores) {
+            resultado.getErrores().add(new ImportacionResponse.ErrorFila(fila, mensaje));
+        }
+    }
+
+    private interface LectorFilas {
+        // Devuelve null al llegar al final del archivo
+        ProductoRequest siguiente() throws IOException;
+    }
+
+    private static class FilaInvalidaException extends RuntimeException {
+        FilaInvalidaException(String mensaje) {
+            super(mensaje);
+        }
+    }
+
+    private class LectorNdjson implements LectorFilas {
+        private final BufferedReader lector;
+        private final ObjectReader reader = objectMapper.readerFor(ProductoRequest.class);
+
+        LectorNdjson(BufferedReader lector) {
+            this.lector = lector;
+        }
+
+        @Override
+        public ProductoRequest siguiente() throws IOException {
+            String linea;
+            do {
+                linea = lector.readLine();
+                if (linea == null) {
+                    return null;
+                }
+            } while (linea.isBlank());
+            try {
+                return reader.readValue(linea);
+            } catch (IOException e) {
+                throw new FilaInvalidaException("JSON inválido");
+            }
+        }
+    }
+
+    // CSV con cabecera (RFC 4180): los campos entre comillas pueden contener comas y saltos de línea
+    private static class LectorCsv implements LectorFilas {
+        private final BufferedReader lector;
+        private String[] cabecera;
+
+        LectorCsv(BufferedReader lector) {
+            this.lector = lector;
+        }
+
+        @Override
+        public ProductoRequest siguiente() throws IOException {
+            if (cabecera == null) {
+                List<String> campos = leerRegistro();
+                if (campos == null) {
+                    return null;
+                }
+                cabecera = campos.stream().map(String::trim).toArray(String[]::new);
+            }
+            List<String> campos;
+            do {
+                campos = leerRegistro();
+                if (campos == null) {
+                    return null;
+                }
+            } while (campos.size() == 1 && campos.get(0).isBlank());
+
+            ProductoRequest request = new ProductoRequest();
+            for (int i = 0; i < cabecera.length && i < campos.size(); i++) {
+                asignar(request, cabecera[i], campos.get(i).trim());
+            }
+            return request;
+        }
+
+        private void asignar(ProductoRequest request, String columna, String valor) {
+            if (valor.isEmpty()) {
+                return;
+            }
+            try {
+                switch (columna) {
+                    case "nombreProducto" -> request.setNombreProducto(valor);
+                    case "descripcion" -> request.setDescripcion(valor);
+                    case "precio" -> request.setPrecio(new BigDecimal(valor));
+                    case "precioOriginal" -> request.setPrecioOriginal(new BigDecimal(valor));
+                    case "stock" -> request.setStock(Integer.valueOf(valor));
+                    case "imagenPrincipal" -> request.setImagenPrincipal(valor);
+                    case "categoriaId" -> request.setCategoriaId(Integer.valueOf(valor));
+                    case "esOrganico" -> request.setEsOrganico(Boolean.parseBoolean(valor));
+                    case "esVegano" -> request.setEsVegano(Boolean.parseBoolean(valor));
+                    case "peso" -> request.setPeso(new BigDecimal(valor));
+                    case "unidadMedida" -> request.setUnidadMedida(valor);
+                    default -> {
+                        // Columnas desconocidas (p. ej. las de la exportación) se ignoran
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new FilaInvalidaException("Valor inválido para " + columna + ": " + valor);
+            }
+        }
+
+        private List<String> leerRegistro() throws IOException {
+            int c = lector.read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> campos = new ArrayList<>();
+            StringBuilder campo = new StringBuilder();
+            boolean entreComillas = false;
+            while (c != -1) {
+                if (entreComillas) {
+                    if (c == '"') {
+                        lector.mark(1);
+                        int siguiente = lector.read();
+                        if (siguiente == '"') {
+                            campo.append('"');
+                        } else {
+                            entreComillas = false;
+                            if (siguiente != -1) {
+                                lector.reset();
+                            }
+                        }
+                    } else {
+                        campo.append((char) c);
+                    }
+                } else if (c == '"') {
+                    entreComillas = true;
+                } else if (c == ',') {
+                    campos.add(campo.toString());
+                    campo.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    campo.append((char) c);
+                }
+                c = lector.read();
+            }
+            campos.add(campo.toString());
+            return campos;
+        }
+    }
+}
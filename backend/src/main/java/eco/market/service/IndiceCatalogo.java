@@ -0,0 +1,16 @@
+package eco.market.service;
+
+import eco.market.dto.ProductoResponse;
+
+import java.util.Collection;
+import java.util.Set;
+
+// Índice en memoria que se mantiene sincronizado con el snapshot de CatalogoService.
+// Las llamadas llegan serializadas: nunca hay dos actualizaciones simultáneas.
+public interface IndiceCatalogo {
+
+    void reconstruir(Collection<ProductoResponse> productos);
+
+    // "afectados" son los ids modificados; los que no aparecen en "actuales" salieron del catálogo
+    void actualizar(Set<Integer> afectados, Collection<ProductoResponse> actuales);
+}
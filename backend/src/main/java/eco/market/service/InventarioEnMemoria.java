@@ -0,0 +1,492 @@
+package eco.market.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Motor opcional de inventario para ventas flash (app.inventario.memoria.habilitado=true).
+// El stock disponible de cada producto vive en memoria y se reserva con CAS sin bloqueos;
+// la reserva se anota en un diario en disco de solo escritura al final antes de que el pedido se
+// confirme, y un proceso en segundo plano lleva los descuentos confirmados a Productos.stock en lotes.
+//
+// Diario: una línea "R secuencia id:cantidad,...;" por reserva, escrita y sincronizada con el disco
+// antes del commit del pedido (un solo fsync cubre a todos los pedidos que esperan a la vez), y una
+// línea "A secuencia;" si la transacción se revierte. El volcado avanza en orden de secuencia y se
+// detiene en la primera reserva aún sin resolver, así Diario_Inventario guarda una marca exacta: todo
+// lo anterior está escrito en Productos o revertido, en la misma transacción que el stock. Al arrancar
+// se reaplican las reservas posteriores sin línea "A". Si el proceso cae antes de resolver una reserva
+// se reaplica aunque su pedido no llegara a confirmarse: el stock queda por debajo, nunca por encima.
+//
+// No es el único que escribe Productos.stock: la edición del vendedor, los ajustes masivos y las
+// reservas del carrito también lo hacen. Esos cambios llegan como ProductoCambiadoEvent y se
+// releen; el volcado bloquea las filas y escribe el stock resultante sin bajar de cero.
+@Service
+@DependsOn("entityManagerFactory")
+@ConditionalOnProperty(name = "app.inventario.memoria.habilitado", havingValue = "true")
+public class InventarioEnMemoria {
+
+    private static final String CONSULTA_STOCK = "SELECT stock FROM productos WHERE producto_id = ?";
+    private static final String ESCRIBIR_STOCK = "UPDATE productos SET stock = ?, version = version + 1 "
+            + "WHERE producto_id = ?";
+    private static final String CONSULTA_SECUENCIA = "SELECT secuencia_volcada FROM diario_inventario "
+            + "WHERE diario_id = 1";
+    private static final String CREAR_SECUENCIA = "INSERT INTO diario_inventario (diario_id, secuencia_volcada) "
+            + "VALUES (1, 0)";
+    private static final String GUARDAR_SECUENCIA = "UPDATE diario_inventario SET secuencia_volcada = ? "
+            + "WHERE diario_id = 1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.inventario.memoria.diario:./data/inventario.journal}")
+    private Path rutaDiario;
+
+    @Value("${app.inventario.memoria.sincronizar-diario:true}")
+    private boolean sincronizarDiario;
+
+    // Estado de cada producto en un único long para actualizarlo con un solo CAS:
+    // 32 bits altos = stock disponible, 32 bits bajos = reservado y aún no escrito en la base de datos
+    private final ConcurrentHashMap<Integer, AtomicLong> contadores = new ConcurrentHashMap<>();
+    private final Set<Integer> porRecargar = ConcurrentHashMap.newKeySet();
+    // Reservas anotadas en el diario que el volcado aún no ha escrito, por secuencia
+    private final ConcurrentSkipListMap<Long, Anotada> anotadas = new ConcurrentSkipListMap<>();
+
+    private final Object candadoDiario = new Object();
+    private final Object candadoSincronizacion = new Object();
+    private FileChannel diario;
+    private long secuencia;
+    // Última secuencia escrita en el canal y última que ya está en disco
+    private volatile long escrita;
+    private volatile long sincronizada;
+
+    private enum Estado {
+        EN_CURSO, CONFIRMADA, REVERTIDA
+    }
+
+    private static final class Anotada {
+        private final Map<Integer, Integer> cantidades;
+        private volatile Estado estado = Estado.EN_CURSO;
+
+        private Anotada(Map<Integer, Integer> cantidades) {
+            this.cantidades = cantidades;
+        }
+    }
+
+    @PostConstruct
+    public void iniciar() throws IOException {
+        if (rutaDiario.getParent() != null) {
+            Files.createDirectories(rutaDiario.getParent());
+        }
+        contadores.clear();
+        porRecargar.clear();
+        anotadas.clear();
+        long ultima = recuperar();
+        synchronized (candadoDiario) {
+            secuencia = ultima;
+            escrita = ultima;
+            sincronizada = ultima;
+            diario = FileChannel.open(rutaDiario, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+    }
+
+    @PreDestroy
+    public void detener() throws IOException {
+        volcar();
+        synchronized (candadoDiario) {
+            diario.close();
+        }
+    }
+
+    // Reserva todas las líneas o ninguna; devuelve el id del producto sin stock suficiente o null.
+    // La reserva queda en disco antes de volver; dentro de una transacción, si no se confirma,
+    // se anota como revertida y se devuelve sola.
+    public Integer reservar(SortedMap<Integer, Integer> cantidades) {
+        List<Map.Entry<Integer, Integer>> reservadas = new ArrayList<>(cantidades.size());
+        for (Map.Entry<Integer, Integer> linea : cantidades.entrySet()) {
+            if (!aplicar(contador(linea.getKey()), -linea.getValue(), linea.getValue(), true)) {
+                reservadas.forEach(r -> devolver(r.getKey(), r.getValue()));
+                return linea.getKey();
+            }
+            reservadas.add(linea);
+        }
+
+        long numero;
+        try {
+            numero = anotar(cantidades);
+        } catch (IOException e) {
+            cantidades.forEach(this::devolver);
+            throw new RuntimeException("No se pudo anotar la reserva en el diario de inventario", e);
+        }
+        Anotada anotada = anotadas.get(numero);
+        try {
+            esperarDisco(numero);
+        } catch (IOException e) {
+            revertir(numero, anotada);
+            throw new RuntimeException("No se pudo sincronizar el diario de inventario", e);
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            anotada.estado = Estado.CONFIRMADA;
+            return null;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int estado) {
+                if (estado == STATUS_COMMITTED) {
+                    anotada.estado = Estado.CONFIRMADA;
+                } else {
+                    revertir(numero, anotada);
+                }
+            }
+        });
+        return null;
+    }
+
+    public Integer disponible(Integer productoId) {
+        return disponible(contador(productoId).get());
+    }
+
+    // Los cambios de stock hechos fuera del motor (edición del vendedor, ajustes masivos)
+    // se releen en el siguiente volcado; los del propio volcado ya están al día
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductoCambiado(ProductoCambiadoEvent event) {
+        if (event.getOrigen() == this) {
+            return;
+        }
+        for (Integer productoId : event.getProductoIds()) {
+            if (contadores.containsKey(productoId)) {
+                porRecargar.add(productoId);
+            }
+        }
+    }
+
+    // Primero escribe los pedidos confirmados y después relee los productos cambiados por otros
+    @Scheduled(fixedDelayString = "${app.inventario.memoria.intervalo-volcado-ms:200}")
+    public synchronized void volcar() {
+        // Solo el tramo inicial ya resuelto, para que la secuencia guardada sea una marca exacta
+        List<Long> lote = new ArrayList<>();
+        SortedMap<Integer, Integer> cantidades = new TreeMap<>();
+        for (Map.Entry<Long, Anotada> entrada : anotadas.entrySet()) {
+            Estado estado = entrada.getValue().estado;
+            if (estado == Estado.EN_CURSO) {
+                break;
+            }
+            lote.add(entrada.getKey());
+            if (estado == Estado.CONFIRMADA) {
+                entrada.getValue().cantidades.forEach((productoId, cantidad) ->
+                        cantidades.merge(productoId, cantidad, Integer::sum));
+            }
+        }
+        if (!lote.isEmpty()) {
+            Map<Integer, Integer> escritos = null;
+            try {
+                escritos = escribir(cantidades, lote.get(lote.size() - 1));
+            } catch (RuntimeException e) {
+                // Siguen anotadas y se reintentan en la siguiente pasada
+                System.err.println("Error volcando el inventario en memoria: " + e.getMessage());
+            }
+            if (escritos != null) {
+                lote.forEach(anotadas::remove);
+                for (Map.Entry<Integer, Integer> linea : cantidades.entrySet()) {
+                    AtomicLong contador = contadores.get(linea.getKey());
+                    if (contador == null) {
+                        continue;
+                    }
+                    aplicar(contador, 0, -linea.getValue(), false);
+                    // El stock recién escrito ya sirve de relectura
+                    Integer stock = escritos.get(linea.getKey());
+                    if (stock == null) {
+                        contadores.remove(linea.getKey());
+                    } else {
+                        sincronizar(contador, stock);
+                    }
+                }
+                if (!cantidades.isEmpty()) {
+                    eventPublisher.publishEvent(new ProductoCambiadoEvent(cantidades.keySet(), this));
+                }
+            }
+        }
+
+        for (Integer productoId : List.copyOf(porRecargar)) {
+            porRecargar.remove(productoId);
+            Integer stock = leerStock(productoId);
+            AtomicLong contador = contadores.get(productoId);
+            if (contador == null) {
+                continue;
+            }
+            if (stock == null) {
+                contadores.remove(productoId);
+                continue;
+            }
+            sincronizar(contador, stock);
+        }
+        compactarDiario();
+    }
+
+    private AtomicLong contador(Integer productoId) {
+        return contadores.computeIfAbsent(productoId, id -> {
+            Integer stock = leerStock(id);
+            if (stock == null) {
+                throw new RuntimeException("Producto no encontrado: " + id);
+            }
+            return new AtomicLong(empaquetar(stock, 0));
+        });
+    }
+
+    // Suma "cambioDisponible" y "cambioPendiente" en un solo CAS. Con exigirStock no deja
+    // el disponible por debajo de cero y devuelve false en su lugar.
+    private boolean aplicar(AtomicLong contador, int cambioDisponible, int cambioPendiente, boolean exigirStock) {
+        long actual;
+        long nuevo;
+        do {
+            actual = contador.get();
+            int disponible = disponible(actual) + cambioDisponible;
+            if (exigirStock && disponible < 0) {
+                return false;
+            }
+            nuevo = empaquetar(disponible, pendiente(actual) + cambioPendiente);
+        } while (!contador.compareAndSet(actual, nuevo));
+        return true;
+    }
+
+    // Disponible = stock de la base de datos menos lo reservado que aún no está escrito en ella
+    private static void sincronizar(AtomicLong contador, int stock) {
+        long actual;
+        do {
+            actual = contador.get();
+        } while (!contador.compareAndSet(actual, empaquetar(stock - pendiente(actual), pendiente(actual))));
+    }
+
+    private Integer leerStock(Integer productoId) {
+        List<Integer> stock = jdbcTemplate.queryForList(CONSULTA_STOCK, Integer.class, productoId);
+        return stock.isEmpty() ? null : stock.get(0);
+    }
+
+    // Descuenta las cantidades y apunta la secuencia en una transacción. Las filas se bloquean en orden
+    // de id y se escribe el stock resultante, sin bajar de cero aunque otro escritor lo haya reducido.
+    // Devuelve el stock escrito por producto (los que ya no existen no aparecen).
+    private Map<Integer, Integer> escribir(SortedMap<Integer, Integer> cantidades, long ultimaSecuencia) {
+        return transactionTemplate.execute(status -> {
+            if (cantidades.isEmpty()) {
+                // Un tramo solo de reservas revertidas: únicamente avanza la marca
+                jdbcTemplate.update(GUARDAR_SECUENCIA, ultimaSecuencia);
+                return Map.<Integer, Integer>of();
+            }
+            String marcas = String.join(", ", Collections.nCopies(cantidades.size(), "?"));
+            Map<Integer, Integer> actuales = new HashMap<>();
+            jdbcTemplate.query("SELECT producto_id, stock FROM productos WHERE producto_id IN (" + marcas
+                    + ") ORDER BY producto_id FOR UPDATE",
+                    (RowCallbackHandler) fila -> actuales.put(fila.getInt(1), fila.getInt(2)),
+                    cantidades.keySet().toArray());
+
+            Map<Integer, Integer> escritos = new TreeMap<>();
+            cantidades.forEach((productoId, cantidad) -> {
+                Integer stock = actuales.get(productoId);
+                if (stock == null) {
+                    return;
+                }
+                if (stock < cantidad) {
+                    System.err.println("Sobreventa en el producto " + productoId + ": " + cantidad
+                            + " unidades vendidas con stock " + stock);
+                }
+                escritos.put(productoId, Math.max(stock - cantidad, 0));
+            });
+            List<Map.Entry<Integer, Integer>> lineas = new ArrayList<>(escritos.entrySet());
+            jdbcTemplate.batchUpdate(ESCRIBIR_STOCK, lineas, lineas.size(), (ps, linea) -> {
+                ps.setInt(1, linea.getValue());
+                ps.setInt(2, linea.getKey());
+            });
+            jdbcTemplate.update(GUARDAR_SECUENCIA, ultimaSecuencia);
+            return escritos;
+        });
+    }
+
+    // Escribe la línea "R" sin esperar al disco y deja la reserva pendiente de resolver
+    private long anotar(Map<Integer, Integer> cantidades) throws IOException {
+        StringBuilder linea = new StringBuilder();
+        synchronized (candadoDiario) {
+            long numero = secuencia + 1;
+            linea.append("R ").append(numero).append(' ');
+            cantidades.forEach((productoId, cantidad) ->
+                    linea.append(productoId).append(':').append(cantidad).append(','));
+            linea.setCharAt(linea.length() - 1, ';');
+            linea.append('\n');
+            escribirLinea(linea.toString());
+            secuencia = numero;
+            escrita = numero;
+            anotadas.put(numero, new Anotada(cantidades));
+            return numero;
+        }
+    }
+
+    // Commit en grupo: el primero que entra hace el fsync y cubre todas las líneas ya escritas;
+    // los que esperaban detrás salen sin otro fsync si su línea quedó incluida
+    private void esperarDisco(long numero) throws IOException {
+        if (!sincronizarDiario || sincronizada >= numero) {
+            return;
+        }
+        synchronized (candadoSincronizacion) {
+            if (sincronizada >= numero) {
+                return;
+            }
+            long hasta = escrita;
+            diario.force(false);
+            sincronizada = hasta;
+        }
+    }
+
+    // La línea "A" no se espera: si se pierde, al arrancar se reaplica la reserva y el stock queda por debajo
+    private void revertir(long numero, Anotada anotada) {
+        try {
+            synchronized (candadoDiario) {
+                escribirLinea("A " + numero + ";\n");
+            }
+        } catch (IOException e) {
+            System.err.println("Error escribiendo el diario de inventario: " + e.getMessage());
+        }
+        anotada.cantidades.forEach(this::devolver);
+        anotada.estado = Estado.REVERTIDA;
+    }
+
+    private void escribirLinea(String linea) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(linea.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            diario.write(buffer);
+        }
+    }
+
+    private void devolver(Integer productoId, Integer cantidad) {
+        aplicar(contador(productoId), cantidad, -cantidad, false);
+    }
+
+    // Sin reservas por resolver ni volcar, todas las líneas del diario ya están en la base de datos
+    private void compactarDiario() {
+        synchronized (candadoDiario) {
+            try {
+                if (anotadas.isEmpty() && diario.size() > 0) {
+                    diario.truncate(0);
+                    diario.position(0);
+                }
+            } catch (IOException e) {
+                System.err.println("Error compactando el diario de inventario: " + e.getMessage());
+            }
+        }
+    }
+
+    // Reaplica las reservas posteriores a la secuencia guardada que no se revirtieron y devuelve
+    // la última secuencia conocida
+    private long recuperar() throws IOException {
+        long volcada = transactionTemplate.execute(status -> {
+            List<Long> guardada = jdbcTemplate.queryForList(CONSULTA_SECUENCIA, Long.class);
+            if (guardada.isEmpty()) {
+                jdbcTemplate.update(CREAR_SECUENCIA);
+                return 0L;
+            }
+            return guardada.get(0);
+        });
+        if (!Files.exists(rutaDiario)) {
+            return volcada;
+        }
+
+        Map<Long, Map<Integer, Integer>> reservas = new HashMap<>();
+        Set<Long> revertidas = new HashSet<>();
+        long ultima = volcada;
+        try (BufferedReader lector = Files.newBufferedReader(rutaDiario, StandardCharsets.US_ASCII)) {
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                String[] partes = linea.split(" ");
+                if (partes.length == 2 && partes[0].equals("A") && partes[1].endsWith(";")) {
+                    try {
+                        revertidas.add(Long.parseLong(partes[1].substring(0, partes[1].length() - 1)));
+                    } catch (NumberFormatException e) {
+                        // línea dañada: se ignora
+                    }
+                    continue;
+                }
+                // Una última línea a medio escribir no termina en ';' y se descarta
+                if (partes.length != 3 || !partes[0].equals("R") || !partes[2].endsWith(";")) {
+                    continue;
+                }
+                Map<Integer, Integer> cantidades = new HashMap<>();
+                long numero;
+                try {
+                    numero = Long.parseLong(partes[1]);
+                    for (String cantidad : partes[2].substring(0, partes[2].length() - 1).split(",")) {
+                        String[] par = cantidad.split(":");
+                        cantidades.merge(Integer.valueOf(par[0]), Integer.parseInt(par[1]), Integer::sum);
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    continue;
+                }
+                if (numero > volcada) {
+                    reservas.put(numero, cantidades);
+                }
+                ultima = Math.max(ultima, numero);
+            }
+        }
+        SortedMap<Integer, Integer> pendientes = new TreeMap<>();
+        reservas.forEach((numero, cantidades) -> {
+            if (!revertidas.contains(numero)) {
+                cantidades.forEach((productoId, cantidad) -> pendientes.merge(productoId, cantidad, Integer::sum));
+            }
+        });
+        if (!pendientes.isEmpty()) {
+            escribir(pendientes, ultima);
+            System.out.println("Inventario recuperado del diario: " + pendientes.size() + " productos ajustados");
+        }
+        return ultima;
+    }
+
+    private static long empaquetar(int disponible, int pendiente) {
+        return ((long) disponible << 32) | (pendiente & 0xFFFFFFFFL);
+    }
+
+    private static int disponible(long estado) {
+        return (int) (estado >> 32);
+    }
+
+    private static int pendiente(long estado) {
+        return (int) estado;
+    }
+}
@@ -1,25 +1,41 @@
 package eco.market.service;
 
+import eco.market.dto.PedidoDetalleResponse;
+import eco.market.dto.PedidoPaginaResponse;
 import eco.market.dto.PedidoRequest;
+import eco.market.dto.PedidoResumenResponse;
+import eco.market.dto.PedidoVendedorPaginaResponse;
+import eco.market.dto.PedidoVendedorResponse;
 import eco.market.entity.DetallePedido;
+import eco.market.entity.EventoSalida;
 import eco.market.entity.Notificacion;
 import eco.market.entity.Pedido;
+import eco.market.entity.PedidoVendedor;
 import eco.market.entity.Producto;
 import eco.market.entity.Usuario;
+import eco.market.model.User;
 import eco.market.repository.DetallePedidoRepository;
 import eco.market.repository.PedidoRepository;
+import eco.market.repository.PedidoVendedorRepository;
 import eco.market.repository.ProductoRepository;
 import eco.market.repository.UsuarioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 @Service
 @Transactional
@@ -38,10 +54,33 @@ public class PedidoService {
     private ProductoRepository productoRepository;
 
     @Autowired
-    private NotificacionService notificacionService;
+    private PedidoVendedorRepository pedidoVendedorRepository;
+
+    @Autowired
+    private DespachadorEventos despachadorEventos;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    private EmailService emailService;
+    private SecuenciadorVentasFlash secuenciadorVentasFlash;
+
+    // Solo existe con app.inventario.memoria.habilitado=true
+    @Autowired(required = false)
+    private InventarioEnMemoria inventarioEnMemoria;
+
+    @Autowired
+    private AlmacenCarritos almacenCarritos;
+
+    // Solo existe con app.carrito.reservas.habilitado=true
+    @Autowired(required = false)
+    private ReservasCarrito reservasCarrito;
+
+    @Value("${app.pedidos.tamano-pagina:20}")
+    private int tamanoPaginaPorDefecto;
+
+    @Value("${app.pedidos.tamano-pagina-max:100}")
+    private int tamanoPaginaMaximo;
 
     public Pedido crearPedido(PedidoRequest request, String emailUsuario) {
         Usuario usuario = usuarioRepository.findByEmail(emailUsuario)
@@ -55,57 +94,163 @@ public class PedidoService {
 
         pedido = pedidoRepository.save(pedido);
 
-        List<DetallePedido> detalles = new ArrayList<>();
-        Set<Integer> vendedoresNotificados = new HashSet<>();
+        SortedMap<Integer, Integer> cantidades = new TreeMap<>();
+        for (PedidoRequest.DetallePedidoRequest detalleReq : request.getDetalles()) {
+            if (detalleReq.getProductoId() == null || detalleReq.getCantidad() == null || detalleReq.getCantidad() <= 0) {
+                throw new RuntimeException("Detalle de pedido inválido");
+            }
+            cantidades.merge(detalleReq.getProductoId(), detalleReq.getCantidad(), Integer::sum);
+        }
+        Map<Integer, Producto> productos = cargarProductos(cantidades);
+        reservarStock(usuario, cantidades, productos);
 
+        List<DetallePedido> detalles = new ArrayList<>();
         for (PedidoRequest.DetallePedidoRequest detalleReq : request.getDetalles()) {
-            Producto producto = productoRepository.findById(detalleReq.getProductoId())
-                    .orElseThrow(() -> new RuntimeException("Producto no encontrado: " + detalleReq.getProductoId()));
+            detalles.add(detalle(pedido, productos.get(detalleReq.getProductoId()), detalleReq.getCantidad(),
+                    detalleReq.getPrecioUnitario()));
+        }
+        completarPedido(pedido, usuario, detalles, cantidades);
+        return pedido;
+    }
+
+    // Checkout del carrito del servidor: las cantidades salen del carrito en memoria y los precios del
+    // catálogo, y las líneas compradas se quitan del carrito en esta misma transacción. Un segundo
+    // checkout simultáneo del mismo usuario falla en iniciarCheckout.
+    public Pedido crearPedidoDesdeCarrito(User user, String direccionEnvio, String metodoPago) {
+        Usuario usuario = usuarioRepository.findById(user.getUsuario_id())
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+
+        SortedMap<Integer, Integer> cantidades = new TreeMap<>();
+        almacenCarritos.iniciarCheckout(user).getItems()
+                .forEach(item -> cantidades.put(item.getProduct().getProducto_id(), item.getCantidad()));
+        if (cantidades.isEmpty()) {
+            throw new RuntimeException("El carrito está vacío");
+        }
+        Map<Integer, Producto> productos = cargarProductos(cantidades);
+
+        Pedido pedido = new Pedido();
+        pedido.setUsuario(usuario);
+        pedido.setDireccionEnvio(direccionEnvio);
+        pedido.setMetodoPago(metodoPago);
+        List<DetallePedido> detalles = new ArrayList<>();
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<Integer, Integer> linea : cantidades.entrySet()) {
+            Producto producto = productos.get(linea.getKey());
+            if (!Boolean.TRUE.equals(producto.getEstaActivo())) {
+                throw new RuntimeException("Producto no disponible: " + producto.getNombreProducto());
+            }
+            DetallePedido detalle = detalle(pedido, producto, linea.getValue(), producto.getPrecio());
+            detalles.add(detalle);
+            total = total.add(detalle.getSubtotal());
+        }
+        pedido.setTotal(total);
+
+        pedido = pedidoRepository.save(pedido);
+        reservarStock(usuario, cantidades, productos);
+        completarPedido(pedido, usuario, detalles, cantidades);
+        return pedido;
+    }
+
+    // Todos los productos del pedido en una consulta, ordenados por id
+    private Map<Integer, Producto> cargarProductos(SortedMap<Integer, Integer> cantidades) {
+        Map<Integer, Producto> productos = new HashMap<>();
+        for (Producto producto : productoRepository.findAllByIdOrdenados(cantidades.keySet())) {
+            productos.put(producto.getProductoId(), producto);
+        }
+        for (Integer productoId : cantidades.keySet()) {
+            if (!productos.containsKey(productoId)) {
+                throw new RuntimeException("Producto no encontrado: " + productoId);
+            }
+        }
+        return productos;
+    }
+
+    private void reservarStock(Usuario usuario, SortedMap<Integer, Integer> cantidades,
+            Map<Integer, Producto> productos) {
+        // Lo que el comprador tiene retenido en su carrito ya está descontado del stock
+        SortedMap<Integer, Integer> porDescontar = new TreeMap<>(cantidades);
+        if (reservasCarrito != null) {
+            reservasCarrito.consumir(usuario.getUsuarioId(), cantidades)
+                    .forEach((productoId, cubierta) -> porDescontar.merge(productoId, -cubierta, Integer::sum));
+            porDescontar.values().removeIf(cantidad -> cantidad == 0);
+        }
 
-            if (producto.getStock() < detalleReq.getCantidad()) {
-                throw new RuntimeException("Stock insuficiente para producto: " + producto.getNombreProducto());
+        if (inventarioEnMemoria != null) {
+            // Reserva en memoria; el descuento en Productos lo escribe el volcado en segundo plano
+            Integer sinStock = inventarioEnMemoria.reservar(porDescontar);
+            if (sinStock != null) {
+                throw new RuntimeException("Stock insuficiente para producto: "
+                        + productos.get(sinStock).getNombreProducto());
             }
+            return;
+        }
 
-            // Actualizar stock con manejo de optimistic locking
-            try {
-                producto.setStock(producto.getStock() - detalleReq.getCantidad());
-                productoRepository.save(producto);
-            } catch (ObjectOptimisticLockingFailureException e) {
-                throw new RuntimeException("El producto \"" + producto.getNombreProducto() +
-                        "\" fue modificado por otro usuario. Por favor, intenta nuevamente.");
+        // Los productos en venta flash pasan por su carril; si el pedido no se confirma, se liberan
+        SortedMap<Integer, Integer> resto = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> linea : porDescontar.entrySet()) {
+            if (!secuenciadorVentasFlash.esVentaFlash(linea.getKey())) {
+                resto.put(linea.getKey(), linea.getValue());
+            } else if (!secuenciadorVentasFlash.reservar(linea.getKey(), linea.getValue())) {
+                throw new RuntimeException("Stock insuficiente para producto: "
+                        + productos.get(linea.getKey()).getNombreProducto());
             }
+        }
 
-            DetallePedido detalle = new DetallePedido();
-            detalle.setPedido(pedido);
-            detalle.setProducto(producto);
-            detalle.setCantidad(detalleReq.getCantidad());
-            detalle.setPrecioUnitario(detalleReq.getPrecioUnitario());
-            detalle.setSubtotal(detalleReq.getPrecioUnitario().multiply(new BigDecimal(detalleReq.getCantidad())));
+        // Descuento condicional del resto del pedido en un lote, en orden de id para evitar interbloqueos
+        int[] filas = productoRepository.descontarStockEnLote(resto);
+        int i = 0;
+        for (Integer productoId : resto.keySet()) {
+            // Un conteo distinto de 1 (incluido SUCCESS_NO_INFO) se trata como falta de stock
+            if (filas[i++] != 1) {
+                throw new RuntimeException("Stock insuficiente para producto: "
+                        + productos.get(productoId).getNombreProducto());
+            }
+        }
+    }
 
-            detalles.add(detalle);
+    private DetallePedido detalle(Pedido pedido, Producto producto, Integer cantidad, BigDecimal precioUnitario) {
+        DetallePedido detalle = new DetallePedido();
+        detalle.setPedido(pedido);
+        detalle.setProducto(producto);
+        detalle.setCantidad(cantidad);
+        detalle.setPrecioUnitario(precioUnitario);
+        detalle.setSubtotal(precioUnitario.multiply(new BigDecimal(cantidad)));
+        return detalle;
+    }
 
+    private void completarPedido(Pedido pedido, Usuario usuario, List<DetallePedido> detalles,
+            SortedMap<Integer, Integer> cantidades) {
+        List<EventoSalida> eventos = new ArrayList<>();
+        Set<Integer> vendedoresNotificados = new HashSet<>();
+
+        for (DetallePedido detalle : detalles) {
             // Notificar al vendedor del producto (solo una vez por vendedor)
-            Integer vendedorId = producto.getVendedor().getUsuarioId();
+            Integer vendedorId = detalle.getProducto().getVendedor().getUsuarioId();
             if (!vendedoresNotificados.contains(vendedorId)) {
-                notificacionService.crearNotificacion(
+                eventos.add(despachadorEventos.notificacion(
                         vendedorId,
                         "Nueva Orden Recibida",
                         "Has recibido un nuevo pedido de " +
-                                usuario.getNombre() + " " + usuario.getApellido() + ". Total: €" + request.getTotal(),
-                        Notificacion.TipoNotificacion.orden);
+                                usuario.getNombre() + " " + usuario.getApellido() + ". Total: €" + pedido.getTotal(),
+                        Notificacion.TipoNotificacion.orden));
                 vendedoresNotificados.add(vendedorId);
             }
         }
 
-        detallePedidoRepository.saveAll(detalles);
         detallePedidoRepository.saveAll(detalles);
         pedido.setDetalles(detalles);
+        pedidoVendedorRepository.saveAll(filasPorVendedor(pedido, usuario, detalles));
+        // El catálogo en memoria vuelve a leer el stock de los productos comprados tras el commit
+        // (con el inventario en memoria lo avisa el volcado, cuando el stock ya está escrito)
+        if (inventarioEnMemoria == null) {
+            eventPublisher.publishEvent(new ProductoCambiadoEvent(cantidades.keySet()));
+        }
 
-        // Enviar correo de confirmación al comprador
-        emailService.sendPurchaseReceipt(usuario.getEmail(), usuario.getNombre(), pedido.getPedidoId(),
-                pedido.getTotal());
-
-        return pedido;
+        // Correo de confirmación al comprador. Notificaciones y correo salen por la bandeja de salida,
+        // solo si el pedido se confirma
+        eventos.add(despachadorEventos.comprobanteCompra(usuario.getEmail(), usuario.getNombre(),
+                pedido.getPedidoId(), pedido.getTotal()));
+        despachadorEventos.registrar(eventos);
     }
 
     public List<Pedido> obtenerMisPedidos(String emailUsuario) {
@@ -115,19 +260,113 @@ public class PedidoService {
         return pedidoRepository.findByUsuario_UsuarioId(usuario.getUsuarioId());
     }
 
+    // Historial paginado: una consulta de usuario y una de proyección por página
+    @Transactional(readOnly = true)
+    public PedidoPaginaResponse obtenerPaginaMisPedidos(String emailUsuario, String cursor, Integer tamano) {
+        Usuario usuario = usuarioRepository.findByEmail(emailUsuario)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        int limite = tamano == null || tamano <= 0 ? tamanoPaginaPorDefecto : Math.min(tamano, tamanoPaginaMaximo);
+
+        // Se pide un elemento extra para saber si existe una página siguiente
+        List<PedidoResumenResponse> pedidos;
+        if (cursor == null || cursor.isBlank()) {
+            pedidos = pedidoRepository.findResumenesFirstPage(usuario.getUsuarioId(), Limit.of(limite + 1));
+        } else {
+            CursorPagina.Posicion posicion = CursorPagina.decodificar(cursor);
+            pedidos = pedidoRepository.findResumenesAfter(usuario.getUsuarioId(), posicion.fecha(), posicion.id(),
+                    Limit.of(limite + 1));
+        }
+
+        String siguienteCursor = null;
+        if (pedidos.size() > limite) {
+            pedidos = pedidos.subList(0, limite);
+            PedidoResumenResponse ultimo = pedidos.get(limite - 1);
+            siguienteCursor = CursorPagina.codificar(ultimo.getFechaPedido(), ultimo.getPedidoId());
+        }
+        return new PedidoPaginaResponse(pedidos, siguienteCursor);
+    }
+
+    @Transactional(readOnly = true)
+    public PedidoDetalleResponse obtenerDetallePedido(String emailUsuario, Integer pedidoId) {
+        Usuario usuario = usuarioRepository.findByEmail(emailUsuario)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+
+        // Solo el comprador ve su pedido; para cualquier otro no existe
+        PedidoResumenResponse resumen = pedidoRepository.findResumen(pedidoId, usuario.getUsuarioId())
+                .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
+        return new PedidoDetalleResponse(resumen, detallePedidoRepository.findResponsesByPedidoId(pedidoId));
+    }
+
     public void actualizarEstado(Integer pedidoId, String nuevoEstado) {
         Pedido pedido = pedidoRepository.findById(pedidoId)
                 .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
 
         pedido.setEstado(nuevoEstado);
         pedidoRepository.save(pedido);
+        pedidoVendedorRepository.actualizarEstado(pedidoId, nuevoEstado);
     }
 
-    public List<Pedido> obtenerPedidosVendedor(String emailVendedor) {
+    // Panel del vendedor desde Pedidos_Vendedor: una consulta por página sobre su índice
+    @Transactional(readOnly = true)
+    public PedidoVendedorPaginaResponse obtenerPedidosVendedor(String emailVendedor, String estado, String cursor,
+            Integer tamano) {
         Usuario vendedor = usuarioRepository.findByEmail(emailVendedor)
                 .orElseThrow(() -> new RuntimeException("Vendedor no encontrado"));
+        int limite = tamano == null || tamano <= 0 ? tamanoPaginaPorDefecto : Math.min(tamano, tamanoPaginaMaximo);
+        Integer vendedorId = vendedor.getUsuarioId();
+        String filtro = estado == null || estado.isBlank() ? null : estado.trim().toUpperCase();
+
+        List<PedidoVendedor> filas;
+        if (cursor == null || cursor.isBlank()) {
+            filas = filtro == null
+                    ? pedidoVendedorRepository.findFirstPage(vendedorId, Limit.of(limite + 1))
+                    : pedidoVendedorRepository.findFirstPageByEstado(vendedorId, filtro, Limit.of(limite + 1));
+        } else {
+            CursorPagina.Posicion posicion = CursorPagina.decodificar(cursor);
+            filas = filtro == null
+                    ? pedidoVendedorRepository.findAfter(vendedorId, posicion.fecha(), posicion.id(),
+                            Limit.of(limite + 1))
+                    : pedidoVendedorRepository.findAfterByEstado(vendedorId, filtro, posicion.fecha(), posicion.id(),
+                            Limit.of(limite + 1));
+        }
 
-        // Obtener pedidos que contengan productos del vendedor
-        return pedidoRepository.findByDetalles_Producto_Vendedor_UsuarioId(vendedor.getUsuarioId());
+        String siguienteCursor = null;
+        if (filas.size() > limite) {
+            filas = filas.subList(0, limite);
+            PedidoVendedor ultima = filas.get(limite - 1);
+            siguienteCursor = CursorPagina.codificar(ultima.getFechaPedido(), ultima.getPedidoId());
+        }
+        List<PedidoVendedorResponse> pedidos = filas.stream()
+                .map(fila -> new PedidoVendedorResponse(fila.getPedidoId(), fila.getFechaPedido(), fila.getEstado(),
+                        fila.getTotal(), fila.getTotalVendedor(), fila.getTotalLineas(), fila.getDireccionEnvio(),
+                        new PedidoVendedorResponse.Comprador(fila.getNombreComprador(), fila.getApellidoComprador(),
+                                fila.getEmailComprador())))
+                .toList();
+        return new PedidoVendedorPaginaResponse(pedidos, siguienteCursor);
+    }
+
+    private List<PedidoVendedor> filasPorVendedor(Pedido pedido, Usuario comprador, List<DetallePedido> detalles) {
+        Map<Integer, PedidoVendedor> filas = new LinkedHashMap<>();
+        for (DetallePedido detalle : detalles) {
+            Integer vendedorId = detalle.getProducto().getVendedor().getUsuarioId();
+            PedidoVendedor fila = filas.computeIfAbsent(vendedorId, id -> {
+                PedidoVendedor nueva = new PedidoVendedor();
+                nueva.setPedidoId(pedido.getPedidoId());
+                nueva.setVendedorId(id);
+                nueva.setFechaPedido(pedido.getFechaPedido());
+                nueva.setEstado(pedido.getEstado());
+                nueva.setTotal(pedido.getTotal());
+                nueva.setTotalVendedor(BigDecimal.ZERO);
+                nueva.setTotalLineas(0);
+                nueva.setNombreComprador(comprador.getNombre());
+                nueva.setApellidoComprador(comprador.getApellido());
+                nueva.setEmailComprador(comprador.getEmail());
+                nueva.setDireccionEnvio(pedido.getDireccionEnvio());
+                return nueva;
+            });
+            fila.setTotalVendedor(fila.getTotalVendedor().add(detalle.getSubtotal()));
+            fila.setTotalLineas(fila.getTotalLineas() + 1);
+        }
+        return new ArrayList<>(filas.values());
     }
 }
@@ -0,0 +1,29 @@
+package eco.market.service;
+
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Set;
+
+// Se publica cuando uno o varios productos cambian (alta, edición, baja o verificación).
+// Los listeners reaccionan después del commit de la transacción.
+@Getter
+public class ProductoCambiadoEvent {
+
+    private final Set<Integer> productoIds;
+    // Quien escribió el cambio, si quiere reconocer sus propios eventos (puede ser null)
+    private final Object origen;
+
+    public ProductoCambiadoEvent(Integer productoId) {
+        this(Set.of(productoId));
+    }
+
+    public ProductoCambiadoEvent(Collection<Integer> productoIds) {
+        this(productoIds, null);
+    }
+
+    public ProductoCambiadoEvent(Collection<Integer> productoIds, Object origen) {
+        this.productoIds = Set.copyOf(productoIds);
+        this.origen = origen;
+    }
+}
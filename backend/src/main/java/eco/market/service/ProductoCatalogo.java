@@ -0,0 +1,34 @@
+package eco.market.service;
+
+import eco.market.dto.ProductoResponse;
+import org.springframework.beans.BeanUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Copias defensivas de los productos del catálogo en memoria. El snapshot y los índices comparten
+// sus instancias entre peticiones, así que nunca salen de ellos sin copiar. La copia recorre todas
+// las propiedades del DTO: un campo nuevo de ProductoResponse se copia sin tocar esta clase.
+final class ProductoCatalogo {
+
+    private ProductoCatalogo() {
+    }
+
+    static ProductoResponse copia(ProductoResponse producto) {
+        if (producto == null) {
+            return null;
+        }
+        ProductoResponse copia = new ProductoResponse();
+        BeanUtils.copyProperties(producto, copia);
+        return copia;
+    }
+
+    static List<ProductoResponse> copias(Collection<ProductoResponse> productos) {
+        List<ProductoResponse> copias = new ArrayList<>(productos.size());
+        for (ProductoResponse producto : productos) {
+            copias.add(copia(producto));
+        }
+        return copias;
+    }
+}
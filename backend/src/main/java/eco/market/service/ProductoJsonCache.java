@@ -0,0 +1,116 @@
+package eco.market.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eco.market.dto.ProductoResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caché LRU acotada por bytes con el JSON UTF-8 ya serializado del detalle de producto.
+// La clave efectiva es (productoId, version): una entrada de otra versión cuenta como fallo.
+@Component
+public class ProductoJsonCache implements IndiceCatalogo {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final long maximoBytes;
+    private final LinkedHashMap<Integer, Entrada> entradas = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytesActuales;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+
+    public ProductoJsonCache(@Value("${app.catalogo.cache-json.max-bytes:16777216}") long maximoBytes) {
+        this.maximoBytes = maximoBytes;
+    }
+
+    public byte[] obtener(ProductoResponse producto) {
+        Integer productoId = producto.getProductoId();
+        synchronized (this) {
+            Entrada entrada = entradas.get(productoId);
+            if (entrada != null && Objects.equals(entrada.version, producto.getVersion())) {
+                aciertos.incrementAndGet();
+                return entrada.json;
+            }
+        }
+
+        fallos.incrementAndGet();
+        byte[] json = serializar(producto);
+        guardar(productoId, new Entrada(producto.getVersion(), json));
+        return json;
+    }
+
+    private synchronized void guardar(Integer productoId, Entrada entrada) {
+        if (entrada.json.length > maximoBytes) {
+            return;
+        }
+        Entrada anterior = entradas.put(productoId, entrada);
+        if (anterior != null) {
+            bytesActuales -= anterior.json.length;
+        }
+        bytesActuales += entrada.json.length;
+
+        Iterator<Map.Entry<Integer, Entrada>> iterador = entradas.entrySet().iterator();
+        while (bytesActuales > maximoBytes && iterador.hasNext()) {
+            bytesActuales -= iterador.next().getValue().json.length;
+            iterador.remove();
+            desalojos.incrementAndGet();
+        }
+    }
+
+    private byte[] serializar(ProductoResponse producto) {
+        try {
+            return objectMapper.writeValueAsBytes(producto);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("No se pudo serializar el producto " + producto.getProductoId(), e);
+        }
+    }
+
+    @Override
+    public synchronized void reconstruir(Collection<ProductoResponse> productos) {
+        entradas.clear();
+        bytesActuales = 0;
+    }
+
+    @Override
+    public synchronized void actualizar(Set<Integer> afectados, Collection<ProductoResponse> actuales) {
+        for (Integer productoId : afectados) {
+            Entrada anterior = entradas.remove(productoId);
+            if (anterior != null) {
+                bytesActuales -= anterior.json.length;
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> metricas() {
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("aciertos", aciertos.get());
+        metricas.put("fallos", fallos.get());
+        metricas.put("desalojos", desalojos.get());
+        metricas.put("entradas", entradas.size());
+        metricas.put("bytes", bytesActuales);
+        metricas.put("maximoBytes", maximoBytes);
+        return metricas;
+    }
+
+    private static final class Entrada {
+        private final Long version;
+        private final byte[] json;
+
+        private Entrada(Long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+}
@@ -1,18 +1,36 @@
 package eco.market.service;
 
+import eco.market.dto.AjusteInventarioRequest;
+import eco.market.dto.AjusteInventarioResponse;
+import eco.market.dto.FacetasResponse;
+import eco.market.dto.ProductoPaginaResponse;
 import eco.market.dto.ProductoResponse;
+import eco.market.dto.SugerenciaResponse;
 import eco.market.entity.Categoria;
 import eco.market.entity.Producto;
 import eco.market.repository.CategoriaRepository;
 import eco.market.repository.ProductoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import java.math.BigDecimal;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 import eco.market.dto.ProductoRequest;
 import eco.market.entity.Usuario;
 import eco.market.repository.UsuarioRepository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
@@ -28,21 +46,102 @@ public class ProductoService {
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    @Autowired
+    private CatalogoService catalogoService;
+
+    @Autowired
+    private BuscadorProductos buscadorProductos;
+
+    @Autowired
+    private FacetasProductos facetasProductos;
+
+    @Autowired
+    private SugerenciasProductos sugerenciasProductos;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.catalogo.tamano-pagina:24}")
+    private int tamanoPaginaPorDefecto;
+
+    @Value("${app.catalogo.tamano-pagina-max:100}")
+    private int tamanoPaginaMaximo;
+
+    @Value("${app.catalogo.busqueda.limite:20}")
+    private int limiteBusquedaPorDefecto;
+
+    @Value("${app.catalogo.sugerencias.limite:10}")
+    private int limiteSugerencias;
+
+    @Value("${app.admin.verificacion.max-productos:1000}")
+    private int maxProductosVerificacion;
+
+    // Se sirven del snapshot en memoria; solo la ruta de respaldo lee la base de datos
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<ProductoResponse> obtenerTodosLosProductos() {
-        return productoRepository.findActiveProductsOrderByDate()
-                .stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
+        if (catalogoService.estaCargado()) {
+            return catalogoService.obtenerProductos();
+        }
+        return productoRepository.findCatalogResponses();
+    }
+
+    public ProductoPaginaResponse obtenerPaginaProductos(String cursor, Integer tamano) {
+        int limite = tamano == null || tamano <= 0 ? tamanoPaginaPorDefecto : Math.min(tamano, tamanoPaginaMaximo);
+
+        // Se pide un elemento extra para saber si existe una página siguiente
+        List<ProductoResponse> productos;
+        if (cursor == null || cursor.isBlank()) {
+            productos = productoRepository.findActiveResponsesFirstPage(Limit.of(limite + 1));
+        } else {
+            CursorPagina.Posicion posicion = CursorPagina.decodificar(cursor);
+            productos = productoRepository.findActiveResponsesAfter(
+                    posicion.fecha(), posicion.id(), Limit.of(limite + 1));
+        }
+
+        return armarPagina(productos, limite);
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<ProductoResponse> buscarProductos(String consulta, Integer limite) {
+        if (consulta == null || consulta.isBlank()) {
+            throw new RuntimeException("La búsqueda no puede estar vacía");
+        }
+        int maximo = limite == null || limite <= 0 ? limiteBusquedaPorDefecto : Math.min(limite, tamanoPaginaMaximo);
+        return buscadorProductos.buscar(consulta, maximo);
+    }
+
+    // Solo lee el índice en memoria: no abre transacción ni toca la base de datos
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<SugerenciaResponse> obtenerSugerencias(String prefijo, Integer limite) {
+        int maximo = limite == null || limite <= 0 ? limiteSugerencias : Math.min(limite, limiteSugerencias);
+        return sugerenciasProductos.sugerir(prefijo, maximo);
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public FacetasResponse filtrarProductos(Boolean esOrganico, Boolean esVegano, List<Integer> categoriaIds,
+            BigDecimal precioMin, BigDecimal precioMax, Integer pagina, Integer tamano) {
+        int limite = tamano == null || tamano <= 0 ? tamanoPaginaPorDefecto : Math.min(tamano, tamanoPaginaMaximo);
+        int numeroPagina = pagina == null || pagina < 0 ? 0 : pagina;
+        return facetasProductos.filtrar(esOrganico, esVegano, categoriaIds, precioMin, precioMax, numeroPagina, limite);
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<ProductoResponse> obtenerProductosPorCategoria(Integer categoriaId) {
-        return productoRepository.findByCategoria_CategoriaIdAndEstaActivoTrueAndEstaVerificadoTrue(categoriaId)
-                .stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
+        if (catalogoService.estaCargado()) {
+            return catalogoService.obtenerProductosPorCategoria(categoriaId);
+        }
+        return productoRepository.findResponsesByCategoria(categoriaId);
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public ProductoResponse obtenerProductoPorId(Integer id) {
+        if (catalogoService.estaCargado()) {
+            ProductoResponse enCatalogo = catalogoService.obtenerProducto(id);
+            if (enCatalogo != null) {
+                return enCatalogo;
+            }
+        }
+
         Producto producto = productoRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
 
@@ -53,18 +152,16 @@ public class ProductoService {
         return convertirAResponse(producto);
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<Categoria> obtenerCategorias() {
+        if (catalogoService.estaCargado()) {
+            return catalogoService.obtenerCategorias();
+        }
         return categoriaRepository.findByEstaActivaTrue();
     }
 
     public ProductoResponse crearProducto(ProductoRequest request, String emailVendedor) {
-        Usuario vendedor = usuarioRepository.findByEmail(emailVendedor)
-                .orElseThrow(() -> new RuntimeException("Vendedor no encontrado"));
-
-        String roleName = vendedor.getRol().getNombreRol();
-        if (!roleName.equalsIgnoreCase("vendedor") && !roleName.equalsIgnoreCase("ROLE_SELLER")) {
-            throw new RuntimeException("Solo los vendedores pueden crear productos");
-        }
+        Usuario vendedor = obtenerVendedor(emailVendedor);
 
         Categoria categoria = categoriaRepository.findById(request.getCategoriaId())
                 .orElseThrow(() -> new RuntimeException("Categoría no encontrada"));
@@ -77,6 +174,7 @@ public class ProductoService {
         producto.setEstaVerificado(false);
 
         producto = productoRepository.save(producto);
+        eventPublisher.publishEvent(new ProductoCambiadoEvent(producto.getProductoId()));
         return convertirAResponse(producto);
     }
 
@@ -94,6 +192,7 @@ public class ProductoService {
         actualizarDatosProducto(producto, request, categoria);
 
         producto = productoRepository.save(producto);
+        eventPublisher.publishEvent(new ProductoCambiadoEvent(producto.getProductoId()));
         return convertirAResponse(producto);
     }
 
@@ -108,19 +207,178 @@ public class ProductoService {
         // Soft delete
         producto.setEstaActivo(false);
         productoRepository.save(producto);
+        eventPublisher.publishEvent(new ProductoCambiadoEvent(producto.getProductoId()));
+    }
+
+    // Sincronización de precio y stock desde el ERP del vendedor: las filas con versión y sin ella
+    // se aplican en dos UPDATE en lote; un conflicto de versión no aborta el resto del lote.
+    public AjusteInventarioResponse ajustarInventario(List<AjusteInventarioRequest> ajustes, String emailVendedor) {
+        Usuario vendedor = usuarioRepository.findByEmail(emailVendedor)
+                .orElseThrow(() -> new RuntimeException("Vendedor no encontrado"));
+
+        AjusteInventarioResponse resultado = new AjusteInventarioResponse();
+        List<Integer> conVersion = new ArrayList<>();
+        List<Integer> sinVersion = new ArrayList<>();
+        for (int i = 0; i < ajustes.size(); i++) {
+            String error = validarAjuste(ajustes.get(i));
+            if (error != null) {
+                resultado.getErrores().add(new AjusteInventarioResponse.ErrorAjuste(i + 1, error));
+            } else if (ajustes.get(i).getVersion() != null) {
+                conVersion.add(i);
+            } else {
+                sinVersion.add(i);
+            }
+        }
+
+        Set<Integer> actualizados = new LinkedHashSet<>();
+        List<Integer> sinAplicar = new ArrayList<>();
+        aplicarAjustes(ajustes, conVersion, vendedor.getUsuarioId(), true, actualizados, sinAplicar);
+        aplicarAjustes(ajustes, sinVersion, vendedor.getUsuarioId(), false, actualizados, sinAplicar);
+
+        // Una fila no aplicada es un conflicto si el producto existe y es del vendedor
+        if (!sinAplicar.isEmpty()) {
+            List<Integer> ids = sinAplicar.stream().map(i -> ajustes.get(i).getProductoId()).toList();
+            Set<Integer> propios = new HashSet<>(productoRepository.findIdsByVendedor(ids, vendedor.getUsuarioId()));
+            for (Integer fila : sinAplicar) {
+                Integer productoId = ajustes.get(fila).getProductoId();
+                if (propios.contains(productoId)) {
+                    resultado.getConflictos().add(productoId);
+                } else {
+                    resultado.getErrores().add(new AjusteInventarioResponse.ErrorAjuste(fila + 1,
+                            "Producto no encontrado: " + productoId));
+                }
+            }
+        }
+
+        resultado.getErrores().sort(Comparator.comparingInt(AjusteInventarioResponse.ErrorAjuste::getFila));
+        resultado.setActualizados(actualizados.size());
+        if (!actualizados.isEmpty()) {
+            eventPublisher.publishEvent(new ProductoCambiadoEvent(actualizados));
+        }
+        return resultado;
+    }
+
+    private void aplicarAjustes(List<AjusteInventarioRequest> ajustes, List<Integer> filas, Integer vendedorId,
+            boolean conVersion, Set<Integer> actualizados, List<Integer> sinAplicar) {
+        if (filas.isEmpty()) {
+            return;
+        }
+        int[] afectadas = productoRepository.ajustarEnLote(filas.stream().map(ajustes::get).toList(),
+                vendedorId, conVersion);
+        List<Integer> sinConteo = new ArrayList<>();
+        for (int i = 0; i < afectadas.length; i++) {
+            if (afectadas[i] == 1) {
+                actualizados.add(ajustes.get(filas.get(i)).getProductoId());
+            } else if (afectadas[i] == Statement.SUCCESS_NO_INFO) {
+                sinConteo.add(filas.get(i));
+            } else {
+                sinAplicar.add(filas.get(i));
+            }
+        }
+        if (!sinConteo.isEmpty()) {
+            verificarAjustes(ajustes, sinConteo, vendedorId, actualizados, sinAplicar);
+        }
+    }
+
+    // El driver no informó si la fila se aplicó: se vuelve a leer la versión antes de que otro lote la cambie.
+    // Un ajuste con versión se aplicó si el producto quedó exactamente una versión por encima de la enviada.
+    private void verificarAjustes(List<AjusteInventarioRequest> ajustes, List<Integer> filas, Integer vendedorId,
+            Set<Integer> actualizados, List<Integer> sinAplicar) {
+        List<Integer> ids = filas.stream().map(i -> ajustes.get(i).getProductoId()).toList();
+        Map<Integer, Long> versiones = new HashMap<>();
+        for (Object[] fila : productoRepository.findVersionesByVendedor(ids, vendedorId)) {
+            versiones.put((Integer) fila[0], (Long) fila[1]);
+        }
+        Set<String> confirmados = new HashSet<>();
+        for (Integer fila : filas) {
+            AjusteInventarioRequest ajuste = ajustes.get(fila);
+            Long actual = versiones.get(ajuste.getProductoId());
+            boolean aplicada = ajuste.getVersion() == null
+                    ? versiones.containsKey(ajuste.getProductoId())
+                    : actual != null && actual == ajuste.getVersion() + 1
+                            && confirmados.add(ajuste.getProductoId() + ":" + ajuste.getVersion());
+            if (aplicada) {
+                actualizados.add(ajuste.getProductoId());
+            } else {
+                sinAplicar.add(fila);
+            }
+        }
+    }
+
+    private String validarAjuste(AjusteInventarioRequest ajuste) {
+        if (ajuste.getProductoId() == null) {
+            return "El producto es obligatorio";
+        }
+        if (ajuste.getPrecio() == null && ajuste.getStock() == null) {
+            return "Debe indicar precio o stock";
+        }
+        if (ajuste.getPrecio() != null && ajuste.getPrecio().signum() <= 0) {
+            return "El precio debe ser mayor a 0";
+        }
+        if (ajuste.getStock() != null && ajuste.getStock() < 0) {
+            return "El stock debe ser mayor o igual a 0";
+        }
+        return null;
     }
 
     public List<ProductoResponse> obtenerProductosPorVendedor(String emailVendedor) {
+        if (!usuarioRepository.existsByEmail(emailVendedor)) {
+            throw new RuntimeException("Vendedor no encontrado");
+        }
+
+        return productoRepository.findResponsesByVendedorEmail(emailVendedor);
+    }
+
+    // Listado sin cursor: como mucho lo que cabe en una verificación en lote; el resto, por páginas
+    public ProductoPaginaResponse obtenerProductosPendientes() {
+        return armarPagina(productoRepository.findPendingResponsesFirstPage(Limit.of(maxProductosVerificacion + 1)),
+                maxProductosVerificacion);
+    }
+
+    public ProductoPaginaResponse obtenerPaginaPendientes(String cursor, Integer tamano) {
+        int limite = tamano == null || tamano <= 0 ? tamanoPaginaPorDefecto : Math.min(tamano, tamanoPaginaMaximo);
+
+        List<ProductoResponse> productos;
+        if (cursor == null || cursor.isBlank()) {
+            productos = productoRepository.findPendingResponsesFirstPage(Limit.of(limite + 1));
+        } else {
+            CursorPagina.Posicion posicion = CursorPagina.decodificar(cursor);
+            productos = productoRepository.findPendingResponsesAfter(
+                    posicion.fecha(), posicion.id(), Limit.of(limite + 1));
+        }
+
+        return armarPagina(productos, limite);
+    }
+
+    // Aprobación o rechazo de varios pendientes en un único UPDATE
+    public int verificarProductos(List<Integer> productoIds, boolean aprobado) {
+        // La lista acaba en un IN (...) y en un evento que recarga esos productos del catálogo
+        if (productoIds.size() > maxProductosVerificacion) {
+            throw new RuntimeException("No se pueden verificar más de " + maxProductosVerificacion
+                    + " productos a la vez");
+        }
+        LocalDateTime ahora = LocalDateTime.now();
+        int actualizados = aprobado
+                ? productoRepository.aprobarPendientes(productoIds, ahora)
+                : productoRepository.rechazarPendientes(productoIds, ahora);
+        if (actualizados > 0) {
+            eventPublisher.publishEvent(new ProductoCambiadoEvent(productoIds));
+        }
+        return actualizados;
+    }
+
+    Usuario obtenerVendedor(String emailVendedor) {
         Usuario vendedor = usuarioRepository.findByEmail(emailVendedor)
                 .orElseThrow(() -> new RuntimeException("Vendedor no encontrado"));
 
-        return productoRepository.findByVendedor(vendedor)
-                .stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
+        String roleName = vendedor.getRol().getNombreRol();
+        if (!roleName.equalsIgnoreCase("vendedor") && !roleName.equalsIgnoreCase("ROLE_SELLER")) {
+            throw new RuntimeException("Solo los vendedores pueden crear productos");
+        }
+        return vendedor;
     }
 
-    private void actualizarDatosProducto(Producto producto, ProductoRequest request, Categoria categoria) {
+    void actualizarDatosProducto(Producto producto, ProductoRequest request, Categoria categoria) {
         producto.setNombreProducto(request.getNombreProducto());
         producto.setDescripcion(request.getDescripcion());
         producto.setPrecio(request.getPrecio());
@@ -134,6 +392,16 @@ public class ProductoService {
         producto.setUnidadMedida(request.getUnidadMedida());
     }
 
+    private ProductoPaginaResponse armarPagina(List<ProductoResponse> productos, int limite) {
+        String siguienteCursor = null;
+        if (productos.size() > limite) {
+            productos = productos.subList(0, limite);
+            ProductoResponse ultimo = productos.get(limite - 1);
+            siguienteCursor = CursorPagina.codificar(ultimo.getFechaCreacion(), ultimo.getProductoId());
+        }
+        return new ProductoPaginaResponse(productos, siguienteCursor);
+    }
+
     private ProductoResponse convertirAResponse(Producto producto) {
         ProductoResponse response = new ProductoResponse();
         response.setProductoId(producto.getProductoId());
@@ -149,9 +417,11 @@ public class ProductoService {
         response.setUnidadMedida(producto.getUnidadMedida());
         response.setCalificacionPromedio(producto.getCalificacionPromedio());
         response.setTotalCalificaciones(producto.getTotalCalificaciones());
+        response.setCategoriaId(producto.getCategoria().getCategoriaId());
         response.setNombreCategoria(producto.getCategoria().getNombreCategoria());
         response.setNombreVendedor(producto.getVendedor().getNombre() + " " + producto.getVendedor().getApellido());
         response.setFechaCreacion(producto.getFechaCreacion());
+        response.setVersion(producto.getVersion());
         return response;
     }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import eco.market.repository.ProductoRepository;
 import eco.market.repository.UsuarioRepository;
 import eco.market.repository.PedidoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -30,6 +31,9 @@ public class ResenaService {
     @Autowired
     private PedidoRepository pedidoRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public Resena crearResena(ResenaRequest request, String email) {
         Usuario usuario = usuarioRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
@@ -120,5 +124,7 @@ public class ResenaService {
         }
 
         productoRepository.save(producto);
+        // La calificación se muestra en el catálogo en memoria
+        eventPublisher.publishEvent(new ProductoCambiadoEvent(productoId));
     }
 }
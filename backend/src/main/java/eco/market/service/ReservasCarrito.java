@@ -0,0 +1,263 @@
+package eco.market.service;
+
+import eco.market.entity.ReservaCarrito;
+import eco.market.repository.ProductoRepository;
+import eco.market.repository.ReservaCarritoRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Reservas temporales de stock para el carrito (app.carrito.reservas.habilitado=true).
+// Añadir un producto al carrito descuenta ya la cantidad de Productos.stock y la apunta en
+// Reservas_Carrito con una fecha de expiración; al crear el pedido la reserva se consume en
+// lugar de descontar otra vez. Los vencimientos se llevan en una rueda temporizada en memoria
+// y las reservas vencidas se devuelven al stock en lotes. La tabla es la fuente de verdad:
+// al arrancar se vuelve a programar todo lo que tenga.
+@Service
+@DependsOn("entityManagerFactory")
+@ConditionalOnProperty(name = "app.carrito.reservas.habilitado", havingValue = "true")
+public class ReservasCarrito {
+
+    @Autowired
+    private ReservaCarritoRepository reservaCarritoRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${app.carrito.reservas.ttl-segundos:900}")
+    private long ttlSegundos;
+
+    @Value("${app.carrito.reservas.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${app.carrito.reservas.ranuras:512}")
+    private int numeroRanuras;
+
+    @Value("${app.carrito.reservas.tamano-lote:500}")
+    private int tamanoLote;
+
+    private RuedaVencimientos rueda;
+
+    @PostConstruct
+    public void iniciar() {
+        rueda = new RuedaVencimientos(numeroRanuras, tickMs, System.currentTimeMillis());
+        recuperar();
+    }
+
+    // Programa en la rueda todas las reservas de la tabla; las ya vencidas salen en el siguiente tick
+    public void recuperar() {
+        List<ReservaCarritoRepository.Vencimiento> vencimientos = reservaCarritoRepository.findVencimientos();
+        vencimientos.forEach(v -> rueda.programar(v.getReservaId(), milisegundos(v.getFechaExpiracion())));
+        if (!vencimientos.isEmpty()) {
+            System.out.println("Reservas de carrito recuperadas: " + vencimientos.size());
+        }
+    }
+
+    // Suma la cantidad a la reserva del usuario para el producto y renueva su expiración
+    @Transactional
+    public void reservar(Integer usuarioId, Integer productoId, int cantidad) {
+        ajustar(usuarioId, productoId, cantidad, true);
+    }
+
+    // Deja la reserva en exactamente "cantidad" (0 la elimina) y renueva su expiración
+    @Transactional
+    public void ajustar(Integer usuarioId, Integer productoId, int cantidad) {
+        ajustar(usuarioId, productoId, cantidad, false);
+    }
+
+    // Varias reservas del usuario a la vez (0 elimina): una consulta, un lote de descuentos y otro de devoluciones
+    @Transactional
+    public void ajustar(Integer usuarioId, SortedMap<Integer, Integer> cantidades) {
+        cantidades.forEach((productoId, cantidad) -> {
+            if (cantidad == null || cantidad < 0) {
+                throw new RuntimeException("Cantidad inválida para producto: " + productoId);
+            }
+        });
+        Map<Integer, ReservaCarrito> reservas = new HashMap<>();
+        reservaCarritoRepository.findParaConsumir(usuarioId, cantidades.keySet())
+                .forEach(reserva -> reservas.put(reserva.getProductoId(), reserva));
+
+        SortedMap<Integer, Integer> descuentos = new TreeMap<>();
+        SortedMap<Integer, Integer> devoluciones = new TreeMap<>();
+        cantidades.forEach((productoId, cantidad) -> {
+            ReservaCarrito reserva = reservas.get(productoId);
+            int diferencia = cantidad - (reserva == null ? 0 : reserva.getCantidad());
+            if (diferencia > 0) {
+                descuentos.put(productoId, diferencia);
+            } else if (diferencia < 0) {
+                devoluciones.put(productoId, -diferencia);
+            }
+        });
+        int[] filas = productoRepository.descontarStockEnLote(descuentos);
+        int i = 0;
+        for (Integer productoId : descuentos.keySet()) {
+            if (filas[i++] != 1) {
+                throw new RuntimeException("Stock insuficiente para producto: " + productoId);
+            }
+        }
+        productoRepository.devolverStockEnLote(devoluciones);
+
+        LocalDateTime expiracion = LocalDateTime.now().plusSeconds(ttlSegundos);
+        List<ReservaCarrito> guardar = new ArrayList<>();
+        List<ReservaCarrito> borrar = new ArrayList<>();
+        cantidades.forEach((productoId, cantidad) -> {
+            ReservaCarrito reserva = reservas.get(productoId);
+            if (cantidad == 0) {
+                if (reserva != null) {
+                    borrar.add(reserva);
+                }
+                return;
+            }
+            if (reserva == null) {
+                reserva = new ReservaCarrito();
+                reserva.setUsuarioId(usuarioId);
+                reserva.setProductoId(productoId);
+            }
+            reserva.setCantidad(cantidad);
+            reserva.setFechaExpiracion(expiracion);
+            guardar.add(reserva);
+        });
+        reservaCarritoRepository.deleteAllInBatch(borrar);
+        for (ReservaCarrito reserva : reservaCarritoRepository.saveAll(guardar)) {
+            programarTrasCommit(reserva.getReservaId(), milisegundos(expiracion));
+        }
+        if (!descuentos.isEmpty() || !devoluciones.isEmpty()) {
+            Set<Integer> cambiados = new HashSet<>(descuentos.keySet());
+            cambiados.addAll(devoluciones.keySet());
+            eventPublisher.publishEvent(new ProductoCambiadoEvent(cambiados));
+        }
+    }
+
+    // Consume las reservas del usuario que cubren las líneas de un pedido y devuelve lo cubierto
+    // por producto. Lo reservado de más sigue retenido hasta que venza.
+    @Transactional
+    public Map<Integer, Integer> consumir(Integer usuarioId, SortedMap<Integer, Integer> cantidades) {
+        Map<Integer, Integer> cubiertas = new HashMap<>();
+        for (ReservaCarrito reserva : reservaCarritoRepository.findParaConsumir(usuarioId, cantidades.keySet())) {
+            int cubierta = Math.min(reserva.getCantidad(), cantidades.get(reserva.getProductoId()));
+            cubiertas.put(reserva.getProductoId(), cubierta);
+            if (cubierta == reserva.getCantidad()) {
+                reservaCarritoRepository.delete(reserva);
+            } else {
+                reserva.setCantidad(reserva.getCantidad() - cubierta);
+            }
+        }
+        return cubiertas;
+    }
+
+    @Scheduled(fixedDelayString = "${app.carrito.reservas.tick-ms:1000}")
+    public void avanzar() {
+        List<Long> vencidas = rueda.avanzar(System.currentTimeMillis());
+        for (int i = 0; i < vencidas.size(); i += tamanoLote) {
+            List<Long> lote = vencidas.subList(i, Math.min(i + tamanoLote, vencidas.size()));
+            try {
+                liberarVencidas(lote);
+            } catch (RuntimeException e) {
+                // Siguen en la tabla; se reprograman para el siguiente tick
+                System.err.println("Error liberando reservas de carrito: " + e.getMessage());
+                lote.forEach(id -> rueda.programar(id, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    // Un lote de reservas vencidas: un UPDATE de stock por producto en un lote JDBC y un DELETE
+    private void liberarVencidas(List<Long> ids) {
+        SortedMap<Integer, Integer> devueltas = transactionTemplate.execute(status -> {
+            List<ReservaCarrito> reservas = reservaCarritoRepository.findVencidas(ids, LocalDateTime.now());
+            SortedMap<Integer, Integer> cantidades = new TreeMap<>();
+            // Una fila sin cantidad positiva no retiene nada: se borra sin devolver stock
+            reservas.stream().filter(r -> r.getCantidad() > 0)
+                    .forEach(r -> cantidades.merge(r.getProductoId(), r.getCantidad(), Integer::sum));
+            productoRepository.devolverStockEnLote(cantidades);
+            reservaCarritoRepository.deleteAllInBatch(reservas);
+            return cantidades;
+        });
+        if (!devueltas.isEmpty()) {
+            eventPublisher.publishEvent(new ProductoCambiadoEvent(devueltas.keySet()));
+        }
+    }
+
+    private void ajustar(Integer usuarioId, Integer productoId, int cantidad, boolean sumar) {
+        // Con la cantidad nueva >= 0 nunca se devuelve más de lo que la reserva retiene
+        if (cantidad < 0 || (sumar && cantidad == 0)) {
+            throw new RuntimeException("Cantidad inválida para producto: " + productoId);
+        }
+        ReservaCarrito reserva = reservaCarritoRepository.findByUsuarioIdAndProductoId(usuarioId, productoId)
+                .orElse(null);
+        int actual = reserva == null ? 0 : reserva.getCantidad();
+        int nueva = sumar ? actual + cantidad : cantidad;
+        int diferencia = nueva - actual;
+
+        if (diferencia > 0) {
+            int[] filas = productoRepository.descontarStockEnLote(new TreeMap<>(Map.of(productoId, diferencia)));
+            if (filas.length == 0 || filas[0] != 1) {
+                throw new RuntimeException("Stock insuficiente para producto: " + productoId);
+            }
+        } else if (diferencia < 0) {
+            productoRepository.devolverStockEnLote(new TreeMap<>(Map.of(productoId, -diferencia)));
+        }
+        if (diferencia != 0) {
+            eventPublisher.publishEvent(new ProductoCambiadoEvent(productoId));
+        }
+
+        if (nueva == 0) {
+            if (reserva != null) {
+                reservaCarritoRepository.delete(reserva);
+            }
+            return;
+        }
+        if (reserva == null) {
+            reserva = new ReservaCarrito();
+            reserva.setUsuarioId(usuarioId);
+            reserva.setProductoId(productoId);
+        }
+        reserva.setCantidad(nueva);
+        reserva.setFechaExpiracion(LocalDateTime.now().plusSeconds(ttlSegundos));
+        reserva = reservaCarritoRepository.save(reserva);
+        programarTrasCommit(reserva.getReservaId(), milisegundos(reserva.getFechaExpiracion()));
+    }
+
+    // La entrada anterior de una reserva renovada queda en la rueda; al salir, findVencidas la descarta
+    private void programarTrasCommit(Long reservaId, long venceMs) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            rueda.programar(reservaId, venceMs);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                rueda.programar(reservaId, venceMs);
+            }
+        });
+    }
+
+    private static long milisegundos(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
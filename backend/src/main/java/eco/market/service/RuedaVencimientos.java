@@ -0,0 +1,83 @@
+package eco.market.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Rueda temporizada con hash (Varghese y Lauck), como la de HashedWheelTimer de Netty.
+// Cada vencimiento cae en la ranura de su tick módulo el número de ranuras, con las vueltas
+// completas que le faltan; programar es O(1) y cada tick solo recorre su ranura, sin ordenar
+// ni consultar nada, aunque haya millones de vencimientos pendientes.
+//
+// programar() puede llamarse desde cualquier hilo; avanzar() solo desde uno.
+final class RuedaVencimientos {
+
+    private record Nueva(long id, long venceMs) {
+    }
+
+    private static final class Entrada {
+        private final long id;
+        private long vueltas;
+
+        private Entrada(long id, long vueltas) {
+            this.id = id;
+            this.vueltas = vueltas;
+        }
+    }
+
+    private final long inicioMs;
+    private final long tickMs;
+    private final int mascara;
+    private final ArrayDeque<Entrada>[] ranuras;
+    private final ConcurrentLinkedQueue<Nueva> nuevas = new ConcurrentLinkedQueue<>();
+    private long ultimoTick;
+
+    @SuppressWarnings("unchecked")
+    RuedaVencimientos(int numeroRanuras, long tickMs, long inicioMs) {
+        // Potencia de dos para calcular la ranura con una máscara
+        int tamano = Integer.highestOneBit(Math.max(1, numeroRanuras - 1)) << 1;
+        this.ranuras = new ArrayDeque[tamano];
+        for (int i = 0; i < tamano; i++) {
+            ranuras[i] = new ArrayDeque<>();
+        }
+        this.mascara = tamano - 1;
+        this.tickMs = tickMs;
+        this.inicioMs = inicioMs;
+    }
+
+    void programar(long id, long venceMs) {
+        nuevas.add(new Nueva(id, venceMs));
+    }
+
+    // Procesa todos los ticks hasta ahoraMs (se recupera si una pasada llega tarde) y devuelve los ids vencidos
+    synchronized List<Long> avanzar(long ahoraMs) {
+        List<Long> vencidos = new ArrayList<>();
+        long objetivo = (ahoraMs - inicioMs) / tickMs;
+        for (long tick = ultimoTick + 1; tick <= objetivo; tick++) {
+            trasladarNuevas(tick);
+            Iterator<Entrada> entradas = ranuras[(int) (tick & mascara)].iterator();
+            while (entradas.hasNext()) {
+                Entrada entrada = entradas.next();
+                if (entrada.vueltas <= 0) {
+                    entradas.remove();
+                    vencidos.add(entrada.id);
+                } else {
+                    entrada.vueltas--;
+                }
+            }
+            ultimoTick = tick;
+        }
+        return vencidos;
+    }
+
+    private void trasladarNuevas(long tick) {
+        Nueva nueva;
+        while ((nueva = nuevas.poll()) != null) {
+            // Tick en el que vence, redondeado hacia arriba; lo ya vencido sale en este mismo tick
+            long plazo = Math.max(tick, (nueva.venceMs() - inicioMs + tickMs - 1) / tickMs);
+            ranuras[(int) (plazo & mascara)].add(new Entrada(nueva.id(), (plazo - tick) / ranuras.length));
+        }
+    }
+}
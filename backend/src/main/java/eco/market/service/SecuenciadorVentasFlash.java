@@ -0,0 +1,308 @@
+package eco.market.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Modo "venta flash" para productos muy disputados. En vez de que cada pedido actualice la
+// fila del producto y espere su bloqueo, las compras de un producto marcado se encolan en un
+// carril con un único escritor, que las aplica en lotes: lee el stock con FOR UPDATE, acepta
+// las compras por orden de llegada mientras alcance y escribe el descuento con un solo UPDATE.
+//
+// Cada lote se confirma aparte, así que si el pedido que reservó no llega a confirmarse la
+// cantidad se devuelve con una liberación en el mismo carril. El secuenciador usa su propio
+// pool de conexiones: los pedidos esperan su resultado con una conexión ya tomada y no deben
+// poder dejarlo sin ninguna.
+@Service
+public class SecuenciadorVentasFlash {
+
+    private static final String CONSULTA_STOCK = "SELECT stock FROM productos WHERE producto_id = ? FOR UPDATE";
+    private static final String DESCUENTO_LOTE = "UPDATE productos SET stock = stock - ?, version = version + 1 "
+            + "WHERE producto_id = ?";
+    private static final long ESPERA_REINTENTO_MS = 50;
+    private static final long ESPERA_REINTENTO_MAX_MS = 5000;
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.ventas-flash.productos:}")
+    private Set<Integer> productosIniciales;
+
+    @Value("${app.ventas-flash.tamano-lote:200}")
+    private int tamanoLote;
+
+    @Value("${app.ventas-flash.espera-max-ms:5000}")
+    private long esperaMaxima;
+
+    @Value("${app.ventas-flash.conexiones:2}")
+    private int conexiones;
+
+    private final Set<Integer> productos = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Integer, Carril> carriles = new ConcurrentHashMap<>();
+
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong reservas = new AtomicLong();
+    private final AtomicLong agotadas = new AtomicLong();
+    private final AtomicLong liberaciones = new AtomicLong();
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private ExecutorService hilos;
+    private ScheduledExecutorService reintentos;
+
+    // cantidad < 0 es una liberación: no tiene a nadie esperando y siempre se aplica
+    private record Intencion(int cantidad, CompletableFuture<Boolean> resultado) {
+    }
+
+    private static class Carril {
+        private final ConcurrentLinkedQueue<Intencion> cola = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean programado = new AtomicBoolean();
+        // Lotes fallidos seguidos; solo lo toca el drenado en curso
+        private int fallos;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        productos.addAll(productosIniciales);
+        // Pool pequeño y perezoso: sin productos marcados no abre ninguna conexión
+        dataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("ventas-flash");
+        dataSource.setMaximumPoolSize(conexiones);
+        dataSource.setMinimumIdle(0);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        hilos = Executors.newFixedThreadPool(conexiones, tarea -> {
+            Thread thread = new Thread(tarea, "ventas-flash");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reintentos = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread thread = new Thread(tarea, "ventas-flash-reintentos");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void detener() {
+        reintentos.shutdownNow();
+        hilos.shutdownNow();
+        dataSource.close();
+    }
+
+    public boolean esVentaFlash(Integer productoId) {
+        return productos.contains(productoId);
+    }
+
+    public void marcar(Integer productoId, boolean activa) {
+        if (activa) {
+            productos.add(productoId);
+        } else {
+            productos.remove(productoId);
+        }
+    }
+
+    public Set<Integer> productos() {
+        return new TreeSet<>(productos);
+    }
+
+    // Espera a que el carril del producto resuelva la compra; false si no queda stock.
+    // Dentro de una transacción, si esta no se confirma la cantidad se libera sola.
+    public boolean reservar(Integer productoId, int cantidad) {
+        CompletableFuture<Boolean> resultado = new CompletableFuture<>();
+        encolar(productoId, new Intencion(cantidad, resultado));
+
+        boolean reservada;
+        try {
+            reservada = resultado.get(esperaMaxima, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // Si el lote llega a aplicarla más tarde, se devuelve
+            resultado.thenAccept(aplicada -> {
+                if (aplicada) {
+                    liberar(productoId, cantidad);
+                }
+            });
+            throw new RuntimeException("Producto en venta flash con demasiada demanda, inténtalo de nuevo");
+        }
+
+        if (reservada && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int estado) {
+                    if (estado != STATUS_COMMITTED) {
+                        liberar(productoId, cantidad);
+                    }
+                }
+            });
+        }
+        return reservada;
+    }
+
+    public void liberar(Integer productoId, int cantidad) {
+        encolar(productoId, new Intencion(-cantidad, null));
+    }
+
+    public Map<String, Object> metricas() {
+        long reservasTotal = reservas.get();
+        long lotesTotal = lotes.get();
+        Map<String, Object> metricas = new LinkedHashMap<>();
+        metricas.put("productos", productos());
+        metricas.put("lotes", lotesTotal);
+        metricas.put("reservas", reservasTotal);
+        metricas.put("agotadas", agotadas.get());
+        metricas.put("liberaciones", liberaciones.get());
+        metricas.put("reservasPorLote", lotesTotal == 0 ? 0 : (double) reservasTotal / lotesTotal);
+        return metricas;
+    }
+
+    private void encolar(Integer productoId, Intencion intencion) {
+        Carril carril = carriles.computeIfAbsent(productoId, id -> new Carril());
+        carril.cola.add(intencion);
+        despertar(productoId, carril);
+    }
+
+    // Un solo drenado por carril a la vez: es lo que hace del carril el único escritor del producto
+    private void despertar(Integer productoId, Carril carril) {
+        if (carril.programado.compareAndSet(false, true)) {
+            hilos.execute(() -> drenar(productoId, carril));
+        }
+    }
+
+    private void drenar(Integer productoId, Carril carril) {
+        boolean aplicado = true;
+        try {
+            List<Intencion> lote = new ArrayList<>(tamanoLote);
+            Intencion intencion;
+            while (aplicado && (intencion = carril.cola.poll()) != null) {
+                lote.add(intencion);
+                if (lote.size() == tamanoLote || carril.cola.isEmpty()) {
+                    aplicado = aplicar(productoId, carril, lote);
+                    lote.clear();
+                }
+            }
+        } finally {
+            if (aplicado) {
+                carril.fallos = 0;
+            }
+            if (!aplicado && !carril.cola.isEmpty()) {
+                // Las liberaciones devueltas a la cola no pueden esperar a la siguiente compra: el carril
+                // sigue programado y se reintenta con una espera que crece con cada fallo seguido
+                long espera = Math.min(ESPERA_REINTENTO_MAX_MS, ESPERA_REINTENTO_MS << Math.min(carril.fallos++, 10));
+                reintentos.schedule(() -> hilos.execute(() -> drenar(productoId, carril)), espera,
+                        TimeUnit.MILLISECONDS);
+            } else {
+                carril.programado.set(false);
+                // Lo que llegó entre el último poll y el set(false) no debe quedarse en la cola
+                if (!carril.cola.isEmpty()) {
+                    despertar(productoId, carril);
+                }
+            }
+        }
+    }
+
+    private boolean aplicar(Integer productoId, Carril carril, List<Intencion> lote) {
+        List<Boolean> resultados = new ArrayList<>(lote.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                resultados.clear();
+                List<Integer> stock = jdbcTemplate.queryForList(CONSULTA_STOCK, Integer.class, productoId);
+                if (stock.isEmpty()) {
+                    throw new RuntimeException("Producto no encontrado: " + productoId);
+                }
+                // Las liberaciones primero, para que su stock ya cuente en este lote
+                int disponible = stock.get(0);
+                int neto = 0;
+                for (Intencion intencion : lote) {
+                    if (intencion.cantidad() < 0) {
+                        disponible -= intencion.cantidad();
+                        neto += intencion.cantidad();
+                    }
+                }
+                for (Intencion intencion : lote) {
+                    if (intencion.cantidad() < 0) {
+                        resultados.add(true);
+                    } else if (intencion.cantidad() <= disponible) {
+                        disponible -= intencion.cantidad();
+                        neto += intencion.cantidad();
+                        resultados.add(true);
+                    } else {
+                        resultados.add(false);
+                    }
+                }
+                if (neto != 0) {
+                    jdbcTemplate.update(DESCUENTO_LOTE, neto, productoId);
+                }
+            });
+        } catch (RuntimeException e) {
+            System.err.println("Error aplicando lote de venta flash del producto " + productoId + ": "
+                    + e.getMessage());
+            for (Intencion intencion : lote) {
+                if (intencion.resultado() != null) {
+                    intencion.resultado().completeExceptionally(e);
+                } else {
+                    carril.cola.add(intencion);
+                }
+            }
+            return false;
+        }
+
+        lotes.incrementAndGet();
+        boolean liberado = false;
+        for (int i = 0; i < lote.size(); i++) {
+            Intencion intencion = lote.get(i);
+            if (intencion.resultado() == null) {
+                liberaciones.incrementAndGet();
+                liberado = true;
+            } else {
+                (resultados.get(i) ? reservas : agotadas).incrementAndGet();
+                intencion.resultado().complete(resultados.get(i));
+            }
+        }
+        // Las compras ya las avisa el pedido al confirmarse; el stock devuelto se avisa aquí, fuera
+        // del carril, porque el catálogo recarga el producto con una conexión del pool principal
+        if (liberado) {
+            CompletableFuture.runAsync(() -> eventPublisher.publishEvent(new ProductoCambiadoEvent(productoId)));
+        }
+        return true;
+    }
+}
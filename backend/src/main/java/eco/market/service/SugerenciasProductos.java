@@ -0,0 +1,379 @@
+package eco.market.service;
+
+import eco.market.dto.ProductoResponse;
+import eco.market.dto.SugerenciaResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Autocompletado del buscador: trie compacto (radix) sobre los nombres normalizados de productos
+// y categorías. Cada nodo guarda sus K mejores completados por popularidad, así una consulta
+// solo recorre el prefijo y devuelve la lista ya calculada.
+@Service
+public class SugerenciasProductos implements IndiceCatalogo {
+
+    private static final Entrada[] SIN_ENTRADAS = new Entrada[0];
+
+    // Más popular primero; a igual popularidad, orden alfabético sin tener en cuenta acentos ni mayúsculas
+    private static final Comparator<Entrada> POR_POPULARIDAD = Comparator
+            .comparingLong((Entrada e) -> -e.peso)
+            .thenComparing(e -> e.orden)
+            .thenComparing(e -> e.sugerencia.getTexto())
+            .thenComparing(e -> e.sugerencia.getId());
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int topK;
+
+    private Nodo raiz = new Nodo("");
+    // Durante una reconstrucción completa los top-K se calculan al final en un solo recorrido
+    private boolean construyendo;
+    private final Map<Integer, Entrada> productos = new HashMap<>();
+    private final Map<Integer, Entrada> categorias = new HashMap<>();
+    private final Map<Integer, Integer> productosPorCategoria = new HashMap<>();
+    private final Map<Integer, String> nombresCategoria = new HashMap<>();
+
+    public SugerenciasProductos(@Value("${app.catalogo.sugerencias.limite:10}") int topK) {
+        this.topK = topK;
+    }
+
+    public List<SugerenciaResponse> sugerir(String prefijo, int limite) {
+        String clave = normalizar(prefijo);
+        if (clave.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Nodo nodo = buscarNodo(clave);
+            if (nodo == null) {
+                return List.of();
+            }
+            int total = Math.min(limite, nodo.top.length);
+            List<SugerenciaResponse> sugerencias = new ArrayList<>(total);
+            for (int i = 0; i < total; i++) {
+                // Copia: la instancia del índice se comparte entre todas las consultas
+                SugerenciaResponse sugerencia = nodo.top[i].sugerencia;
+                sugerencias.add(new SugerenciaResponse(sugerencia.getTexto(), sugerencia.getTipo(), sugerencia.getId()));
+            }
+            return sugerencias;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void reconstruir(Collection<ProductoResponse> productosCatalogo) {
+        lock.writeLock().lock();
+        try {
+            raiz = new Nodo("");
+            productos.clear();
+            categorias.clear();
+            productosPorCategoria.clear();
+            nombresCategoria.clear();
+            construyendo = true;
+            Set<Integer> categoriasTocadas = new HashSet<>();
+            productosCatalogo.forEach(producto -> agregarProducto(producto, categoriasTocadas));
+            categoriasTocadas.forEach(this::actualizarCategoria);
+            recalcularSubarbol(raiz);
+        } finally {
+            construyendo = false;
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void actualizar(Set<Integer> afectados, Collection<ProductoResponse> actuales) {
+        lock.writeLock().lock();
+        try {
+            Set<Integer> categoriasTocadas = new HashSet<>();
+            for (Integer productoId : afectados) {
+                Entrada anterior = productos.remove(productoId);
+                if (anterior != null) {
+                    quitarEntrada(anterior);
+                    productosPorCategoria.merge(anterior.categoriaId, -1, Integer::sum);
+                    categoriasTocadas.add(anterior.categoriaId);
+                }
+            }
+            actuales.forEach(producto -> agregarProducto(producto, categoriasTocadas));
+            categoriasTocadas.forEach(this::actualizarCategoria);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void agregarProducto(ProductoResponse producto, Set<Integer> categoriasTocadas) {
+        long peso = 1L + (producto.getTotalCalificaciones() != null ? producto.getTotalCalificaciones() : 0);
+        Entrada entrada = new Entrada(new SugerenciaResponse(producto.getNombreProducto(), "producto",
+                producto.getProductoId()), peso, producto.getCategoriaId());
+        productos.put(producto.getProductoId(), entrada);
+        insertarEntrada(entrada);
+        productosPorCategoria.merge(producto.getCategoriaId(), 1, Integer::sum);
+        nombresCategoria.put(producto.getCategoriaId(), producto.getNombreCategoria());
+        categoriasTocadas.add(producto.getCategoriaId());
+    }
+
+    // La popularidad de una categoría es su número de productos en el catálogo
+    private void actualizarCategoria(Integer categoriaId) {
+        Entrada anterior = categorias.remove(categoriaId);
+        if (anterior != null) {
+            quitarEntrada(anterior);
+        }
+        int cantidad = productosPorCategoria.getOrDefault(categoriaId, 0);
+        if (cantidad <= 0) {
+            productosPorCategoria.remove(categoriaId);
+            nombresCategoria.remove(categoriaId);
+            return;
+        }
+        String nombre = nombresCategoria.get(categoriaId);
+        Entrada entrada = new Entrada(new SugerenciaResponse(nombre, "categoria", categoriaId), cantidad, categoriaId);
+        categorias.put(categoriaId, entrada);
+        insertarEntrada(entrada);
+    }
+
+    // Se indexa el nombre completo y cada sufijo que empieza en una palabra,
+    // para que "organ" también sugiera "Manzanas Orgánicas"
+    private Set<String> claves(String texto) {
+        String normalizado = normalizar(texto);
+        Set<String> claves = new LinkedHashSet<>();
+        if (normalizado.isEmpty()) {
+            return claves;
+        }
+        claves.add(normalizado);
+        for (int i = normalizado.indexOf(' '); i >= 0; i = normalizado.indexOf(' ', i + 1)) {
+            claves.add(normalizado.substring(i + 1));
+        }
+        return claves;
+    }
+
+    private void insertarEntrada(Entrada entrada) {
+        for (String clave : claves(entrada.sugerencia.getTexto())) {
+            insertar(clave, entrada);
+        }
+    }
+
+    private void quitarEntrada(Entrada entrada) {
+        for (String clave : claves(entrada.sugerencia.getTexto())) {
+            quitar(clave, entrada);
+        }
+    }
+
+    private void insertar(String clave, Entrada entrada) {
+        List<Nodo> camino = new ArrayList<>();
+        Nodo nodo = raiz;
+        camino.add(nodo);
+        int i = 0;
+        while (i < clave.length()) {
+            char c = clave.charAt(i);
+            Nodo hijo = nodo.hijos.get(c);
+            if (hijo == null) {
+                hijo = new Nodo(clave.substring(i));
+                nodo.hijos.put(c, hijo);
+                i = clave.length();
+            } else {
+                int comun = prefijoComun(hijo.etiqueta, clave, i);
+                if (comun < hijo.etiqueta.length()) {
+                    // Se parte la arista: el nodo intermedio hereda los completados del hijo
+                    Nodo intermedio = new Nodo(hijo.etiqueta.substring(0, comun));
+                    hijo.etiqueta = hijo.etiqueta.substring(comun);
+                    intermedio.hijos.put(hijo.etiqueta.charAt(0), hijo);
+                    intermedio.top = hijo.top;
+                    nodo.hijos.put(c, intermedio);
+                    hijo = intermedio;
+                }
+                i += comun;
+            }
+            nodo = hijo;
+            camino.add(nodo);
+        }
+        if (nodo.terminales == null) {
+            nodo.terminales = new ArrayList<>(1);
+        }
+        nodo.terminales.add(entrada);
+        if (!construyendo) {
+            camino.forEach(n -> n.top = conEntrada(n.top, entrada));
+        }
+    }
+
+    private void quitar(String clave, Entrada entrada) {
+        List<Nodo> camino = new ArrayList<>();
+        Nodo nodo = raiz;
+        camino.add(nodo);
+        int i = 0;
+        while (i < clave.length()) {
+            nodo = nodo.hijos.get(clave.charAt(i));
+            if (nodo == null || !clave.startsWith(nodo.etiqueta, i)) {
+                return;
+            }
+            i += nodo.etiqueta.length();
+            camino.add(nodo);
+        }
+        if (nodo.terminales == null || !nodo.terminales.remove(entrada)) {
+            return;
+        }
+        if (nodo.terminales.isEmpty()) {
+            nodo.terminales = null;
+        }
+
+        // Se eliminan las hojas vacías y se fusionan los nodos que quedan con un único hijo
+        for (int j = camino.size() - 1; j > 0; j--) {
+            Nodo actual = camino.get(j);
+            Nodo padre = camino.get(j - 1);
+            if (actual.terminales == null && actual.hijos.isEmpty()) {
+                padre.hijos.remove(actual.etiqueta.charAt(0));
+            } else if (actual.terminales == null && actual.hijos.size() == 1) {
+                Nodo unico = actual.hijos.values().iterator().next();
+                unico.etiqueta = actual.etiqueta + unico.etiqueta;
+                padre.hijos.put(unico.etiqueta.charAt(0), unico);
+            } else if (contiene(actual.top, entrada)) {
+                recalcular(actual);
+            }
+        }
+        if (contiene(raiz.top, entrada)) {
+            recalcular(raiz);
+        }
+    }
+
+    private void recalcularSubarbol(Nodo nodo) {
+        nodo.hijos.values().forEach(this::recalcularSubarbol);
+        recalcular(nodo);
+    }
+
+    // Inserta la entrada en un top-K ordenado en O(K); si ya hay un texto igual más popular no cambia nada
+    private Entrada[] conEntrada(Entrada[] top, Entrada entrada) {
+        if (top.length == topK && POR_POPULARIDAD.compare(entrada, top[topK - 1]) > 0) {
+            return top;
+        }
+        List<Entrada> lista = new ArrayList<>(top.length + 1);
+        for (Entrada actual : top) {
+            if (actual.clave.equals(entrada.clave)) {
+                if (POR_POPULARIDAD.compare(actual, entrada) <= 0) {
+                    return top;
+                }
+            } else {
+                lista.add(actual);
+            }
+        }
+        int posicion = 0;
+        while (posicion < lista.size() && POR_POPULARIDAD.compare(lista.get(posicion), entrada) < 0) {
+            posicion++;
+        }
+        lista.add(posicion, entrada);
+        if (lista.size() > topK) {
+            lista.remove(lista.size() - 1);
+        }
+        return lista.toArray(SIN_ENTRADAS);
+    }
+
+    private static boolean contiene(Entrada[] top, Entrada entrada) {
+        for (Entrada actual : top) {
+            if (actual == entrada) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recalcular(Nodo nodo) {
+        if (nodo.hijos.isEmpty() && nodo.terminales != null && nodo.terminales.size() == 1) {
+            nodo.top = new Entrada[] { nodo.terminales.get(0) };
+            return;
+        }
+        List<Entrada> candidatos = new ArrayList<>();
+        if (nodo.terminales != null) {
+            candidatos.addAll(nodo.terminales);
+        }
+        for (Nodo hijo : nodo.hijos.values()) {
+            candidatos.addAll(Arrays.asList(hijo.top));
+        }
+        if (candidatos.isEmpty()) {
+            nodo.top = SIN_ENTRADAS;
+            return;
+        }
+        candidatos.sort(POR_POPULARIDAD);
+
+        // Un mismo texto puede llegar por varias claves o por productos homónimos: se muestra una vez
+        List<Entrada> top = new ArrayList<>(Math.min(topK, candidatos.size()));
+        Set<String> vistos = new HashSet<>();
+        for (Entrada candidato : candidatos) {
+            if (top.size() == topK) {
+                break;
+            }
+            if (vistos.add(candidato.clave)) {
+                top.add(candidato);
+            }
+        }
+        nodo.top = top.toArray(SIN_ENTRADAS);
+    }
+
+    private Nodo buscarNodo(String clave) {
+        Nodo nodo = raiz;
+        int i = 0;
+        while (i < clave.length()) {
+            nodo = nodo.hijos.get(clave.charAt(i));
+            if (nodo == null) {
+                return null;
+            }
+            int comun = prefijoComun(nodo.etiqueta, clave, i);
+            if (i + comun == clave.length()) {
+                // El prefijo termina en mitad (o al final) de la arista
+                return nodo;
+            }
+            if (comun < nodo.etiqueta.length()) {
+                return null;
+            }
+            i += comun;
+        }
+        return nodo;
+    }
+
+    private static int prefijoComun(String etiqueta, String clave, int desde) {
+        int maximo = Math.min(etiqueta.length(), clave.length() - desde);
+        int i = 0;
+        while (i < maximo && etiqueta.charAt(i) == clave.charAt(desde + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String normalizar(String texto) {
+        return AnalizadorTexto.normalizar(texto).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    private static final class Nodo {
+        private String etiqueta;
+        private final Map<Character, Nodo> hijos = new HashMap<>(4);
+        private List<Entrada> terminales;
+        private Entrada[] top = SIN_ENTRADAS;
+
+        private Nodo(String etiqueta) {
+            this.etiqueta = etiqueta;
+        }
+    }
+
+    private static final class Entrada {
+        private final SugerenciaResponse sugerencia;
+        private final long peso;
+        private final Integer categoriaId;
+        // Tipo y texto: dos entradas con la misma clave se muestran una sola vez
+        private final String clave;
+        private final String orden;
+
+        private Entrada(SugerenciaResponse sugerencia, long peso, Integer categoriaId) {
+            this.sugerencia = sugerencia;
+            this.peso = peso;
+            this.categoriaId = categoriaId;
+            this.clave = sugerencia.getTipo() + ':' + sugerencia.getTexto();
+            this.orden = normalizar(sugerencia.getTexto());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package eco.market.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Contador de versión por colección pública para GET condicionales (ETag / Last-Modified).
+// El prefijo de arranque evita reutilizar un ETag de una ejecución anterior del servidor.
+@Component
+public class VersionColecciones {
+
+    public enum Coleccion {
+        PRODUCTOS, CATEGORIAS, CUPONES
+    }
+
+    private final long arranque = System.currentTimeMillis();
+    private final Map<Coleccion, AtomicLong> versiones = new EnumMap<>(Coleccion.class);
+    private final Map<Coleccion, AtomicLong> modificaciones = new EnumMap<>(Coleccion.class);
+
+    public VersionColecciones() {
+        for (Coleccion coleccion : Coleccion.values()) {
+            versiones.put(coleccion, new AtomicLong());
+            modificaciones.put(coleccion, new AtomicLong(arranque));
+        }
+    }
+
+    public void incrementar(Coleccion coleccion) {
+        versiones.get(coleccion).incrementAndGet();
+        modificaciones.get(coleccion).set(System.currentTimeMillis());
+    }
+
+    public String etag(Coleccion coleccion) {
+        return "\"" + coleccion.name().toLowerCase() + "-" + Long.toString(arranque, 36) + "-"
+                + versiones.get(coleccion).get() + "\"";
+    }
+
+    public long ultimaModificacion(Coleccion coleccion) {
+        return modificaciones.get(coleccion).get();
+    }
+}
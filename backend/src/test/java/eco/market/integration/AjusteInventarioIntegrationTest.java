@@ -0,0 +1,130 @@
+package eco.market.integration;
+
+import eco.market.dto.AjusteInventarioRequest;
+import eco.market.dto.AjusteInventarioResponse;
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.ProductoService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class AjusteInventarioIntegrationTest {
+
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    private Usuario vendedor;
+    private Usuario otroVendedor;
+    private Categoria categoria;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        vendedor = crearVendedor("ajuste@test.com", rolVendedor);
+        otroVendedor = crearVendedor("ajuste.otro@test.com", rolVendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Ajuste Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productoRepository.deleteAllInBatch(productoRepository.findByVendedor(vendedor));
+        productoRepository.deleteAllInBatch(productoRepository.findByVendedor(otroVendedor));
+        usuarioRepository.delete(vendedor);
+        usuarioRepository.delete(otroVendedor);
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testAjusteReportaConflictosYProductosAjenos() {
+        Producto vigente = crearProducto("Vigente", vendedor);
+        Producto desactualizado = crearProducto("Desactualizado", vendedor);
+        Producto sinVersion = crearProducto("Sin Version", vendedor);
+        Producto ajeno = crearProducto("Ajeno", otroVendedor);
+
+        List<AjusteInventarioRequest> ajustes = List.of(
+                new AjusteInventarioRequest(vigente.getProductoId(), new BigDecimal("3.00"), 7, vigente.getVersion()),
+                new AjusteInventarioRequest(desactualizado.getProductoId(), null, 1, desactualizado.getVersion() - 1),
+                new AjusteInventarioRequest(ajeno.getProductoId(), null, 1, null),
+                new AjusteInventarioRequest(sinVersion.getProductoId(), null, 0, null),
+                new AjusteInventarioRequest(vigente.getProductoId(), new BigDecimal("-1"), null, null),
+                new AjusteInventarioRequest(-1, null, 5, ajeno.getVersion()));
+
+        AjusteInventarioResponse resultado = productoService.ajustarInventario(ajustes, "ajuste@test.com");
+
+        assertThat(resultado.getActualizados()).isEqualTo(2);
+        assertThat(resultado.getConflictos()).containsExactly(desactualizado.getProductoId());
+        assertThat(resultado.getErrores())
+                .extracting(AjusteInventarioResponse.ErrorAjuste::getFila, AjusteInventarioResponse.ErrorAjuste::getMensaje)
+                .containsExactly(
+                        tuple(3, "Producto no encontrado: " + ajeno.getProductoId()),
+                        tuple(5, "El precio debe ser mayor a 0"),
+                        tuple(6, "Producto no encontrado: -1"));
+
+        Producto ajustado = productoRepository.findById(vigente.getProductoId()).orElseThrow();
+        assertThat(ajustado.getStock()).isEqualTo(7);
+        assertThat(ajustado.getPrecio()).isEqualByComparingTo("3.00");
+        assertThat(ajustado.getVersion()).isEqualTo(vigente.getVersion() + 1);
+        assertThat(productoRepository.findById(sinVersion.getProductoId()).orElseThrow().getStock()).isZero();
+        assertThat(productoRepository.findById(desactualizado.getProductoId()).orElseThrow().getStock()).isEqualTo(10);
+        assertThat(productoRepository.findById(ajeno.getProductoId()).orElseThrow().getStock()).isEqualTo(10);
+    }
+
+    private Usuario crearVendedor(String email, Rol rol) {
+        Usuario usuario = new Usuario();
+        usuario.setNombre("Ajuste");
+        usuario.setApellido("Vendedor");
+        usuario.setEmail(email);
+        usuario.setPasswordHash("hashed");
+        usuario.setRol(rol);
+        usuario.setEstaActivo(true);
+        usuario.setEsVerificado(true);
+        return usuarioRepository.save(usuario);
+    }
+
+    private Producto crearProducto(String nombre, Usuario propietario) {
+        Producto producto = new Producto();
+        producto.setVendedor(propietario);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto(nombre);
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal("2.00"));
+        producto.setStock(10);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        return productoRepository.save(producto);
+    }
+}
@@ -0,0 +1,219 @@
+package eco.market.integration;
+
+import eco.market.cart.AddItemRequest;
+import eco.market.cart.CartBatchRequest;
+import eco.market.cart.UpdateItemRequest;
+import eco.market.entity.*;
+import eco.market.model.Cart;
+import eco.market.model.CartItem;
+import eco.market.model.User;
+import eco.market.repository.*;
+import eco.market.service.AlmacenCarritos;
+import eco.market.service.CartService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "app.carrito.almacen.max-carritos=1",
+        "app.carrito.almacen.intervalo-volcado-ms=3600000"
+})
+@ActiveProfiles("test")
+public class AlmacenCarritosIntegrationTest {
+
+    private static final String LINEAS_DEL_USUARIO = "SELECT i.producto_id, i.cantidad FROM items_carrito i "
+            + "JOIN carrito_compras c ON c.carrito_id = i.carrito_id WHERE c.usuario_id = ? ORDER BY i.producto_id";
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private AlmacenCarritos almacenCarritos;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Usuario comprador;
+    private Usuario otroComprador;
+    private Usuario vendedor;
+    private Categoria categoria;
+    private Producto manzanas;
+    private Producto peras;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolComprador = rolRepository.findByNombreRol("COMPRADOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("COMPRADOR");
+                    return rolRepository.save(rol);
+                });
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        comprador = nuevoUsuario("carrito-uno@test.com", rolComprador);
+        otroComprador = nuevoUsuario("carrito-dos@test.com", rolComprador);
+        vendedor = nuevoUsuario("carrito-vendedor@test.com", rolVendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Carritos Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+
+        manzanas = nuevoProducto("Manzanas");
+        peras = nuevoProducto("Peras");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        almacenCarritos.volcar();
+        cartRepository.deleteAll();
+        productoRepository.deleteAllInBatch(List.of(manzanas, peras));
+        usuarioRepository.deleteAll(List.of(comprador, otroComprador, vendedor));
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testCambiosSeAgrupanYLecturasSinBaseDeDatos() {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long sentenciasAntes = estadisticas.getPrepareStatementCount();
+
+        cartService.addItemToCart(usuario, new AddItemRequest(manzanas.getProductoId(), 2));
+        cartService.addItemToCart(usuario, new AddItemRequest(manzanas.getProductoId(), 3));
+        cartService.addItemToCart(usuario, new AddItemRequest(peras.getProductoId(), 1));
+        cartService.updateItemQuantity(usuario, peras.getProductoId(), new UpdateItemRequest(4));
+        Cart cart = null;
+        for (int i = 0; i < 20; i++) {
+            cart = cartService.getCart(usuario);
+        }
+
+        // Cargar (y crear) el carrito y leer cada producto nuevo; el resto sale de memoria
+        assertThat(estadisticas.getPrepareStatementCount() - sentenciasAntes).isLessThanOrEqualTo(4);
+        assertThat(cart.getItems()).extracting(CartItem::getCantidad).containsExactly(5, 4);
+        assertThat(lineas(comprador)).isEmpty();
+
+        almacenCarritos.volcar();
+
+        assertThat(lineas(comprador)).extracting(fila -> ((Number) fila.get("cantidad")).intValue())
+                .containsExactly(5, 4);
+    }
+
+    @Test
+    public void testCarritoDesalojadoSeVuelcaYSeRecupera() throws InterruptedException {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+        User otro = userRepository.findByEmail(otroComprador.getEmail()).orElseThrow();
+
+        cartService.addItemToCart(usuario, new AddItemRequest(manzanas.getProductoId(), 2));
+        // Con capacidad 1, el segundo carrito desaloja al primero y lo vuelca en segundo plano
+        cartService.addItemToCart(otro, new AddItemRequest(peras.getProductoId(), 1));
+
+        for (int i = 0; i < 50 && lineas(comprador).isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(lineas(comprador)).hasSize(1);
+
+        cartService.removeItemFromCart(usuario, manzanas.getProductoId());
+        assertThat(cartService.getCart(usuario).getItems()).isEmpty();
+        almacenCarritos.volcar();
+        assertThat(lineas(comprador)).isEmpty();
+    }
+
+    @Test
+    public void testLoteDeOperacionesEnUnaSolaEscritura() {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+        cartService.addItemToCart(usuario, new AddItemRequest(peras.getProductoId(), 1));
+        almacenCarritos.volcar();
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long sentenciasAntes = estadisticas.getPrepareStatementCount();
+
+        Cart cart = cartService.applyBatch(usuario, new CartBatchRequest(List.of(
+                new CartBatchRequest.Operation("add", manzanas.getProductoId(), 2),
+                new CartBatchRequest.Operation("add", manzanas.getProductoId(), 1),
+                new CartBatchRequest.Operation("update", peras.getProductoId(), 6),
+                new CartBatchRequest.Operation("remove", peras.getProductoId(), 0))));
+
+        // Una lectura de los productos nuevos (con su vendedor), y nada más hasta el volcado
+        assertThat(estadisticas.getPrepareStatementCount() - sentenciasAntes).isLessThanOrEqualTo(2);
+        assertThat(cart.getItems()).extracting(CartItem::getCantidad).containsExactly(3);
+
+        // Una operación inválida descarta el lote entero
+        assertThatThrownBy(() -> cartService.applyBatch(usuario, new CartBatchRequest(List.of(
+                new CartBatchRequest.Operation("add", peras.getProductoId(), 2),
+                new CartBatchRequest.Operation("update", peras.getProductoId(), -1)))))
+                .hasMessageContaining("Invalid quantity");
+        assertThat(cartService.getCart(usuario).getItems()).extracting(CartItem::getCantidad).containsExactly(3);
+
+        almacenCarritos.volcar();
+        assertThat(lineas(comprador)).extracting(fila -> ((Number) fila.get("cantidad")).intValue())
+                .containsExactly(3);
+    }
+
+    private List<Map<String, Object>> lineas(Usuario usuario) {
+        return jdbcTemplate.queryForList(LINEAS_DEL_USUARIO, usuario.getUsuarioId());
+    }
+
+    private Producto nuevoProducto(String nombre) {
+        Producto producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto(nombre);
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal("1.50"));
+        producto.setStock(50);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        return productoRepository.save(producto);
+    }
+
+    private Usuario nuevoUsuario(String email, Rol rol) {
+        Usuario usuario = new Usuario();
+        usuario.setNombre("Carrito");
+        usuario.setApellido("Test");
+        usuario.setEmail(email);
+        usuario.setPasswordHash("hashed");
+        usuario.setRol(rol);
+        usuario.setEstaActivo(true);
+        usuario.setEsVerificado(true);
+        return usuarioRepository.save(usuario);
+    }
+}
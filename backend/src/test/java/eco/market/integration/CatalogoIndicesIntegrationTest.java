@@ -0,0 +1,479 @@
+package eco.market.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eco.market.dto.FacetasResponse;
+import eco.market.dto.ProductoRequest;
+import eco.market.dto.ProductoResponse;
+import eco.market.dto.ResenaRequest;
+import eco.market.dto.SugerenciaResponse;
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.AnalizadorTexto;
+import eco.market.service.CatalogoService;
+import eco.market.service.ProductoCambiadoEvent;
+import eco.market.service.ProductoJsonCache;
+import eco.market.service.ProductoService;
+import eco.market.service.ResenaService;
+import eco.market.service.SugerenciasProductos;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class CatalogoIndicesIntegrationTest {
+
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private CatalogoService catalogoService;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ResenaService resenaService;
+
+    @Autowired
+    private ResenaRepository resenaRepository;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    private Usuario vendedor;
+    private Categoria categoria;
+    private List<Producto> productos;
+    private Pedido pedido;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        vendedor = new Usuario();
+        vendedor.setNombre("Indices");
+        vendedor.setApellido("Vendedor");
+        vendedor.setEmail("indices@test.com");
+        vendedor.setPasswordHash("hashed");
+        vendedor.setRol(rolVendedor);
+        vendedor.setEstaActivo(true);
+        vendedor.setEsVerificado(true);
+        vendedor = usuarioRepository.save(vendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Indices Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+
+        productos = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (pedido != null) {
+            productos.forEach(p ->
+                    resenaRepository.deleteAll(resenaRepository.findByProducto_ProductoId(p.getProductoId())));
+            pedidoRepository.delete(pedido);
+        }
+        productoRepository.deleteAllInBatch(productos);
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+        catalogoService.recargar();
+    }
+
+    @Test
+    public void testBusquedaOrdenadaPorRelevancia() {
+        Producto enNombre = crearProducto("Quinoa Real", "Quinoa blanca de altura");
+        Producto enDescripcion = crearProducto("Arroz Integral", "Arroz con quinoa");
+        Producto descripcionLarga = crearProducto("Mezcla Semillas",
+                "Semillas de chia, lino, sesamo, girasol, calabaza y quinoa para ensaladas");
+        crearProducto("Avena Fina", "Copos de avena");
+        catalogoService.recargar();
+
+        // El nombre pesa más que la descripción y, a igual frecuencia, el documento corto gana
+        assertThat(productoService.buscarProductos("quinoa", 10)).extracting(ProductoResponse::getProductoId)
+                .containsExactly(enNombre.getProductoId(), enDescripcion.getProductoId(),
+                        descripcionLarga.getProductoId());
+        assertThat(productoService.buscarProductos("quinoa", 2)).extracting(ProductoResponse::getProductoId)
+                .containsExactly(enNombre.getProductoId(), enDescripcion.getProductoId());
+
+        // Cada término suma: el único producto con ambos queda primero
+        assertThat(productoService.buscarProductos("arroz quinoa", 10)).extracting(ProductoResponse::getProductoId)
+                .first().isEqualTo(enDescripcion.getProductoId());
+
+        // Las búsquedas repetidas no arrastran puntuaciones de la anterior
+        assertThat(productoService.buscarProductos("avena", 10)).extracting(ProductoResponse::getNombreProducto)
+                .containsExactly("Avena Fina");
+        assertThat(productoService.buscarProductos("quinoa", 10)).hasSize(3);
+    }
+
+    @Test
+    public void testBusquedaConAcentosYPlurales() {
+        Producto mandarina = crearProducto("Mandarina Clementina", "Fruta de temporada");
+        Producto limon = crearProducto("Limón de Murcia", "Malla de limones");
+        catalogoService.recargar();
+
+        assertThat(productoService.buscarProductos("MANDARINAS", 10)).extracting(ProductoResponse::getProductoId)
+                .containsExactly(mandarina.getProductoId());
+        assertThat(productoService.buscarProductos("limones", 10)).extracting(ProductoResponse::getProductoId)
+                .containsExactly(limon.getProductoId());
+        assertThat(productoService.buscarProductos("de la y", 10)).isEmpty();
+    }
+
+    @Test
+    public void testAnalizadorTextoNormalizaYReduceARaiz() {
+        assertThat(AnalizadorTexto.normalizar("Plátanos Orgánicos")).isEqualTo("platanos organicos");
+        // Singular, plural y género comparten raíz
+        assertThat(AnalizadorTexto.terminos("manzana manzanas manzano"))
+                .containsExactly("manzan", "manzan", "manzan");
+        assertThat(AnalizadorTexto.terminos("Tomates y tomate")).containsExactly("tomat", "tomat");
+        assertThat(AnalizadorTexto.terminos("meses")).containsExactly("mes");
+        // Las palabras vacías se descartan y las cortas no se recortan
+        assertThat(AnalizadorTexto.terminos("Sal de la casa")).containsExactly("sal", "casa");
+        assertThat(AnalizadorTexto.terminos(null)).isEmpty();
+    }
+
+    @Test
+    public void testSugerenciasPorPrefijo() {
+        Producto jengibre = crearProducto("Kombucha Jengibre", "Test");
+        Producto frutos = crearProducto("Kombucha Frutos Rojos", "Test");
+        Producto kefir = crearProducto("Kéfir de Cabra", "Test");
+        catalogoService.recargar();
+
+        // A igual popularidad, orden alfabético
+        assertThat(productoService.obtenerSugerencias("k", 10)).extracting(SugerenciaResponse::getId)
+                .containsExactly(kefir.getProductoId(), frutos.getProductoId(), jengibre.getProductoId());
+        assertThat(productoService.obtenerSugerencias("KOMB", 10)).extracting(SugerenciaResponse::getId)
+                .containsExactly(frutos.getProductoId(), jengibre.getProductoId());
+        // El prefijo puede terminar en mitad de una arista o empezar en otra palabra del nombre
+        assertThat(productoService.obtenerSugerencias("kombucha j", 10)).extracting(SugerenciaResponse::getId)
+                .containsExactly(jengibre.getProductoId());
+        assertThat(productoService.obtenerSugerencias("roj", 10)).extracting(SugerenciaResponse::getId)
+                .containsExactly(frutos.getProductoId());
+        assertThat(productoService.obtenerSugerencias("kombuchas", 10)).isEmpty();
+        assertThat(productoService.obtenerSugerencias("kombucha", 1)).hasSize(1);
+
+        // La categoría se sugiere con su número de productos como popularidad
+        assertThat(productoService.obtenerSugerencias("indices", 10))
+                .extracting(SugerenciaResponse::getTipo, SugerenciaResponse::getId)
+                .containsExactly(tuple("categoria", categoria.getCategoriaId()));
+    }
+
+    @Test
+    public void testSugerenciasTrasEliminarYRenombrar() {
+        Producto jengibre = crearProducto("Kombucha Jengibre", "Test");
+        Producto frutos = crearProducto("Kombucha Frutos Rojos", "Test");
+        catalogoService.recargar();
+
+        productoService.eliminarProducto(frutos.getProductoId(), vendedor.getEmail());
+        catalogoService.aplicarCambiosPendientes();
+
+        assertThat(productoService.obtenerSugerencias("komb", 10)).extracting(SugerenciaResponse::getId)
+                .containsExactly(jengibre.getProductoId());
+        assertThat(productoService.obtenerSugerencias("roj", 10)).isEmpty();
+
+        productoService.actualizarProducto(jengibre.getProductoId(), renombrar(jengibre, "Kvass de Centeno"),
+                vendedor.getEmail());
+        catalogoService.aplicarCambiosPendientes();
+
+        assertThat(productoService.obtenerSugerencias("komb", 10)).isEmpty();
+        assertThat(productoService.obtenerSugerencias("kvass", 10)).extracting(SugerenciaResponse::getTexto)
+                .containsExactly("Kvass de Centeno");
+        assertThat(productoService.obtenerSugerencias("cent", 10)).extracting(SugerenciaResponse::getId)
+                .containsExactly(jengibre.getProductoId());
+        // La categoría sigue con un solo producto activo
+        assertThat(productoService.obtenerSugerencias("indices", 10)).hasSize(1);
+    }
+
+    @Test
+    public void testSugerenciasTopKConEmpates() {
+        SugerenciasProductos sugerencias = new SugerenciasProductos(3);
+        sugerencias.reconstruir(List.of(
+                respuesta(1, "Te Verde", 0),
+                respuesta(2, "Te Rojo", 0),
+                respuesta(3, "Te Negro", 0),
+                respuesta(4, "Te Blanco", 0),
+                respuesta(5, "Te Matcha", 4),
+                respuesta(6, "Te Verde", 0)));
+
+        // El más popular primero y los empates por orden alfabético; los homónimos se muestran una vez
+        assertThat(sugerencias.sugerir("te", 10)).extracting(SugerenciaResponse::getTexto)
+                .containsExactly("Te Matcha", "Te Blanco", "Te Negro");
+        assertThat(sugerencias.sugerir("te v", 10)).extracting(SugerenciaResponse::getId).containsExactly(1);
+
+        // Al salir uno del top-K entra el siguiente empatado
+        sugerencias.actualizar(Set.of(4), List.of());
+        assertThat(sugerencias.sugerir("te", 10)).extracting(SugerenciaResponse::getTexto)
+                .containsExactly("Te Matcha", "Te Negro", "Te Rojo");
+
+        // Subir la popularidad de uno lo adelanta
+        sugerencias.actualizar(Set.of(2), List.of(respuesta(2, "Te Rojo", 9)));
+        assertThat(sugerencias.sugerir("te", 10)).extracting(SugerenciaResponse::getTexto)
+                .containsExactly("Te Rojo", "Te Matcha", "Te Negro");
+    }
+
+    @Test
+    public void testFacetasConteosYFiltrosCombinados() {
+        Producto organicoVegano = crearProducto("Faceta A", true, true, "4.00", 40);
+        Producto organico = crearProducto("Faceta B", true, false, "8.00", 30);
+        Producto vegano = crearProducto("Faceta C", false, true, "15.00", 20);
+        Producto convencional = crearProducto("Faceta D", false, false, "60.00", 10);
+        catalogoService.recargar();
+        List<Integer> enCategoria = List.of(categoria.getCategoriaId());
+
+        FacetasResponse organicos = productoService.filtrarProductos(true, null, enCategoria, null, null, 0, 10);
+        assertThat(organicos.getTotal()).isEqualTo(2);
+        assertThat(organicos.getProductos()).extracting(ProductoResponse::getProductoId)
+                .containsExactly(organico.getProductoId(), organicoVegano.getProductoId());
+        // Cada faceta se cuenta con todos los filtros menos el suyo
+        assertThat(organicos.getFacetas().get("esOrganico")).containsEntry("true", 2L).containsEntry("false", 2L);
+        assertThat(organicos.getFacetas().get("esVegano")).containsEntry("true", 1L).containsEntry("false", 1L);
+        assertThat(organicos.getFacetas().get("precio")).containsExactly(
+                entry("0-5", 1L), entry("5-10", 1L),
+                entry("10-20", 0L), entry("20-50", 0L),
+                entry("50+", 0L));
+        assertThat(organicos.getFacetas().get("categoria"))
+                .containsEntry(String.valueOf(categoria.getCategoriaId()), 2L);
+
+        assertThat(productoService.filtrarProductos(true, true, enCategoria, null, new BigDecimal("5"), 0, 10)
+                .getProductos()).extracting(ProductoResponse::getProductoId)
+                .containsExactly(organicoVegano.getProductoId());
+        assertThat(productoService.filtrarProductos(null, null, enCategoria, new BigDecimal("5"),
+                new BigDecimal("20"), 0, 10).getProductos()).extracting(ProductoResponse::getProductoId)
+                .containsExactly(vegano.getProductoId(), organico.getProductoId());
+        assertThat(productoService.filtrarProductos(null, false, enCategoria, new BigDecimal("50"), null, 0, 10)
+                .getProductos()).extracting(ProductoResponse::getProductoId)
+                .containsExactly(convencional.getProductoId());
+
+        // Paginación sobre el mismo orden
+        FacetasResponse segunda = productoService.filtrarProductos(null, null, enCategoria, null, null, 1, 3);
+        assertThat(segunda.getTotal()).isEqualTo(4);
+        assertThat(segunda.getProductos()).extracting(ProductoResponse::getProductoId)
+                .containsExactly(organicoVegano.getProductoId());
+        assertThat(productoService.filtrarProductos(null, null, enCategoria, null, null, 2, 3).getProductos())
+                .isEmpty();
+    }
+
+    @Test
+    public void testFacetasMantienenOrdenDelCatalogoAlReutilizarOrdinales() {
+        Producto antiguo = crearProducto("Orden A", false, false, "3.00", 30);
+        Producto intermedio = crearProducto("Orden B", false, false, "3.00", 20);
+        Producto reciente = crearProducto("Orden C", false, false, "3.00", 10);
+        catalogoService.recargar();
+
+        // El ordinal que libera el intermedio lo reutiliza un producto más reciente que todos
+        productoService.eliminarProducto(intermedio.getProductoId(), vendedor.getEmail());
+        catalogoService.aplicarCambiosPendientes();
+        Producto nuevo = crearProducto("Orden D", false, false, "3.00", 0);
+        eventPublisher.publishEvent(new ProductoCambiadoEvent(nuevo.getProductoId()));
+        catalogoService.aplicarCambiosPendientes();
+
+        assertThat(productoService.filtrarProductos(null, null, List.of(categoria.getCategoriaId()), null, null, 0, 10)
+                .getProductos()).extracting(ProductoResponse::getProductoId)
+                .containsExactly(nuevo.getProductoId(), reciente.getProductoId(), antiguo.getProductoId());
+    }
+
+    @Test
+    public void testProductosDelCatalogoSonDeSoloLectura() {
+        Producto producto = crearProducto("Solo Lectura", "Producto compartido");
+        catalogoService.recargar();
+
+        // Cada lectura devuelve copias: modificarlas no cambia lo que ven las siguientes peticiones
+        productoService.obtenerProductoPorId(producto.getProductoId()).setPrecio(BigDecimal.ONE);
+        productoService.buscarProductos("lectura", 10).get(0).setStock(0);
+        productoService.filtrarProductos(null, null, List.of(categoria.getCategoriaId()),
+                null, null, 0, 10).getProductos().get(0).setNombreProducto("Otro");
+        productoService.obtenerTodosLosProductos().stream()
+                .filter(p -> p.getProductoId().equals(producto.getProductoId()))
+                .forEach(p -> p.setDescripcion("Otra"));
+        productoService.obtenerProductosPorCategoria(categoria.getCategoriaId()).get(0).setVersion(99L);
+
+        // Una sugerencia devuelta es una copia: modificarla no cambia la siguiente consulta
+        productoService.obtenerSugerencias("solo", 10).get(0).setTexto("Otro");
+        assertThat(productoService.obtenerSugerencias("solo", 10)).extracting(SugerenciaResponse::getTexto)
+                .containsExactly("Solo Lectura");
+
+        ProductoResponse enCatalogo = productoService.obtenerProductoPorId(producto.getProductoId());
+        assertThat(enCatalogo.getPrecio()).isEqualByComparingTo("5.00");
+        assertThat(enCatalogo.getStock()).isEqualTo(producto.getStock());
+        assertThat(enCatalogo.getNombreProducto()).isEqualTo("Solo Lectura");
+        assertThat(enCatalogo.getDescripcion()).isEqualTo("Producto compartido");
+        assertThat(enCatalogo.getVersion()).isEqualTo(producto.getVersion());
+        assertThat(productoService.buscarProductos("lectura", 10)).extracting(ProductoResponse::getStock)
+                .containsExactly(producto.getStock());
+    }
+
+    @Test
+    public void testResenaActualizaCalificacionEnCatalogo() {
+        Producto producto = crearProducto("Con Resena", "Test");
+        catalogoService.recargar();
+        pedido = new Pedido();
+        pedido.setUsuario(vendedor);
+        pedido.setTotal(new BigDecimal("5.00"));
+        pedido.setDireccionEnvio("Calle Resena 1");
+        pedido = pedidoRepository.save(pedido);
+
+        ResenaRequest request = new ResenaRequest();
+        request.setProductoId(producto.getProductoId());
+        request.setPedidoId(pedido.getPedidoId());
+        request.setCalificacion(4);
+        request.setComentario("Bueno");
+        resenaService.crearResena(request, vendedor.getEmail());
+        catalogoService.aplicarCambiosPendientes();
+
+        ProductoResponse enCatalogo = productoService.obtenerProductoPorId(producto.getProductoId());
+        assertThat(enCatalogo.getTotalCalificaciones()).isEqualTo(1);
+        assertThat(enCatalogo.getCalificacionPromedio()).isEqualByComparingTo("4.00");
+    }
+
+    private Producto crearProducto(String nombre, boolean organico, boolean vegano, String precio, int minutosAtras) {
+        Producto producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto(nombre);
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal(precio));
+        producto.setStock(10);
+        producto.setEsOrganico(organico);
+        producto.setEsVegano(vegano);
+        producto.setFechaCreacion(LocalDateTime.now().minusMinutes(minutosAtras));
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        producto = productoRepository.save(producto);
+        productos.add(producto);
+        return producto;
+    }
+
+    @Test
+    public void testCacheJsonDesalojaPorTamano() throws Exception {
+        ProductoResponse a = respuesta(1, "Cafe A", 0);
+        ProductoResponse b = respuesta(2, "Cafe B", 0);
+        ProductoResponse c = respuesta(3, "Cafe C", 0);
+        int tamano = objectMapper.writeValueAsBytes(a).length;
+
+        // Caben dos entradas; la tercera desaloja a la menos usada
+        ProductoJsonCache cache = cacheJson(2L * tamano + tamano / 2);
+        cache.obtener(a);
+        cache.obtener(b);
+        cache.obtener(a);
+        cache.obtener(c);
+
+        assertThat(cache.metricas()).contains(entry("entradas", 2), entry("bytes", 2L * tamano),
+                entry("desalojos", 1L), entry("aciertos", 1L), entry("fallos", 3L));
+
+        cache.obtener(a);
+        cache.obtener(c);
+        assertThat(cache.metricas()).contains(entry("aciertos", 3L), entry("fallos", 3L));
+        cache.obtener(b);
+        assertThat(cache.metricas()).contains(entry("fallos", 4L), entry("desalojos", 2L));
+
+        // Una entrada mayor que la caché completa se sirve pero no se guarda
+        ProductoJsonCache pequena = cacheJson(tamano - 1);
+        assertThat(pequena.obtener(a)).isEqualTo(objectMapper.writeValueAsBytes(a));
+        assertThat(pequena.metricas()).contains(entry("entradas", 0), entry("bytes", 0L));
+    }
+
+    @Test
+    public void testCacheJsonInvalidaAlCambiarVersion() throws Exception {
+        ProductoJsonCache cache = cacheJson(1024 * 1024);
+        ProductoResponse original = respuesta(7, "Cafe Molido", 0);
+        original.setVersion(1L);
+        cache.obtener(original);
+        assertThat(cache.obtener(original)).isEqualTo(objectMapper.writeValueAsBytes(original));
+        assertThat(cache.metricas()).contains(entry("aciertos", 1L), entry("fallos", 1L));
+
+        // Otra versión del mismo producto es un fallo y reemplaza la entrada
+        ProductoResponse renombrado = respuesta(7, "Cafe en Grano", 0);
+        renombrado.setVersion(2L);
+        byte[] json = cache.obtener(renombrado);
+        assertThat(new String(json, StandardCharsets.UTF_8)).contains("Cafe en Grano");
+        assertThat(cache.metricas()).contains(entry("fallos", 2L), entry("entradas", 1),
+                entry("bytes", (long) json.length));
+
+        // Un cambio del catálogo libera la entrada aunque nadie vuelva a pedirla
+        cache.actualizar(Set.of(7), List.of());
+        assertThat(cache.metricas()).contains(entry("entradas", 0), entry("bytes", 0L));
+    }
+
+    private ProductoJsonCache cacheJson(long maximoBytes) {
+        ProductoJsonCache cache = new ProductoJsonCache(maximoBytes);
+        beanFactory.autowireBean(cache);
+        return cache;
+    }
+
+    private ProductoResponse respuesta(Integer id, String nombre, int calificaciones) {
+        ProductoResponse producto = new ProductoResponse();
+        producto.setProductoId(id);
+        producto.setNombreProducto(nombre);
+        producto.setTotalCalificaciones(calificaciones);
+        producto.setCategoriaId(99);
+        producto.setNombreCategoria("Infusiones");
+        return producto;
+    }
+
+    private ProductoRequest renombrar(Producto producto, String nombre) {
+        ProductoRequest request = new ProductoRequest();
+        request.setNombreProducto(nombre);
+        request.setDescripcion(producto.getDescripcion());
+        request.setPrecio(producto.getPrecio());
+        request.setStock(producto.getStock());
+        request.setCategoriaId(categoria.getCategoriaId());
+        request.setEsOrganico(false);
+        request.setEsVegano(false);
+        return request;
+    }
+
+    private Producto crearProducto(String nombre, String descripcion) {
+        Producto producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto(nombre);
+        producto.setDescripcion(descripcion);
+        producto.setPrecio(new BigDecimal("5.00"));
+        producto.setStock(10);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        producto = productoRepository.save(producto);
+        productos.add(producto);
+        return producto;
+    }
+}
@@ -0,0 +1,161 @@
+package eco.market.integration;
+
+import eco.market.entity.*;
+import eco.market.repository.*;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class DetallePedidoInsercionIntegrationTest {
+
+    private static final int LINEAS = 2000;
+
+    @Autowired
+    private DetallePedidoRepository detallePedidoRepository;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private Usuario usuario;
+    private Categoria categoria;
+    private Producto producto;
+    private Pedido pedido;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        usuario = new Usuario();
+        usuario.setNombre("Lote");
+        usuario.setApellido("Detalles");
+        usuario.setEmail("lote-detalles@test.com");
+        usuario.setPasswordHash("hashed");
+        usuario.setRol(rolVendedor);
+        usuario.setEstaActivo(true);
+        usuario.setEsVerificado(true);
+        usuario = usuarioRepository.save(usuario);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Lote Detalles");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+
+        producto = new Producto();
+        producto.setVendedor(usuario);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto("Producto Lote");
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal("2.50"));
+        producto.setStock(100);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        producto = productoRepository.save(producto);
+
+        pedido = new Pedido();
+        pedido.setUsuario(usuario);
+        pedido.setDireccionEnvio("Calle Lote 1");
+        pedido.setTotal(new BigDecimal("2.50"));
+        pedido = pedidoRepository.save(pedido);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        detallePedidoRepository.deleteAllInBatch();
+        pedidoRepository.deleteAllInBatch(List.of(pedido));
+        productoRepository.deleteAllInBatch(List.of(producto));
+        usuarioRepository.delete(usuario);
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testInsercionDeDetallesEnLoteBenchmark() {
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Calentamiento
+        insertarDetalles(1, 200);
+        insertarDetalles(null, 200);
+
+        long sentenciasAntes = estadisticas.getPrepareStatementCount();
+        long sinLote = insertarDetalles(1, LINEAS);
+        long sentenciasSinLote = estadisticas.getPrepareStatementCount() - sentenciasAntes;
+
+        sentenciasAntes = estadisticas.getPrepareStatementCount();
+        long conLote = insertarDetalles(null, LINEAS);
+        long sentenciasConLote = estadisticas.getPrepareStatementCount() - sentenciasAntes;
+
+        System.out.println("Detalles de pedido: " + LINEAS + " filas sin lotes en " + sinLote / 1_000_000 + " ms ("
+                + sentenciasSinLote + " sentencias), con lotes en " + conLote / 1_000_000 + " ms ("
+                + sentenciasConLote + " sentencias)");
+
+        // Con IDENTITY o sin lotes hay una sentencia por fila; con la secuencia en pool,
+        // un INSERT por lote de 50 más una consulta a la secuencia cada 50 ids
+        assertThat(sentenciasSinLote).isGreaterThanOrEqualTo(LINEAS);
+        assertThat(sentenciasConLote).isLessThanOrEqualTo(2L * LINEAS / 50 + 2);
+        assertThat(detallePedidoRepository.count()).isEqualTo(2L * LINEAS + 400);
+    }
+
+    // Devuelve el tiempo en nanosegundos; tamanoLote null usa hibernate.jdbc.batch_size
+    private long insertarDetalles(Integer tamanoLote, int cantidad) {
+        return transactionTemplate.execute(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(tamanoLote);
+            List<DetallePedido> detalles = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                DetallePedido detalle = new DetallePedido();
+                detalle.setPedido(pedido);
+                detalle.setProducto(producto);
+                detalle.setCantidad(1);
+                detalle.setPrecioUnitario(producto.getPrecio());
+                detalle.setSubtotal(producto.getPrecio());
+                detalles.add(detalle);
+            }
+            long inicio = System.nanoTime();
+            detallePedidoRepository.saveAll(detalles);
+            entityManager.flush();
+            return System.nanoTime() - inicio;
+        });
+    }
+}
@@ -0,0 +1,172 @@
+package eco.market.integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.ExportacionProductosService;
+import eco.market.service.FormatoCatalogo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class ExportacionProductosIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ExportacionProductosService exportacionProductosService;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Usuario vendedor;
+    private Categoria categoria;
+    private Producto visible;
+    private Producto inactivo;
+    private Producto pendiente;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        vendedor = new Usuario();
+        vendedor.setNombre("Exporta");
+        vendedor.setApellido("Vendedor");
+        vendedor.setEmail("exportacion@test.com");
+        vendedor.setPasswordHash("hashed");
+        vendedor.setRol(rolVendedor);
+        vendedor.setEstaActivo(true);
+        vendedor.setEsVerificado(true);
+        vendedor = usuarioRepository.save(vendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Exportacion Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+
+        visible = crearProducto("Miel \"Cruda\", 500g", "Linea uno\nLinea dos", true, true);
+        inactivo = crearProducto("Exportacion Inactivo", "Test", false, true);
+        pendiente = crearProducto("Exportacion Pendiente", "Test", true, false);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productoRepository.deleteAllInBatch(productoRepository.findByVendedor(vendedor));
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testExportacionNdjsonSoloIncluyeCatalogoPublico() throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        long total = exportacionProductosService.exportar(FormatoCatalogo.NDJSON, salida);
+
+        List<JsonNode> filas = new ArrayList<>();
+        for (String linea : salida.toString(StandardCharsets.UTF_8).split("\n")) {
+            filas.add(objectMapper.readTree(linea));
+        }
+        assertThat(filas).hasSize((int) total);
+
+        List<Integer> ids = filas.stream().map(fila -> fila.get("productoId").asInt()).toList();
+        assertThat(ids).contains(visible.getProductoId())
+                .doesNotContain(inactivo.getProductoId(), pendiente.getProductoId());
+
+        JsonNode fila = filas.get(ids.indexOf(visible.getProductoId()));
+        assertThat(fila.get("nombreProducto").asText()).isEqualTo("Miel \"Cruda\", 500g");
+        assertThat(fila.get("nombreCategoria").asText()).isEqualTo("Exportacion Test");
+        assertThat(fila.get("nombreVendedor").asText()).isEqualTo("Exporta Vendedor");
+        assertThat(fila.get("precio").decimalValue()).isEqualByComparingTo("4.50");
+    }
+
+    @Test
+    public void testExportacionCsvEscapaCampos() throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        exportacionProductosService.exportar(FormatoCatalogo.CSV, salida);
+        String csv = salida.toString(StandardCharsets.UTF_8);
+
+        assertThat(csv).startsWith("productoId,nombreProducto,descripcion,precio,");
+        assertThat(csv).contains(visible.getProductoId() + ",\"Miel \"\"Cruda\"\", 500g\",\"Linea uno\nLinea dos\",4.50,");
+        assertThat(csv).doesNotContain("Exportacion Inactivo", "Exportacion Pendiente");
+    }
+
+    @Test
+    public void testEndpointExportaCsvComprimido() throws Exception {
+        ResponseEntity<byte[]> respuesta = restTemplate.getForEntity(
+                "http://localhost:" + port + "/api/productos/export?formato=csv&gzip=true", byte[].class);
+
+        assertThat(respuesta.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(respuesta.getHeaders().getContentType().toString()).startsWith("text/csv");
+        assertThat(respuesta.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(respuesta.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION)).contains("catalogo.csv");
+
+        String csv;
+        try (GZIPInputStream entrada = new GZIPInputStream(new ByteArrayInputStream(respuesta.getBody()))) {
+            csv = new String(entrada.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertThat(csv).startsWith("productoId,").contains("\"Miel \"\"Cruda\"\", 500g\"");
+    }
+
+    @Test
+    public void testEndpointRechazaFormatoDesconocido() {
+        ResponseEntity<String> respuesta = restTemplate.getForEntity(
+                "http://localhost:" + port + "/api/productos/export?formato=xml", String.class);
+
+        assertThat(respuesta.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(respuesta.getBody()).startsWith("Error: ");
+    }
+
+    private Producto crearProducto(String nombre, String descripcion, boolean activo, boolean verificado) {
+        Producto producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto(nombre);
+        producto.setDescripcion(descripcion);
+        producto.setPrecio(new BigDecimal("4.50"));
+        producto.setStock(10);
+        producto.setEstaActivo(activo);
+        producto.setEstaVerificado(verificado);
+        return productoRepository.save(producto);
+    }
+}
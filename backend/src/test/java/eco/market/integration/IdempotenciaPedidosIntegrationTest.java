@@ -0,0 +1,219 @@
+package eco.market.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eco.market.dto.PedidoRequest;
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.IdempotenciaPedidosService;
+import eco.market.service.PedidoService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Claves registradas "por otro nodo" directamente en Claves_Idempotencia: sin entrada en el mapa
+// del nodo, la solicitud tiene que resolverse con la tabla
+@SpringBootTest(properties = "app.idempotencia.espera-max-ms=500")
+@ActiveProfiles("test")
+public class IdempotenciaPedidosIntegrationTest {
+
+    @Autowired
+    private IdempotenciaPedidosService idempotenciaPedidosService;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private ClaveIdempotenciaRepository claveIdempotenciaRepository;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private PedidoVendedorRepository pedidoVendedorRepository;
+
+    @Autowired
+    private NotificacionRepository notificacionRepository;
+
+    @Autowired
+    private EventoSalidaRepository eventoSalidaRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Usuario comprador;
+    private Usuario vendedor;
+    private Categoria categoria;
+    private Producto producto;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolComprador = rolRepository.findByNombreRol("COMPRADOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("COMPRADOR");
+                    return rolRepository.save(rol);
+                });
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        comprador = nuevoUsuario("idempotencia-comprador@test.com", rolComprador);
+        vendedor = nuevoUsuario("idempotencia-vendedor@test.com", rolVendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Idempotencia Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+
+        producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto("Producto Idempotente");
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal("2.00"));
+        producto.setStock(50);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        producto = productoRepository.save(producto);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (int i = 0; i < 50 && eventoSalidaRepository.countByEstadoAndTipo(
+                EventoSalida.EstadoEvento.PENDIENTE, EventoSalida.TipoEvento.NOTIFICACION) > 0; i++) {
+            Thread.sleep(100);
+        }
+        claveIdempotenciaRepository.deleteAllInBatch();
+        pedidoRepository.deleteAll(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId()));
+        pedidoVendedorRepository.deleteAllInBatch();
+        notificacionRepository.deleteAll();
+        productoRepository.deleteAllInBatch(List.of(producto));
+        usuarioRepository.delete(comprador);
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testClaveCompletadaEnOtroNodoDevuelveSuPedido() throws Exception {
+        PedidoRequest request = pedido(2);
+        Pedido deOtroNodo = pedidoService.crearPedido(request, comprador.getEmail());
+        String clave = clave("otro-nodo-1");
+        LocalDateTime ahora = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        claveIdempotenciaRepository.registrar(clave, huella(request), ahora, ahora.plusHours(1));
+        ClaveIdempotencia fila = claveIdempotenciaRepository.findById(clave).orElseThrow();
+        fila.setPedidoId(deOtroNodo.getPedidoId());
+        claveIdempotenciaRepository.save(fila);
+
+        Pedido pedido = idempotenciaPedidosService.crearPedido(request, comprador.getEmail(), "otro-nodo-1");
+
+        assertThat(pedido.getPedidoId()).isEqualTo(deOtroNodo.getPedidoId());
+        assertThat(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId())).hasSize(1);
+    }
+
+    @Test
+    public void testReservaEnCursoNoSeRoba() throws Exception {
+        PedidoRequest request = pedido(1);
+        String clave = clave("en-curso-1");
+        LocalDateTime ahora = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        claveIdempotenciaRepository.registrar(clave, huella(request), ahora, ahora.plusHours(1));
+
+        // Dentro del timeout de la transacción el otro nodo aún puede confirmar: se espera y se desiste
+        assertThatThrownBy(() -> idempotenciaPedidosService.crearPedido(request, comprador.getEmail(), "en-curso-1"))
+                .hasMessageContaining("todavía se está procesando");
+        assertThat(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId())).isEmpty();
+        assertThat(claveIdempotenciaRepository.findEstadoByClave(clave).orElseThrow().getFechaCreacion())
+                .isEqualTo(ahora);
+    }
+
+    @Test
+    public void testReservaAbandonadaSeReclamaYLaAntiguaYaNoPuedeCompletar() throws Exception {
+        PedidoRequest request = pedido(3);
+        String clave = clave("abandonada-1");
+        LocalDateTime antigua = LocalDateTime.now().minusMinutes(10).truncatedTo(ChronoUnit.MILLIS);
+        claveIdempotenciaRepository.registrar(clave, huella(request), antigua, antigua.plusHours(1));
+
+        Pedido pedido = idempotenciaPedidosService.crearPedido(request, comprador.getEmail(), "abandonada-1");
+
+        ClaveIdempotencia fila = claveIdempotenciaRepository.findById(clave).orElseThrow();
+        assertThat(fila.getPedidoId()).isEqualTo(pedido.getPedidoId());
+        assertThat(fila.getFechaCreacion()).isAfter(antigua);
+        // Si la solicitud original despertara ahora, su completar no encuentra su reserva
+        // y su pedido se revierte en vez de crear un segundo
+        Integer completadas = transactionTemplate.execute(status ->
+                claveIdempotenciaRepository.completar(clave, antigua, pedido.getPedidoId()));
+        assertThat(completadas).isZero();
+        assertThat(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId())).hasSize(1);
+        assertThat(productoRepository.findById(producto.getProductoId()).orElseThrow().getStock()).isEqualTo(47);
+    }
+
+    private PedidoRequest pedido(int cantidad) {
+        PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
+        detalle.setProductoId(producto.getProductoId());
+        detalle.setCantidad(cantidad);
+        detalle.setPrecioUnitario(producto.getPrecio());
+
+        PedidoRequest request = new PedidoRequest();
+        request.setDireccionEnvio("Calle Idempotente 1");
+        request.setMetodoPago("Tarjeta");
+        request.setTotal(producto.getPrecio().multiply(new BigDecimal(cantidad)));
+        request.setDetalles(List.of(detalle));
+        return request;
+    }
+
+    private String clave(String idempotencyKey) throws Exception {
+        return sha256((comprador.getEmail() + "\n" + idempotencyKey).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String huella(PedidoRequest request) throws Exception {
+        return sha256(objectMapper.writeValueAsBytes(request));
+    }
+
+    private static String sha256(byte[] datos) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(datos));
+    }
+
+    private Usuario nuevoUsuario(String email, Rol rol) {
+        Usuario usuario = new Usuario();
+        usuario.setNombre("Idempotencia");
+        usuario.setApellido("Test");
+        usuario.setEmail(email);
+        usuario.setPasswordHash("hashed");
+        usuario.setRol(rol);
+        usuario.setEstaActivo(true);
+        usuario.setEsVerificado(true);
+        return usuarioRepository.save(usuario);
+    }
+}
@@ -0,0 +1,274 @@
+package eco.market.integration;
+
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.InventarioEnMemoria;
+import eco.market.service.ProductoCambiadoEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "app.inventario.memoria.habilitado=true",
+        "app.inventario.memoria.diario=target/inventario-test.journal",
+        "app.inventario.memoria.intervalo-volcado-ms=3600000"
+})
+@ActiveProfiles("test")
+public class InventarioEnMemoriaIntegrationTest {
+
+    private static final int STOCK_INICIAL = 500;
+    private static final Path DIARIO = Path.of("target/inventario-test.journal");
+
+    @Autowired
+    private InventarioEnMemoria inventarioEnMemoria;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Usuario vendedor;
+    private Categoria categoria;
+    private Producto producto;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        vendedor = new Usuario();
+        vendedor.setNombre("Inventario");
+        vendedor.setApellido("Vendedor");
+        vendedor.setEmail("inventario@test.com");
+        vendedor.setPasswordHash("hashed");
+        vendedor.setRol(rolVendedor);
+        vendedor.setEstaActivo(true);
+        vendedor.setEsVerificado(true);
+        vendedor = usuarioRepository.save(vendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Inventario Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+
+        producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto("Oferta Flash");
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal("5.00"));
+        producto.setStock(STOCK_INICIAL);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        producto = productoRepository.save(producto);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        inventarioEnMemoria.volcar();
+        productoRepository.deleteAllInBatch(productoRepository.findByVendedor(vendedor));
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testReservasConcurrentesSinSobreventaYVolcadoEnLote() throws Exception {
+        int hilos = 64;
+        int intentosPorHilo = 20;
+        AtomicInteger exitosas = new AtomicInteger();
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+
+        for (int h = 0; h < hilos; h++) {
+            executor.submit(() -> {
+                salida.await();
+                for (int i = 0; i < intentosPorHilo; i++) {
+                    if (inventarioEnMemoria.reservar(linea(producto.getProductoId(), 1)) == null) {
+                        exitosas.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        long inicio = System.nanoTime();
+        salida.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        long microsegundos = (System.nanoTime() - inicio) / 1_000;
+        System.out.println("Inventario en memoria: " + hilos * intentosPorHilo + " intentos en "
+                + microsegundos + " µs, " + exitosas.get() + " reservas");
+
+        assertThat(exitosas.get()).isEqualTo(STOCK_INICIAL);
+        assertThat(inventarioEnMemoria.disponible(producto.getProductoId())).isZero();
+        // La base de datos no ve nada hasta el volcado
+        assertThat(productoRepository.findById(producto.getProductoId()).orElseThrow().getStock())
+                .isEqualTo(STOCK_INICIAL);
+        assertThat(Files.size(DIARIO)).isPositive();
+
+        inventarioEnMemoria.volcar();
+
+        assertThat(productoRepository.findById(producto.getProductoId()).orElseThrow().getStock()).isZero();
+        assertThat(Files.size(DIARIO)).isZero();
+    }
+
+    @Test
+    public void testReservaDeTransaccionRevertidaSeCompensa() throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                assertThat(inventarioEnMemoria.reservar(linea(producto.getProductoId(), 40))).isNull();
+                throw new RuntimeException("Fallo simulado al guardar el pedido");
+            });
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage()).isEqualTo("Fallo simulado al guardar el pedido");
+        }
+        assertThat(inventarioEnMemoria.disponible(producto.getProductoId())).isEqualTo(STOCK_INICIAL);
+        // La reserva llegó al diario antes del commit y la reversión queda anotada detrás
+        assertThat(Files.readString(DIARIO)).contains(" " + producto.getProductoId() + ":40;").contains("A ");
+
+        // Un cambio de stock hecho por el vendedor se relee en el siguiente volcado
+        assertThat(inventarioEnMemoria.reservar(linea(producto.getProductoId(), 10))).isNull();
+        producto = productoRepository.findById(producto.getProductoId()).orElseThrow();
+        producto.setStock(1000);
+        productoRepository.save(producto);
+        inventarioEnMemoria.onProductoCambiado(new ProductoCambiadoEvent(producto.getProductoId()));
+        inventarioEnMemoria.volcar();
+
+        assertThat(productoRepository.findById(producto.getProductoId()).orElseThrow().getStock()).isEqualTo(990);
+        assertThat(inventarioEnMemoria.disponible(producto.getProductoId())).isEqualTo(990);
+    }
+
+    @Test
+    public void testArranqueReaplicaSoloLoQueFaltaDelDiario() throws IOException {
+        // Parada ordenada y después un diario como el que deja una caída
+        inventarioEnMemoria.detener();
+        long volcada = secuenciaVolcada();
+        Integer id = producto.getProductoId();
+        String diarioTrasCaida = "R " + (volcada + 1) + " " + id + ":7;\n"
+                + "R " + (volcada + 2) + " " + id + ":5;\n"
+                + "R " + (volcada + 3) + " " + id + ":4";
+        Files.writeString(DIARIO, diarioTrasCaida);
+        // La primera línea llegó a volcarse: su stock y su secuencia se confirmaron juntos
+        producto.setStock(STOCK_INICIAL - 7);
+        producto = productoRepository.save(producto);
+        jdbcTemplate.update("UPDATE diario_inventario SET secuencia_volcada = ? WHERE diario_id = 1", volcada + 1);
+
+        inventarioEnMemoria.iniciar();
+
+        // Solo se reaplica la segunda; la tercera quedó a medio escribir
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 12);
+        assertThat(inventarioEnMemoria.disponible(id)).isEqualTo(STOCK_INICIAL - 12);
+        assertThat(secuenciaVolcada()).isEqualTo(volcada + 2);
+
+        // Caer otra vez antes de vaciar el diario no descuenta dos veces
+        inventarioEnMemoria.detener();
+        Files.writeString(DIARIO, diarioTrasCaida);
+        inventarioEnMemoria.iniciar();
+
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 12);
+        assertThat(inventarioEnMemoria.reservar(linea(id, 3))).isNull();
+        inventarioEnMemoria.volcar();
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 15);
+        assertThat(secuenciaVolcada()).isEqualTo(volcada + 3);
+    }
+
+    @Test
+    public void testVolcadoEsperaALaReservaAnteriorSinResolver() throws Exception {
+        Integer id = producto.getProductoId();
+        long volcada = secuenciaVolcada();
+        CountDownLatch reservada = new CountDownLatch(1);
+        CountDownLatch confirmar = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        var pedido = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+            assertThat(inventarioEnMemoria.reservar(linea(id, 6))).isNull();
+            reservada.countDown();
+            try {
+                confirmar.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertThat(reservada.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // Una reserva posterior ya confirmada no se vuelca por delante de la que sigue en curso
+        assertThat(inventarioEnMemoria.reservar(linea(id, 4))).isNull();
+        inventarioEnMemoria.volcar();
+        assertThat(stock()).isEqualTo(STOCK_INICIAL);
+        assertThat(secuenciaVolcada()).isEqualTo(volcada);
+        assertThat(Files.size(DIARIO)).isPositive();
+
+        confirmar.countDown();
+        pedido.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        inventarioEnMemoria.volcar();
+
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 10);
+        assertThat(secuenciaVolcada()).isEqualTo(volcada + 2);
+        assertThat(Files.size(DIARIO)).isZero();
+    }
+
+    @Test
+    public void testArranqueDescartaReservasRevertidas() throws IOException {
+        inventarioEnMemoria.detener();
+        long volcada = secuenciaVolcada();
+        Integer id = producto.getProductoId();
+        Files.writeString(DIARIO, "R " + (volcada + 1) + " " + id + ":7;\n"
+                + "R " + (volcada + 2) + " " + id + ":5;\n"
+                + "A " + (volcada + 1) + ";\n");
+
+        inventarioEnMemoria.iniciar();
+
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 5);
+        assertThat(secuenciaVolcada()).isEqualTo(volcada + 2);
+    }
+
+    private int stock() {
+        return productoRepository.findById(producto.getProductoId()).orElseThrow().getStock();
+    }
+
+    private long secuenciaVolcada() {
+        return jdbcTemplate.queryForObject("SELECT secuencia_volcada FROM diario_inventario WHERE diario_id = 1",
+                Long.class);
+    }
+
+    private SortedMap<Integer, Integer> linea(Integer productoId, int cantidad) {
+        SortedMap<Integer, Integer> cantidades = new TreeMap<>();
+        cantidades.put(productoId, cantidad);
+        return cantidades;
+    }
+}
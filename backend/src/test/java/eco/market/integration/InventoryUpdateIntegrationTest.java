@@ -1,7 +1,10 @@
 package eco.market.integration;
 
+import eco.market.dto.PedidoRequest;
 import eco.market.entity.*;
 import eco.market.repository.*;
+import eco.market.service.PedidoService;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,14 +14,22 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
-@SpringBootTest
+// The contention benchmark runs 200 concurrent buyers: each needs its own connection, and H2's
+// default lock wait is far below MySQL's innodb_lock_wait_timeout for 200 waiters on one row
+@SpringBootTest(properties = {
+        "spring.datasource.hikari.maximum-pool-size=210",
+        "spring.datasource.url=jdbc:h2:mem:testdb;LOCK_TIMEOUT=60000"
+})
 @ActiveProfiles("test")
 public class InventoryUpdateIntegrationTest {
 
@@ -34,7 +45,23 @@ public class InventoryUpdateIntegrationTest {
     @Autowired
     private CategoriaRepository categoriaRepository;
 
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private PedidoVendedorRepository pedidoVendedorRepository;
+
+    @Autowired
+    private NotificacionRepository notificacionRepository;
+
+    @Autowired
+    private EventoSalidaRepository eventoSalidaRepository;
+
     private Producto testProducto;
+    private Usuario comprador;
 
     @BeforeEach
     public void setUp() {
@@ -60,6 +87,23 @@ public class InventoryUpdateIntegrationTest {
         vendedor.setEsVerificado(true);
         vendedor = usuarioRepository.save(vendedor);
 
+        Rol rolComprador = rolRepository.findByNombreRol("COMPRADOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("COMPRADOR");
+                    return rolRepository.save(rol);
+                });
+
+        comprador = new Usuario();
+        comprador.setNombre("Test");
+        comprador.setApellido("Buyer");
+        comprador.setEmail("buyer@test.com");
+        comprador.setPasswordHash("hashed");
+        comprador.setRol(rolComprador);
+        comprador.setEstaActivo(true);
+        comprador.setEsVerificado(true);
+        comprador = usuarioRepository.save(comprador);
+
         Categoria categoria = categoriaRepository.findAll().stream().findFirst()
                 .orElseGet(() -> {
                     Categoria cat = new Categoria();
@@ -80,6 +124,18 @@ public class InventoryUpdateIntegrationTest {
         testProducto = productoRepository.save(testProducto);
     }
 
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        // Order notifications are inserted in the background
+        for (int i = 0; i < 100 && eventoSalidaRepository.countByEstadoAndTipo(
+                EventoSalida.EstadoEvento.PENDIENTE, EventoSalida.TipoEvento.NOTIFICACION) > 0; i++) {
+            Thread.sleep(100);
+        }
+        pedidoRepository.deleteAll(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId()));
+        pedidoVendedorRepository.deleteAllInBatch();
+        notificacionRepository.deleteAll();
+    }
+
     @Test
     public void testStockUpdatePersistence() {
         // Arrange
@@ -199,4 +255,117 @@ public class InventoryUpdateIntegrationTest {
         int expectedStock = initialStock - (5 + 10 + 3 + 7);
         assertThat(finalProduct.getStock()).isEqualTo(expectedStock);
     }
+
+    @Test
+    public void testContentionBenchmarkOrderPathVsOptimisticLocking() throws InterruptedException {
+        int numberOfThreads = 200;
+        int purchasesPerThread = 5;
+        int totalPurchases = numberOfThreads * purchasesPerThread;
+        Integer productoId = testProducto.getProductoId();
+
+        // Read-check-write with @Version: conflicting threads fail and would have to retry
+        resetStock(totalPurchases);
+        BenchmarkResult optimistic = runContention(numberOfThreads, purchasesPerThread, () -> {
+            Producto producto = productoRepository.findById(productoId).orElseThrow();
+            if (producto.getStock() < 1) {
+                return false;
+            }
+            producto.setStock(producto.getStock() - 1);
+            productoRepository.saveAndFlush(producto);
+            return true;
+        });
+        int optimisticStock = productoRepository.findById(productoId).orElseThrow().getStock();
+
+        // Real order path: the stock is taken with a conditional UPDATE inside the order transaction,
+        // so contention only serializes on the row lock
+        resetStock(totalPurchases);
+        BenchmarkResult conditional = runContention(numberOfThreads, purchasesPerThread, () -> {
+            pedidoService.crearPedido(pedido(1), comprador.getEmail());
+            return true;
+        });
+        int conditionalStock = productoRepository.findById(productoId).orElseThrow().getStock();
+
+        System.out.printf("Optimistic locking: %d/%d purchases in %d ms (%.0f purchases/s)%n",
+                optimistic.successes, totalPurchases, optimistic.millis, optimistic.throughput());
+        System.out.printf("Order path: %d/%d purchases in %d ms (%.0f purchases/s)%n",
+                conditional.successes, totalPurchases, conditional.millis, conditional.throughput());
+
+        // Same concurrency: read-check-write loses purchases to version conflicts, the order path loses none
+        assertThat(optimisticStock).isEqualTo(totalPurchases - optimistic.successes);
+        assertThat(optimistic.failures).isPositive();
+        assertThat(conditional.successes).isEqualTo(totalPurchases);
+        assertThat(conditional.failures).isZero();
+        assertThat(conditionalStock).isZero();
+        assertThat(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId())).hasSize(totalPurchases);
+
+        // Once stock is exhausted the order is refused instead of going negative
+        assertThatThrownBy(() -> pedidoService.crearPedido(pedido(1), comprador.getEmail()))
+                .hasMessageContaining("Stock insuficiente");
+        assertThat(productoRepository.findById(productoId).orElseThrow().getStock()).isZero();
+    }
+
+    private PedidoRequest pedido(int cantidad) {
+        PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
+        detalle.setProductoId(testProducto.getProductoId());
+        detalle.setCantidad(cantidad);
+        detalle.setPrecioUnitario(testProducto.getPrecio());
+
+        PedidoRequest request = new PedidoRequest();
+        request.setDireccionEnvio("Test Street 1");
+        request.setMetodoPago("Tarjeta");
+        request.setTotal(testProducto.getPrecio().multiply(new BigDecimal(cantidad)));
+        request.setDetalles(List.of(detalle));
+        return request;
+    }
+
+    private void resetStock(int stock) {
+        Producto producto = productoRepository.findById(testProducto.getProductoId()).orElseThrow();
+        producto.setStock(stock);
+        productoRepository.saveAndFlush(producto);
+    }
+
+    private BenchmarkResult runContention(int numberOfThreads, int purchasesPerThread, Callable<Boolean> purchase)
+            throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(numberOfThreads);
+        AtomicInteger successCount = new AtomicInteger(0);
+        AtomicInteger failureCount = new AtomicInteger(0);
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            executorService.submit(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < purchasesPerThread; j++) {
+                        try {
+                            if (purchase.call()) {
+                                successCount.incrementAndGet();
+                            } else {
+                                failureCount.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            failureCount.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long millis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+        executorService.shutdown();
+        return new BenchmarkResult(successCount.get(), failureCount.get(), millis);
+    }
+
+    private record BenchmarkResult(int successes, int failures, long millis) {
+        double throughput() {
+            return successes * 1000.0 / millis;
+        }
+    }
 }
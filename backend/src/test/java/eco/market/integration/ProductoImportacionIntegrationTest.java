@@ -0,0 +1,131 @@
+package eco.market.integration;
+
+import eco.market.dto.ImportacionResponse;
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.FormatoCatalogo;
+import eco.market.service.ImportacionProductosService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ProductoImportacionIntegrationTest {
+
+    private static final int TOTAL_FILAS = 20000;
+
+    @Autowired
+    private ImportacionProductosService importacionProductosService;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    private Usuario vendedor;
+    private Categoria categoria;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        vendedor = new Usuario();
+        vendedor.setNombre("Importacion");
+        vendedor.setApellido("Vendedor");
+        vendedor.setEmail("importacion@test.com");
+        vendedor.setPasswordHash("hashed");
+        vendedor.setRol(rolVendedor);
+        vendedor.setEstaActivo(true);
+        vendedor.setEsVerificado(true);
+        vendedor = usuarioRepository.save(vendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Importacion Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productoRepository.deleteAllInBatch(productoRepository.findByVendedor(vendedor));
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testImportacionCsvConReporteDeErrores() throws Exception {
+        StringBuilder csv = new StringBuilder("nombreProducto,descripcion,precio,stock,categoriaId,esOrganico\n");
+        for (int i = 1; i <= TOTAL_FILAS; i++) {
+            if (i == 10) {
+                csv.append("Producto 10,Sin precio,,5,").append(categoria.getCategoriaId()).append(",true\n");
+            } else if (i == 20) {
+                csv.append("Producto 20,Categoria inexistente,3.50,5,999999,false\n");
+            } else if (i == 30) {
+                csv.append("Producto 30,Precio mal escrito,abc,5,").append(categoria.getCategoriaId()).append(",false\n");
+            } else {
+                csv.append("Producto ").append(i).append(",\"Descripcion, con coma\",").append(i % 50 + 1)
+                        .append(".99,").append(i % 20 + 1).append(',').append(categoria.getCategoriaId())
+                        .append(',').append(i % 2 == 0).append('\n');
+            }
+        }
+
+        long inicio = System.nanoTime();
+        ImportacionResponse resultado = importacionProductosService.importar(FormatoCatalogo.CSV,
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), "importacion@test.com");
+        long milisegundos = (System.nanoTime() - inicio) / 1_000_000;
+        System.out.println("Importación CSV: " + resultado.getImportadas() + " productos en " + milisegundos + " ms");
+
+        assertThat(resultado.getProcesadas()).isEqualTo(TOTAL_FILAS);
+        assertThat(resultado.getImportadas()).isEqualTo(TOTAL_FILAS - 3);
+        assertThat(resultado.getRechazadas()).isEqualTo(3);
+        assertThat(resultado.getErrores()).extracting(ImportacionResponse.ErrorFila::getFila)
+                .containsExactly(10L, 20L, 30L);
+
+        List<Producto> importados = productoRepository.findByVendedor(vendedor);
+        assertThat(importados).hasSize(TOTAL_FILAS - 3);
+        assertThat(importados.get(0).getDescripcion()).isEqualTo("Descripcion, con coma");
+        assertThat(importados).allMatch(p -> !p.getEstaVerificado());
+    }
+
+    @Test
+    public void testImportacionNdjson() throws Exception {
+        String ndjson = "{\"nombreProducto\":\"Miel\",\"descripcion\":\"Miel cruda\",\"precio\":8.5,\"stock\":3,"
+                + "\"categoriaId\":" + categoria.getCategoriaId() + ",\"esVegano\":false}\n"
+                + "\n"
+                + "{no es json}\n"
+                + "{\"nombreProducto\":\"Tofu\",\"descripcion\":\"Tofu firme\",\"precio\":4,\"stock\":0,"
+                + "\"categoriaId\":" + categoria.getCategoriaId() + "}\n";
+
+        ImportacionResponse resultado = importacionProductosService.importar(FormatoCatalogo.NDJSON,
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), "importacion@test.com");
+
+        assertThat(resultado.getProcesadas()).isEqualTo(3);
+        assertThat(resultado.getImportadas()).isEqualTo(1);
+        assertThat(resultado.getErrores()).extracting(ImportacionResponse.ErrorFila::getFila)
+                .containsExactly(2L, 3L);
+        assertThat(productoRepository.findByVendedor(vendedor)).extracting(Producto::getNombreProducto)
+                .containsExactly("Miel");
+    }
+}
@@ -0,0 +1,216 @@
+package eco.market.integration;
+
+import eco.market.controller.AdminController;
+import eco.market.dto.ProductoPaginaResponse;
+import eco.market.dto.ProductoResponse;
+import eco.market.dto.VerificacionLoteRequest;
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.CatalogoService;
+import eco.market.service.ProductoService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ProductoListadoIntegrationTest {
+
+    private static final int TOTAL_PRODUCTOS = 1000;
+
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private CatalogoService catalogoService;
+
+    @Autowired
+    private AdminController adminController;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Usuario vendedor;
+    private Categoria categoria;
+    private List<Producto> productos;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        vendedor = new Usuario();
+        vendedor.setNombre("Listado");
+        vendedor.setApellido("Vendedor");
+        vendedor.setEmail("listado@test.com");
+        vendedor.setPasswordHash("hashed");
+        vendedor.setRol(rolVendedor);
+        vendedor.setEstaActivo(true);
+        vendedor.setEsVerificado(true);
+        vendedor = usuarioRepository.save(vendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Listado Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+
+        productos = new ArrayList<>();
+        for (int i = 0; i < TOTAL_PRODUCTOS; i++) {
+            Producto producto = new Producto();
+            producto.setVendedor(vendedor);
+            producto.setCategoria(categoria);
+            producto.setNombreProducto("Producto " + i);
+            producto.setDescripcion("Descripcion " + i);
+            producto.setPrecio(new BigDecimal("10.00"));
+            producto.setStock(10);
+            producto.setEstaActivo(true);
+            producto.setEstaVerificado(true);
+            productos.add(producto);
+        }
+        productos = productoRepository.saveAll(productos);
+        catalogoService.recargar();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productoRepository.deleteAllInBatch(productos);
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+        catalogoService.recargar();
+    }
+
+    @Test
+    public void testListadoPorCategoriaUsaUnaSolaConsulta() {
+        Statistics estadisticas = reiniciarEstadisticas();
+
+        List<ProductoResponse> listado = productoService.obtenerProductosPorCategoria(categoria.getCategoriaId());
+
+        assertThat(listado).hasSize(TOTAL_PRODUCTOS);
+        assertThat(listado.get(0).getNombreCategoria()).isEqualTo("Listado Test");
+        assertThat(listado.get(0).getNombreVendedor()).isEqualTo("Listado Vendedor");
+        assertThat(estadisticas.getPrepareStatementCount()).isLessThanOrEqualTo(1);
+        assertThat(estadisticas.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    public void testListadoCatalogoYVendedorConConsultasAcotadas() {
+        Statistics estadisticas = reiniciarEstadisticas();
+
+        List<ProductoResponse> catalogo = productoService.obtenerTodosLosProductos();
+        List<ProductoResponse> delVendedor = productoService.obtenerProductosPorVendedor("listado@test.com");
+
+        assertThat(catalogo.size()).isGreaterThanOrEqualTo(TOTAL_PRODUCTOS);
+        assertThat(delVendedor).hasSize(TOTAL_PRODUCTOS);
+        assertThat(estadisticas.getPrepareStatementCount()).isLessThanOrEqualTo(3);
+        assertThat(estadisticas.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    public void testListadoPendientesAdminConConsultaAcotada() {
+        productos.forEach(p -> p.setEstaVerificado(false));
+        productos = productoRepository.saveAll(productos);
+        Producto ultimo = new Producto();
+        ultimo.setVendedor(vendedor);
+        ultimo.setCategoria(categoria);
+        ultimo.setNombreProducto("Producto Ultimo");
+        ultimo.setDescripcion("Descripcion");
+        ultimo.setPrecio(new BigDecimal("10.00"));
+        ultimo.setStock(10);
+        ultimo.setEstaActivo(true);
+        ultimo.setEstaVerificado(false);
+        ultimo.setFechaCreacion(LocalDateTime.now().plusMinutes(1));
+        productos.add(productoRepository.save(ultimo));
+        Statistics estadisticas = reiniciarEstadisticas();
+
+        ResponseEntity<List<ProductoResponse>> respuesta = adminController.obtenerProductosPendientes();
+
+        // Como mucho un lote de verificación; el resto sigue en la cola paginada
+        List<ProductoResponse> pendientes = respuesta.getBody();
+        assertThat(pendientes).hasSize(1000).extracting(ProductoResponse::getProductoId)
+                .doesNotContain(ultimo.getProductoId());
+        assertThat(estadisticas.getPrepareStatementCount()).isLessThanOrEqualTo(1);
+        assertThat(estadisticas.getEntityLoadCount()).isZero();
+
+        String cursor = respuesta.getHeaders().getFirst("X-Siguiente-Cursor");
+        assertThat(cursor).isNotNull();
+        assertThat(productoService.obtenerPaginaPendientes(cursor, 100).getProductos())
+                .extracting(ProductoResponse::getProductoId).contains(ultimo.getProductoId());
+    }
+
+    @Test
+    public void testColaModeracionPaginadaYVerificacionEnLote() {
+        productos.forEach(p -> p.setEstaVerificado(false));
+        productos = productoRepository.saveAll(productos);
+
+        List<Integer> vistos = new ArrayList<>();
+        String cursor = null;
+        do {
+            Statistics estadisticas = reiniciarEstadisticas();
+            ProductoPaginaResponse pagina = productoService.obtenerPaginaPendientes(cursor, 100);
+            assertThat(estadisticas.getPrepareStatementCount()).isLessThanOrEqualTo(1);
+            assertThat(estadisticas.getEntityLoadCount()).isZero();
+            pagina.getProductos().forEach(p -> vistos.add(p.getProductoId()));
+            cursor = pagina.getSiguienteCursor();
+        } while (cursor != null);
+        assertThat(vistos).containsAll(productos.stream().map(Producto::getProductoId).toList());
+        assertThat(vistos).doesNotHaveDuplicates();
+
+        List<Integer> aprobados = productos.subList(0, 500).stream().map(Producto::getProductoId).toList();
+        List<Integer> rechazados = productos.subList(500, TOTAL_PRODUCTOS).stream().map(Producto::getProductoId).toList();
+        Statistics estadisticas = reiniciarEstadisticas();
+        assertThat(productoService.verificarProductos(aprobados, true)).isEqualTo(500);
+        assertThat(productoService.verificarProductos(rechazados, false)).isEqualTo(500);
+        // Un UPDATE por decisión más la relectura de los cambios que hace el catálogo tras el commit
+        assertThat(estadisticas.getPrepareStatementCount()).isLessThanOrEqualTo(4);
+
+        assertThat(productoRepository.findAllById(aprobados)).allMatch(p -> p.getEstaVerificado() && p.getEstaActivo());
+        assertThat(productoRepository.findAllById(rechazados)).allMatch(p -> !p.getEstaVerificado() && !p.getEstaActivo());
+        // Una segunda decisión sobre productos ya moderados no cambia nada
+        assertThat(productoService.verificarProductos(aprobados, false)).isZero();
+
+        // Una lista por encima del máximo se rechaza sin tocar la base de datos
+        VerificacionLoteRequest excesiva = new VerificacionLoteRequest();
+        excesiva.setProductoIds(IntStream.rangeClosed(1, 1001).boxed().toList());
+        excesiva.setAprobado(true);
+        ResponseEntity<?> respuesta = adminController.verificarProductos(excesiva);
+        assertThat(respuesta.getStatusCode().value()).isEqualTo(400);
+        assertThat(respuesta.getBody()).isEqualTo("Error: No se pueden verificar más de 1000 productos a la vez");
+    }
+
+    private Statistics reiniciarEstadisticas() {
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        return estadisticas;
+    }
+}
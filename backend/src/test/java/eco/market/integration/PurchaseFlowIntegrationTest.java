@@ -1,10 +1,22 @@
 package eco.market.integration;
 
+import eco.market.dto.PedidoDetalleResponse;
+import eco.market.dto.PedidoPaginaResponse;
 import eco.market.dto.PedidoRequest;
+import eco.market.dto.PedidoVendedorResponse;
 import eco.market.entity.*;
+import eco.market.model.CartItem;
+import eco.market.model.User;
 import eco.market.repository.*;
+import eco.market.service.AlmacenCarritos;
+import eco.market.service.CartService;
+import eco.market.service.PedidoService;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
@@ -12,10 +24,16 @@ import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.*;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -44,12 +62,39 @@ public class PurchaseFlowIntegrationTest {
     @Autowired
     private PedidoRepository pedidoRepository;
 
+    @Autowired
+    private PedidoVendedorRepository pedidoVendedorRepository;
+
     @Autowired
     private NotificacionRepository notificacionRepository;
 
+    @Autowired
+    private EventoSalidaRepository eventoSalidaRepository;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AlmacenCarritos almacenCarritos;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     private String baseUrl;
     private Usuario compradorUsuario;
     private Usuario vendedorUsuario;
@@ -127,6 +172,24 @@ public class PurchaseFlowIntegrationTest {
         authToken = loginAndGetToken("comprador@test.com", "password123");
     }
 
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        // Let the outbox insert pending vendor notifications before removing the test data
+        for (int i = 0; i < 50 && eventoSalidaRepository.countByEstadoAndTipo(
+                EventoSalida.EstadoEvento.PENDIENTE, EventoSalida.TipoEvento.NOTIFICACION) > 0; i++) {
+            Thread.sleep(100);
+        }
+        pedidoRepository.deleteAll();
+        pedidoVendedorRepository.deleteAllInBatch();
+        notificacionRepository.deleteAll();
+        almacenCarritos.volcar();
+        cartRepository.deleteAll();
+    }
+
+    private User comprador() {
+        return userRepository.findByEmail("comprador@test.com").orElseThrow();
+    }
+
     private String loginAndGetToken(String email, String password) {
         String loginUrl = baseUrl + "/auth/login";
         HttpHeaders headers = new HttpHeaders();
@@ -215,7 +278,7 @@ public class PurchaseFlowIntegrationTest {
     }
 
     @Test
-    public void testVendorNotificationCreation() {
+    public void testVendorNotificationCreation() throws InterruptedException {
         // Arrange
         PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
         detalle.setProductoId(producto.getProductoId());
@@ -239,9 +302,14 @@ public class PurchaseFlowIntegrationTest {
         // Act
         restTemplate.postForEntity(baseUrl + "/pedidos", request, Pedido.class);
 
-        // Assert - Verify vendor received notification
+        // Assert - Verify vendor received notification (dispatched from the outbox after commit)
         List<Notificacion> notificaciones = notificacionRepository
                 .findByUsuarioUsuarioIdOrderByFechaCreacionDesc(vendedorUsuario.getUsuarioId());
+        for (int i = 0; i < 50 && notificaciones.isEmpty(); i++) {
+            Thread.sleep(100);
+            notificaciones = notificacionRepository
+                    .findByUsuarioUsuarioIdOrderByFechaCreacionDesc(vendedorUsuario.getUsuarioId());
+        }
         assertThat(notificaciones).isNotEmpty();
         assertThat(notificaciones.get(0).getTitulo()).isEqualTo("Nueva Orden Recibida");
     }
@@ -251,6 +319,7 @@ public class PurchaseFlowIntegrationTest {
         // Arrange
         PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
         detalle.setProductoId(producto.getProductoId());
+        long eventosAntes = eventoSalidaRepository.count();
         detalle.setCantidad(200); // More than available stock
         detalle.setPrecioUnitario(producto.getPrecio());
 
@@ -274,8 +343,268 @@ public class PurchaseFlowIntegrationTest {
                 request,
                 String.class);
 
-        // Assert
+        // Assert - the rolled back order leaves nothing in the outbox
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
         assertThat(response.getBody()).contains("Stock insuficiente");
+        assertThat(eventoSalidaRepository.count()).isEqualTo(eventosAntes);
+    }
+
+    @Test
+    public void testIdempotencyKeyRetriesCreateOneOrder() throws Exception {
+        // Arrange
+        PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
+        detalle.setProductoId(producto.getProductoId());
+        detalle.setCantidad(2);
+        detalle.setPrecioUnitario(producto.getPrecio());
+
+        PedidoRequest pedidoRequest = new PedidoRequest();
+        pedidoRequest.setDireccionEnvio("Calle Test 123");
+        pedidoRequest.setMetodoPago("Tarjeta");
+        pedidoRequest.setTotal(producto.getPrecio().multiply(new BigDecimal(2)));
+        pedidoRequest.setDetalles(List.of(detalle));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(authToken);
+        headers.set("Idempotency-Key", "retry-test-1");
+        HttpEntity<PedidoRequest> request = new HttpEntity<>(pedidoRequest, headers);
+
+        // Act - the same request retried concurrently
+        int retries = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(retries);
+        List<Future<ResponseEntity<Pedido>>> responses = new ArrayList<>();
+        for (int i = 0; i < retries; i++) {
+            responses.add(executor.submit(() -> {
+                start.await();
+                return restTemplate.postForEntity(baseUrl + "/pedidos", request, Pedido.class);
+            }));
+        }
+        start.countDown();
+
+        // Assert - every retry gets the same order and stock is decremented once
+        Integer pedidoId = null;
+        for (Future<ResponseEntity<Pedido>> response : responses) {
+            assertThat(response.get().getStatusCode()).isEqualTo(HttpStatus.OK);
+            if (pedidoId == null) {
+                pedidoId = response.get().getBody().getPedidoId();
+            }
+            assertThat(response.get().getBody().getPedidoId()).isEqualTo(pedidoId);
+        }
+        executor.shutdown();
+        assertThat(pedidoRepository.count()).isEqualTo(1);
+        assertThat(productoRepository.findById(producto.getProductoId()).orElseThrow().getStock()).isEqualTo(98);
+
+        // Reusing the key with a different body is rejected
+        pedidoRequest.setDireccionEnvio("Otra Calle 456");
+        ResponseEntity<String> reused = restTemplate.postForEntity(baseUrl + "/pedidos",
+                new HttpEntity<>(pedidoRequest, headers), String.class);
+        assertThat(reused.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(reused.getBody()).contains("Idempotency-Key");
+    }
+
+    @Test
+    public void testPaginatedOrderHistoryUsesProjections() {
+        // Arrange - three orders of one line each
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(authToken);
+        for (int i = 1; i <= 3; i++) {
+            PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
+            detalle.setProductoId(producto.getProductoId());
+            detalle.setCantidad(i);
+            detalle.setPrecioUnitario(producto.getPrecio());
+
+            PedidoRequest pedidoRequest = new PedidoRequest();
+            pedidoRequest.setDireccionEnvio("Calle Test " + i);
+            pedidoRequest.setMetodoPago("Tarjeta");
+            pedidoRequest.setTotal(producto.getPrecio().multiply(new BigDecimal(i)));
+            pedidoRequest.setDetalles(List.of(detalle));
+            restTemplate.postForEntity(baseUrl + "/pedidos", new HttpEntity<>(pedidoRequest, headers), Pedido.class);
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long pedidosCargados = statistics.getEntityStatistics(Pedido.class.getName()).getLoadCount();
+        long detallesCargados = statistics.getEntityStatistics(DetallePedido.class.getName()).getLoadCount();
+        long coleccionesCargadas = statistics.getCollectionFetchCount();
+
+        // Act - two pages of two, then the detail of the newest order
+        HttpEntity<Void> request = new HttpEntity<>(headers);
+        ResponseEntity<PedidoPaginaResponse> primera = restTemplate.exchange(
+                baseUrl + "/pedidos/mis-pedidos/pagina?tamano=2", HttpMethod.GET, request, PedidoPaginaResponse.class);
+        ResponseEntity<PedidoPaginaResponse> segunda = restTemplate.exchange(
+                baseUrl + "/pedidos/mis-pedidos/pagina?tamano=2&cursor=" + primera.getBody().getSiguienteCursor(),
+                HttpMethod.GET, request, PedidoPaginaResponse.class);
+        Integer masReciente = primera.getBody().getPedidos().get(0).getPedidoId();
+        ResponseEntity<PedidoDetalleResponse> detalle = restTemplate.exchange(
+                baseUrl + "/pedidos/" + masReciente, HttpMethod.GET, request, PedidoDetalleResponse.class);
+
+        // Assert - newest first, keyset cursor, line count without loading lines
+        assertThat(primera.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(primera.getBody().getPedidos()).extracting(r -> r.getDireccionEnvio())
+                .containsExactly("Calle Test 3", "Calle Test 2");
+        assertThat(primera.getBody().getPedidos()).allMatch(r -> r.getTotalLineas() == 1);
+        assertThat(segunda.getBody().getPedidos()).extracting(r -> r.getDireccionEnvio())
+                .containsExactly("Calle Test 1");
+        assertThat(segunda.getBody().getSiguienteCursor()).isNull();
+
+        assertThat(detalle.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(detalle.getBody().getPedido().getPedidoId()).isEqualTo(masReciente);
+        assertThat(detalle.getBody().getDetalles()).hasSize(1);
+        assertThat(detalle.getBody().getDetalles().get(0).getCantidad()).isEqualTo(3);
+        assertThat(detalle.getBody().getDetalles().get(0).getNombreProducto()).isEqualTo("Producto Test");
+
+        // No entity graph is walked: summaries and lines come from projections only
+        assertThat(statistics.getEntityStatistics(Pedido.class.getName()).getLoadCount()).isEqualTo(pedidosCargados);
+        assertThat(statistics.getEntityStatistics(DetallePedido.class.getName()).getLoadCount())
+                .isEqualTo(detallesCargados);
+        assertThat(statistics.getCollectionFetchCount()).isEqualTo(coleccionesCargadas);
+    }
+
+    @Test
+    public void testVendorOrdersPageFromReadModel() {
+        // Arrange - three orders from the buyer, the oldest one later shipped
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(authToken);
+        List<Integer> pedidoIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
+            detalle.setProductoId(producto.getProductoId());
+            detalle.setCantidad(i);
+            detalle.setPrecioUnitario(producto.getPrecio());
+
+            PedidoRequest pedidoRequest = new PedidoRequest();
+            pedidoRequest.setDireccionEnvio("Calle Vendedor " + i);
+            pedidoRequest.setMetodoPago("Tarjeta");
+            pedidoRequest.setTotal(producto.getPrecio().multiply(new BigDecimal(i)));
+            pedidoRequest.setDetalles(List.of(detalle));
+            pedidoIds.add(restTemplate.postForEntity(baseUrl + "/pedidos", new HttpEntity<>(pedidoRequest, headers),
+                    Pedido.class).getBody().getPedidoId());
+        }
+
+        HttpHeaders vendedorHeaders = new HttpHeaders();
+        vendedorHeaders.setBearerAuth(loginAndGetToken("vendedor@test.com", "password123"));
+        HttpEntity<Void> request = new HttpEntity<>(vendedorHeaders);
+        restTemplate.exchange(baseUrl + "/pedidos/" + pedidoIds.get(0) + "/estado?estado=ENVIADO",
+                HttpMethod.PUT, request, String.class);
+
+        // Act - two pages of two, then only shipped orders
+        ResponseEntity<PedidoVendedorResponse[]> primera = restTemplate.exchange(
+                baseUrl + "/pedidos/vendedor?tamano=2", HttpMethod.GET, request, PedidoVendedorResponse[].class);
+        String cursor = primera.getHeaders().getFirst("X-Siguiente-Cursor");
+        ResponseEntity<PedidoVendedorResponse[]> segunda = restTemplate.exchange(
+                baseUrl + "/pedidos/vendedor?tamano=2&cursor=" + cursor, HttpMethod.GET, request,
+                PedidoVendedorResponse[].class);
+        ResponseEntity<PedidoVendedorResponse[]> enviados = restTemplate.exchange(
+                baseUrl + "/pedidos/vendedor?estado=enviado", HttpMethod.GET, request,
+                PedidoVendedorResponse[].class);
+
+        // Assert - newest first, seller share and buyer copied at order time, status kept in sync
+        assertThat(primera.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(primera.getBody()).extracting(PedidoVendedorResponse::getPedidoId)
+                .containsExactly(pedidoIds.get(2), pedidoIds.get(1));
+        assertThat(primera.getBody()[0].getTotalVendedor()).isEqualByComparingTo("30.00");
+        assertThat(primera.getBody()[0].getUsuario().getEmail()).isEqualTo("comprador@test.com");
+        assertThat(cursor).isNotNull();
+        assertThat(segunda.getBody()).extracting(PedidoVendedorResponse::getPedidoId)
+                .containsExactly(pedidoIds.get(0));
+        assertThat(segunda.getHeaders().containsKey("X-Siguiente-Cursor")).isFalse();
+        assertThat(enviados.getBody()).extracting(PedidoVendedorResponse::getPedidoId)
+                .containsExactly(pedidoIds.get(0));
+        assertThat(enviados.getBody()[0].getEstado()).isEqualTo("ENVIADO");
+    }
+
+    @Test
+    public void testCartCheckoutCreatesOrderFromServerCart() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(authToken);
+        restTemplate.postForEntity(baseUrl + "/cart/items", new HttpEntity<>(
+                "{\"productId\":" + producto.getProductoId() + ",\"quantity\":4}", headers), String.class);
+
+        // Act - the client only sends the address; lines and prices come from the server
+        ResponseEntity<Pedido> response = restTemplate.postForEntity(baseUrl + "/cart/checkout",
+                new HttpEntity<>("{\"shippingAddress\":\"Calle Carrito 1\",\"paymentMethod\":\"Tarjeta\"}",
+                        headers), Pedido.class);
+
+        // Assert
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getTotal()).isEqualByComparingTo("40.00");
+        assertThat(response.getBody().getDireccionEnvio()).isEqualTo("Calle Carrito 1");
+        assertThat(productoRepository.findById(producto.getProductoId()).orElseThrow().getStock()).isEqualTo(96);
+        assertThat(cartService.getCart(comprador()).getItems()).isEmpty();
+
+        // An empty cart is a 400 with the same error body as POST /api/pedidos
+        ResponseEntity<String> empty = restTemplate.postForEntity(baseUrl + "/cart/checkout",
+                new HttpEntity<>("{\"shippingAddress\":\"Calle Carrito 1\"}", headers), String.class);
+        assertThat(empty.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(empty.getBody()).startsWith("Error: ").contains("vacío");
+        assertThat(pedidoRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCartCheckoutErrorsAreBadRequests() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(authToken);
+        restTemplate.postForEntity(baseUrl + "/cart/items", new HttpEntity<>(
+                "{\"productId\":" + producto.getProductoId() + ",\"quantity\":5}", headers), String.class);
+
+        // Missing address fails validation before touching the cart
+        ResponseEntity<String> sinDireccion = restTemplate.postForEntity(baseUrl + "/cart/checkout",
+                new HttpEntity<>("{\"paymentMethod\":\"Tarjeta\"}", headers), String.class);
+        assertThat(sinDireccion.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(sinDireccion.getBody()).contains("shippingAddress");
+
+        // Out of stock: the order is rolled back and the cart keeps its lines
+        producto.setStock(2);
+        producto = productoRepository.save(producto);
+        ResponseEntity<String> sinStock = restTemplate.postForEntity(baseUrl + "/cart/checkout",
+                new HttpEntity<>("{\"shippingAddress\":\"Calle Carrito 2\"}", headers), String.class);
+        assertThat(sinStock.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(sinStock.getBody()).startsWith("Error: ").contains("Stock insuficiente");
+        assertThat(pedidoRepository.count()).isZero();
+        assertThat(cartService.getCart(comprador()).getItems()).extracting(CartItem::getCantidad).containsExactly(5);
+    }
+
+    @Test
+    public void testConcurrentCartCheckoutCreatesOneOrder() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(authToken);
+        restTemplate.postForEntity(baseUrl + "/cart/items", new HttpEntity<>(
+                "{\"productId\":" + producto.getProductoId() + ",\"quantity\":3}", headers), String.class);
+        User comprador = comprador();
+
+        // Arrange - a first checkout stays open until the second one has been tried
+        CountDownLatch abierto = new CountDownLatch(1);
+        CountDownLatch cerrar = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Pedido> primero = executor.submit(() -> transactionTemplate.execute(status -> {
+            Pedido pedido = pedidoService.crearPedidoDesdeCarrito(comprador, "Calle Doble Clic 1", "Tarjeta");
+            abierto.countDown();
+            try {
+                cerrar.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return pedido;
+        }));
+        assertThat(abierto.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // Act
+        ResponseEntity<String> segundo = restTemplate.postForEntity(baseUrl + "/cart/checkout",
+                new HttpEntity<>("{\"shippingAddress\":\"Calle Doble Clic 1\"}", headers), String.class);
+        cerrar.countDown();
+        Pedido pedido = primero.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Assert - one order, stock taken once
+        assertThat(segundo.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(segundo.getBody()).contains("checkout en curso");
+        assertThat(pedidoRepository.count()).isEqualTo(1);
+        assertThat(pedido.getTotal()).isEqualByComparingTo("30.00");
+        assertThat(productoRepository.findById(producto.getProductoId()).orElseThrow().getStock()).isEqualTo(97);
     }
 }
@@ -0,0 +1,330 @@
+package eco.market.integration;
+
+import eco.market.cart.AddItemRequest;
+import eco.market.cart.CartBatchRequest;
+import eco.market.cart.UpdateItemRequest;
+import eco.market.dto.PedidoRequest;
+import eco.market.entity.*;
+import eco.market.model.CartItem;
+import eco.market.model.User;
+import eco.market.repository.*;
+import eco.market.service.AlmacenCarritos;
+import eco.market.service.CartService;
+import eco.market.service.PedidoService;
+import eco.market.service.ReservasCarrito;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "app.carrito.reservas.habilitado=true",
+        "app.carrito.reservas.ttl-segundos=2",
+        "app.carrito.reservas.tick-ms=100",
+        "app.carrito.reservas.ranuras=8"
+})
+@ActiveProfiles("test")
+public class ReservasCarritoIntegrationTest {
+
+    private static final int STOCK_INICIAL = 10;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private ReservasCarrito reservasCarrito;
+
+    @Autowired
+    private ReservaCarritoRepository reservaCarritoRepository;
+
+    @Autowired
+    private AlmacenCarritos almacenCarritos;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private PedidoVendedorRepository pedidoVendedorRepository;
+
+    @Autowired
+    private NotificacionRepository notificacionRepository;
+
+    @Autowired
+    private EventoSalidaRepository eventoSalidaRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    private Usuario comprador;
+    private Usuario vendedor;
+    private Categoria categoria;
+    private Producto producto;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolComprador = rolRepository.findByNombreRol("COMPRADOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("COMPRADOR");
+                    return rolRepository.save(rol);
+                });
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        comprador = nuevoUsuario("reservas-comprador@test.com", rolComprador);
+        vendedor = nuevoUsuario("reservas-vendedor@test.com", rolVendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Reservas Carrito Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+
+        producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto("Producto Reservado");
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal("4.00"));
+        producto.setStock(STOCK_INICIAL);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        producto = productoRepository.save(producto);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        for (int i = 0; i < 50 && eventoSalidaRepository.countByEstadoAndTipo(
+                EventoSalida.EstadoEvento.PENDIENTE, EventoSalida.TipoEvento.NOTIFICACION) > 0; i++) {
+            Thread.sleep(100);
+        }
+        reservaCarritoRepository.deleteAllInBatch();
+        almacenCarritos.volcar();
+        cartRepository.deleteAll();
+        pedidoRepository.deleteAll(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId()));
+        pedidoVendedorRepository.deleteAllInBatch();
+        notificacionRepository.deleteAll();
+        productoRepository.deleteAllInBatch(List.of(producto));
+        usuarioRepository.delete(comprador);
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testReservaDelCarritoVenceYDevuelveStock() throws InterruptedException {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+
+        cartService.addItemToCart(usuario, new AddItemRequest(producto.getProductoId(), 3));
+        cartService.addItemToCart(usuario, new AddItemRequest(producto.getProductoId(), 4));
+
+        // Retenido al añadir: nadie más puede llevarse esas unidades
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 7);
+        assertThat(reservaCarritoRepository.findAll()).extracting(ReservaCarrito::getCantidad).containsExactly(7);
+        assertThatThrownBy(() -> cartService.addItemToCart(usuario, new AddItemRequest(producto.getProductoId(), 4)))
+                .hasMessageContaining("Stock insuficiente");
+
+        // La rueda la libera al vencer
+        for (int i = 0; i < 50 && stock() != STOCK_INICIAL; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(stock()).isEqualTo(STOCK_INICIAL);
+        assertThat(reservaCarritoRepository.count()).isZero();
+    }
+
+    @Test
+    public void testPedidoConsumeLaReservaSinDescontarDosVeces() {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+        cartService.addItemToCart(usuario, new AddItemRequest(producto.getProductoId(), 5));
+
+        pedidoService.crearPedido(pedido(3), comprador.getEmail());
+
+        // 3 salen de la reserva; las otras 2 siguen retenidas hasta que venzan
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 5);
+        assertThat(reservaCarritoRepository.findAll()).extracting(ReservaCarrito::getCantidad).containsExactly(2);
+    }
+
+    @Test
+    public void testCheckoutConvierteElCarritoEnPedido() {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+        cartService.addItemToCart(usuario, new AddItemRequest(producto.getProductoId(), 3));
+
+        Pedido pedido = pedidoService.crearPedidoDesdeCarrito(usuario, "Calle Checkout 1", "Tarjeta");
+
+        // Precio del catálogo y stock descontado una sola vez: la reserva del carrito pasa al pedido
+        assertThat(pedido.getTotal()).isEqualByComparingTo("12.00");
+        assertThat(pedido.getDetalles()).extracting(DetallePedido::getCantidad).containsExactly(3);
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 3);
+        assertThat(reservaCarritoRepository.count()).isZero();
+        assertThat(cartService.getCart(usuario).getItems()).isEmpty();
+
+        assertThatThrownBy(() -> pedidoService.crearPedidoDesdeCarrito(usuario, "Calle Checkout 1", "Tarjeta"))
+                .hasMessageContaining("vacío");
+        assertThat(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId())).hasSize(1);
+    }
+
+    @Test
+    public void testLoteDelCarritoAjustaLaReservaUnaVez() {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+        cartService.addItemToCart(usuario, new AddItemRequest(producto.getProductoId(), 2));
+
+        cartService.applyBatch(usuario, new CartBatchRequest(List.of(
+                new CartBatchRequest.Operation("add", producto.getProductoId(), 5),
+                new CartBatchRequest.Operation("update", producto.getProductoId(), 6))));
+
+        // Solo cuenta la cantidad final del lote
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 6);
+        assertThat(reservaCarritoRepository.findAll()).extracting(ReservaCarrito::getCantidad).containsExactly(6);
+
+        assertThatThrownBy(() -> cartService.applyBatch(usuario, new CartBatchRequest(List.of(
+                new CartBatchRequest.Operation("update", producto.getProductoId(), STOCK_INICIAL + 1)))))
+                .hasMessageContaining("Stock insuficiente");
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 6);
+        assertThat(cartService.getCart(usuario).getItems()).extracting(CartItem::getCantidad).containsExactly(6);
+    }
+
+    @Test
+    public void testCantidadesInvalidasNoTocanElStock() {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+        Integer productoId = producto.getProductoId();
+        cartService.addItemToCart(usuario, new AddItemRequest(productoId, 2));
+
+        assertThatThrownBy(() -> cartService.addItemToCart(usuario, new AddItemRequest(productoId, 0)))
+                .hasMessageContaining("Invalid quantity");
+        assertThatThrownBy(() -> cartService.addItemToCart(usuario, new AddItemRequest(productoId, -3)))
+                .hasMessageContaining("Invalid quantity");
+        assertThatThrownBy(() -> cartService.updateItemQuantity(usuario, productoId, new UpdateItemRequest(-100)))
+                .hasMessageContaining("Invalid quantity");
+        assertThatThrownBy(() -> reservasCarrito.ajustar(comprador.getUsuarioId(), productoId, -100))
+                .hasMessageContaining("Cantidad inválida");
+
+        // Nada se devolvió de más y la reserva sigue igual
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - 2);
+        assertThat(reservaCarritoRepository.findAll()).extracting(ReservaCarrito::getCantidad).containsExactly(2);
+
+        // 0 quita la línea y devuelve exactamente lo retenido
+        cartService.updateItemQuantity(usuario, productoId, new UpdateItemRequest(0));
+        assertThat(stock()).isEqualTo(STOCK_INICIAL);
+        assertThat(reservaCarritoRepository.count()).isZero();
+        assertThat(cartService.getCart(usuario).getItems()).isEmpty();
+    }
+
+    @Test
+    public void testLotesConcurrentesMantienenReservaIgualAlCarrito() throws InterruptedException {
+        User usuario = userRepository.findByEmail(comprador.getEmail()).orElseThrow();
+        Integer productoId = producto.getProductoId();
+        List<CartBatchRequest.Operation> anadir = List.of(new CartBatchRequest.Operation("add", productoId, 1));
+        List<CartBatchRequest.Operation> quitar = List.of(new CartBatchRequest.Operation("remove", productoId, 0));
+
+        // Unos hilos añaden y otros quitan la línea: cada lote falla entero o cambia carrito y reserva juntos
+        int hilos = 8;
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        for (int h = 0; h < hilos; h++) {
+            List<CartBatchRequest.Operation> operaciones = h % 2 == 0 ? anadir : quitar;
+            executor.submit(() -> {
+                salida.await();
+                for (int i = 0; i < 25; i++) {
+                    try {
+                        cartService.applyBatch(usuario, new CartBatchRequest(operaciones));
+                    } catch (RuntimeException e) {
+                        // Sin stock o sin línea que quitar
+                    }
+                }
+                return null;
+            });
+        }
+        salida.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+
+        int enCarrito = cartService.getCart(usuario).getItems().stream().mapToInt(CartItem::getCantidad).sum();
+        int reservado = reservaCarritoRepository.findAll().stream().mapToInt(ReservaCarrito::getCantidad).sum();
+        assertThat(reservado).isEqualTo(enCarrito);
+        assertThat(stock()).isEqualTo(STOCK_INICIAL - enCarrito);
+    }
+
+    @Test
+    public void testReservasDeLaTablaSeRecuperanAlArrancar() throws InterruptedException {
+        // Una reserva que quedó en la tabla de una ejecución anterior, ya vencida
+        producto.setStock(STOCK_INICIAL - 6);
+        producto = productoRepository.save(producto);
+        ReservaCarrito huerfana = new ReservaCarrito();
+        huerfana.setUsuarioId(comprador.getUsuarioId());
+        huerfana.setProductoId(producto.getProductoId());
+        huerfana.setCantidad(6);
+        huerfana.setFechaExpiracion(LocalDateTime.now().minusMinutes(5));
+        reservaCarritoRepository.save(huerfana);
+
+        reservasCarrito.recuperar();
+
+        for (int i = 0; i < 50 && stock() != STOCK_INICIAL; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(stock()).isEqualTo(STOCK_INICIAL);
+        assertThat(reservaCarritoRepository.count()).isZero();
+    }
+
+    private int stock() {
+        return productoRepository.findById(producto.getProductoId()).orElseThrow().getStock();
+    }
+
+    private PedidoRequest pedido(int cantidad) {
+        PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
+        detalle.setProductoId(producto.getProductoId());
+        detalle.setCantidad(cantidad);
+        detalle.setPrecioUnitario(producto.getPrecio());
+
+        PedidoRequest request = new PedidoRequest();
+        request.setDireccionEnvio("Calle Reserva 1");
+        request.setMetodoPago("Tarjeta");
+        request.setTotal(producto.getPrecio().multiply(new BigDecimal(cantidad)));
+        request.setDetalles(List.of(detalle));
+        return request;
+    }
+
+    private Usuario nuevoUsuario(String email, Rol rol) {
+        Usuario usuario = new Usuario();
+        usuario.setNombre("Reservas");
+        usuario.setApellido("Test");
+        usuario.setEmail(email);
+        usuario.setPasswordHash("hashed");
+        usuario.setRol(rol);
+        usuario.setEstaActivo(true);
+        usuario.setEsVerificado(true);
+        return usuarioRepository.save(usuario);
+    }
+}
@@ -0,0 +1,274 @@
+package eco.market.integration;
+
+import eco.market.dto.PedidoRequest;
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.PedidoService;
+import eco.market.service.SecuenciadorVentasFlash;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class VentasFlashIntegrationTest {
+
+    private static final int STOCK_INICIAL = 200;
+    private static final int HILOS = 32;
+    private static final int INTENTOS_POR_HILO = 10;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private SecuenciadorVentasFlash secuenciadorVentasFlash;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private PedidoVendedorRepository pedidoVendedorRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private NotificacionRepository notificacionRepository;
+
+    @Autowired
+    private EventoSalidaRepository eventoSalidaRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Usuario comprador;
+    private Usuario vendedor;
+    private Categoria categoria;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolComprador = rolRepository.findByNombreRol("COMPRADOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("COMPRADOR");
+                    return rolRepository.save(rol);
+                });
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        comprador = nuevoUsuario("flash-comprador@test.com", rolComprador);
+        vendedor = nuevoUsuario("flash-vendedor@test.com", rolVendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Venta Flash Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        // Las notificaciones de los pedidos se insertan en segundo plano
+        for (int i = 0; i < 100 && eventoSalidaRepository.countByEstadoAndTipo(
+                EventoSalida.EstadoEvento.PENDIENTE, EventoSalida.TipoEvento.NOTIFICACION) > 0; i++) {
+            Thread.sleep(100);
+        }
+        pedidoRepository.deleteAll(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId()));
+        pedidoVendedorRepository.deleteAllInBatch();
+        notificacionRepository.deleteAll();
+        productoRepository.deleteAllInBatch(productoRepository.findByVendedor(vendedor));
+        usuarioRepository.delete(comprador);
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+    }
+
+    @Test
+    public void testVentaFlashSinSobreventaPedidosPorSegundo() throws Exception {
+        Producto normal = nuevoProducto("Oferta Fila");
+        Producto flash = nuevoProducto("Oferta Carril");
+        secuenciadorVentasFlash.marcar(flash.getProductoId(), true);
+        long lotesAntes = (long) secuenciadorVentasFlash.metricas().get("lotes");
+
+        try {
+            // Calentamiento de ambos caminos
+            pedidoService.crearPedido(pedido(normal, 1), comprador.getEmail());
+            pedidoService.crearPedido(pedido(flash, 1), comprador.getEmail());
+
+            int[] sinModo = comprarEnParalelo(normal);
+            int[] conModo = comprarEnParalelo(flash);
+            long lotes = (long) secuenciadorVentasFlash.metricas().get("lotes") - lotesAntes;
+
+            System.out.println("Venta flash: " + HILOS * INTENTOS_POR_HILO + " intentos. Sin modo: " + sinModo[0]
+                    + " pedidos en " + sinModo[1] + " ms (" + sinModo[0] * 1000L / Math.max(1, sinModo[1])
+                    + " pedidos/s). Con modo: " + conModo[0] + " pedidos en " + conModo[1] + " ms ("
+                    + conModo[0] * 1000L / Math.max(1, conModo[1]) + " pedidos/s, " + lotes + " lotes)");
+
+            // Se vende exactamente el stock, con menos lotes (y UPDATEs) que intentos de compra
+            assertThat(conModo[0]).isEqualTo(STOCK_INICIAL - 1);
+            // y se despacha en menos tiempo que compitiendo por el bloqueo de la fila
+            assertThat(conModo[0] * 1000L / Math.max(1, conModo[1]))
+                    .isGreaterThan(sinModo[0] * 1000L / Math.max(1, sinModo[1]));
+            assertThat(productoRepository.findById(flash.getProductoId()).orElseThrow().getStock()).isZero();
+            assertThat(lotes).isLessThan(HILOS * INTENTOS_POR_HILO);
+            assertThat(productoRepository.findById(normal.getProductoId()).orElseThrow().getStock())
+                    .isEqualTo(STOCK_INICIAL - 1 - sinModo[0]);
+        } finally {
+            secuenciadorVentasFlash.marcar(flash.getProductoId(), false);
+        }
+    }
+
+    @Test
+    public void testPedidoRevertidoDevuelveStockDelCarril() throws Exception {
+        Producto flash = nuevoProducto("Oferta Revertida");
+        secuenciadorVentasFlash.marcar(flash.getProductoId(), true);
+
+        try {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    pedidoService.crearPedido(pedido(flash, 40), comprador.getEmail());
+                    throw new RuntimeException("Fallo simulado tras reservar");
+                });
+            } catch (RuntimeException e) {
+                assertThat(e.getMessage()).isEqualTo("Fallo simulado tras reservar");
+            }
+
+            // La liberación pasa por el mismo carril que la siguiente compra
+            pedidoService.crearPedido(pedido(flash, STOCK_INICIAL), comprador.getEmail());
+
+            assertThat(productoRepository.findById(flash.getProductoId()).orElseThrow().getStock()).isZero();
+            assertThat(pedidoRepository.findByUsuario_UsuarioId(comprador.getUsuarioId())).hasSize(1);
+        } finally {
+            secuenciadorVentasFlash.marcar(flash.getProductoId(), false);
+        }
+    }
+
+    @Test
+    public void testLiberacionFallidaSeReintentaSinOtraCompra() throws Exception {
+        Producto flash = nuevoProducto("Oferta Bloqueada");
+        CountDownLatch bloqueada = new CountDownLatch(1);
+
+        // Otra transacción retiene la fila más que el tiempo de espera de bloqueo, así que el primer lote falla
+        CompletableFuture<Void> bloqueo = CompletableFuture.runAsync(() ->
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.queryForList("SELECT stock FROM productos WHERE producto_id = ? FOR UPDATE",
+                            Integer.class, flash.getProductoId());
+                    bloqueada.countDown();
+                    try {
+                        Thread.sleep(3000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        assertThat(bloqueada.await(10, TimeUnit.SECONDS)).isTrue();
+
+        secuenciadorVentasFlash.liberar(flash.getProductoId(), 5);
+        bloqueo.get(30, TimeUnit.SECONDS);
+
+        // Sin ninguna compra más, el reintento aplica la liberación en cuanto se suelta la fila
+        int stock = 0;
+        for (int i = 0; i < 100 && (stock = stockDe(flash)) != STOCK_INICIAL + 5; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(stock).isEqualTo(STOCK_INICIAL + 5);
+    }
+
+    private int stockDe(Producto producto) {
+        return productoRepository.findById(producto.getProductoId()).orElseThrow().getStock();
+    }
+
+    // Devuelve {pedidos creados, milisegundos}
+    private int[] comprarEnParalelo(Producto producto) throws InterruptedException {
+        AtomicInteger creados = new AtomicInteger();
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+        for (int h = 0; h < HILOS; h++) {
+            executor.submit(() -> {
+                salida.await();
+                for (int i = 0; i < INTENTOS_POR_HILO; i++) {
+                    try {
+                        pedidoService.crearPedido(pedido(producto, 1), comprador.getEmail());
+                        creados.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // Agotado o bloqueo de la fila: cuenta como intento fallido
+                    }
+                }
+                return null;
+            });
+        }
+        long inicio = System.nanoTime();
+        salida.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(120, TimeUnit.SECONDS)).isTrue();
+        return new int[] { creados.get(), (int) ((System.nanoTime() - inicio) / 1_000_000) };
+    }
+
+    private PedidoRequest pedido(Producto producto, int cantidad) {
+        PedidoRequest.DetallePedidoRequest detalle = new PedidoRequest.DetallePedidoRequest();
+        detalle.setProductoId(producto.getProductoId());
+        detalle.setCantidad(cantidad);
+        detalle.setPrecioUnitario(producto.getPrecio());
+
+        PedidoRequest request = new PedidoRequest();
+        request.setDireccionEnvio("Calle Flash 1");
+        request.setMetodoPago("Tarjeta");
+        request.setTotal(producto.getPrecio().multiply(new BigDecimal(cantidad)));
+        request.setDetalles(List.of(detalle));
+        return request;
+    }
+
+    private Producto nuevoProducto(String nombre) {
+        Producto producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto(nombre);
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal("3.00"));
+        producto.setStock(STOCK_INICIAL);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        return productoRepository.save(producto);
+    }
+
+    private Usuario nuevoUsuario(String email, Rol rol) {
+        Usuario usuario = new Usuario();
+        usuario.setNombre("Flash");
+        usuario.setApellido("Test");
+        usuario.setEmail(email);
+        usuario.setPasswordHash("hashed");
+        usuario.setRol(rol);
+        usuario.setEstaActivo(true);
+        usuario.setEsVerificado(true);
+        return usuarioRepository.save(usuario);
+    }
+}
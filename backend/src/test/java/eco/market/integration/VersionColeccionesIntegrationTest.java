@@ -0,0 +1,198 @@
+package eco.market.integration;
+
+import eco.market.dto.CuponRequest;
+import eco.market.entity.*;
+import eco.market.repository.*;
+import eco.market.service.CatalogoService;
+import eco.market.service.CuponService;
+import eco.market.service.ProductoService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.*;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class VersionColeccionesIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private CatalogoService catalogoService;
+
+    @Autowired
+    private CuponService cuponService;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private CuponRepository cuponRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    private Usuario vendedor;
+    private Categoria categoria;
+
+    @BeforeEach
+    public void setUp() {
+        Rol rolVendedor = rolRepository.findByNombreRol("VENDEDOR")
+                .orElseGet(() -> {
+                    Rol rol = new Rol();
+                    rol.setNombreRol("VENDEDOR");
+                    return rolRepository.save(rol);
+                });
+
+        vendedor = new Usuario();
+        vendedor.setNombre("Etag");
+        vendedor.setApellido("Vendedor");
+        vendedor.setEmail("etag@test.com");
+        vendedor.setPasswordHash("hashed");
+        vendedor.setRol(rolVendedor);
+        vendedor.setEstaActivo(true);
+        vendedor.setEsVerificado(true);
+        vendedor = usuarioRepository.save(vendedor);
+
+        categoria = new Categoria();
+        categoria.setNombreCategoria("Etag Test");
+        categoria.setEstaActiva(true);
+        categoria = categoriaRepository.save(categoria);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productoRepository.deleteAllInBatch(productoRepository.findByVendedor(vendedor));
+        usuarioRepository.delete(vendedor);
+        categoriaRepository.delete(categoria);
+        cuponRepository.findByCodigo("ETAGTEST").ifPresent(cuponRepository::delete);
+        catalogoService.recargar();
+    }
+
+    @Test
+    public void testProductosDevuelve304HastaQueCambiaElCatalogo() throws InterruptedException {
+        Producto producto = new Producto();
+        producto.setVendedor(vendedor);
+        producto.setCategoria(categoria);
+        producto.setNombreProducto("Etag Producto");
+        producto.setDescripcion("Test");
+        producto.setPrecio(new BigDecimal("2.00"));
+        producto.setStock(10);
+        producto.setEstaActivo(true);
+        producto.setEstaVerificado(true);
+        producto = productoRepository.save(producto);
+        catalogoService.recargar();
+
+        ResponseEntity<String> inicial = get("/api/productos", null);
+        assertThat(inicial.getStatusCode()).isEqualTo(HttpStatus.OK);
+        String etag = inicial.getHeaders().getETag();
+        assertThat(etag).isNotNull();
+        assertThat(inicial.getHeaders().getLastModified()).isPositive();
+
+        ResponseEntity<String> condicional = get("/api/productos", etag);
+        assertThat(condicional.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(condicional.getBody()).isNull();
+
+        productoService.eliminarProducto(producto.getProductoId(), vendedor.getEmail());
+
+        // El catálogo se actualiza en su propio hilo, poco después del commit
+        ResponseEntity<String> cambiada = get("/api/productos", etag);
+        for (int i = 0; i < 50 && cambiada.getStatusCode() == HttpStatus.NOT_MODIFIED; i++) {
+            Thread.sleep(20);
+            cambiada = get("/api/productos", etag);
+        }
+        assertThat(cambiada.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cambiada.getHeaders().getETag()).isNotNull().isNotEqualTo(etag);
+        assertThat(cambiada.getBody()).doesNotContain("Etag Producto");
+    }
+
+    @Test
+    public void testCategoriasDevuelve304HastaQueSeRecarga() {
+        ResponseEntity<String> inicial = get("/api/categorias", null);
+        assertThat(inicial.getStatusCode()).isEqualTo(HttpStatus.OK);
+        String etag = inicial.getHeaders().getETag();
+
+        assertThat(get("/api/categorias", etag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        catalogoService.recargar();
+
+        ResponseEntity<String> cambiada = get("/api/categorias", etag);
+        assertThat(cambiada.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cambiada.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(cambiada.getBody()).contains("Etag Test");
+    }
+
+    @Test
+    public void testCuponesDevuelve304HastaQueCambianLosCupones() {
+        ResponseEntity<String> inicial = get("/api/cupones/activos", null);
+        assertThat(inicial.getStatusCode()).isEqualTo(HttpStatus.OK);
+        String etag = inicial.getHeaders().getETag();
+        assertThat(etag).isNotNull();
+
+        ResponseEntity<String> condicional = get("/api/cupones/activos", etag);
+        assertThat(condicional.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(condicional.getBody()).isNull();
+
+        CuponRequest request = new CuponRequest();
+        request.setCodigo("etagtest");
+        request.setDescripcion("Test");
+        request.setTipoDescuento("porcentaje");
+        request.setValorDescuento(new BigDecimal("10"));
+        request.setUsosMaximos(5);
+        request.setFechaInicio(LocalDateTime.now().minusDays(1));
+        request.setFechaFin(LocalDateTime.now().plusDays(1));
+        Cupon cupon = cuponService.crearCupon(request);
+
+        ResponseEntity<String> creado = get("/api/cupones/activos", etag);
+        assertThat(creado.getStatusCode()).isEqualTo(HttpStatus.OK);
+        String etagCreado = creado.getHeaders().getETag();
+        assertThat(etagCreado).isNotNull().isNotEqualTo(etag);
+        assertThat(creado.getBody()).contains("ETAGTEST");
+        assertThat(get("/api/cupones/activos", etagCreado).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        // Cada uso cambia usosActuales, así que también invalida la lista
+        cuponService.aplicarCupon("ETAGTEST");
+        ResponseEntity<String> usado = get("/api/cupones/activos", etagCreado);
+        assertThat(usado.getStatusCode()).isEqualTo(HttpStatus.OK);
+        String etagUsado = usado.getHeaders().getETag();
+        assertThat(etagUsado).isNotNull().isNotEqualTo(etagCreado);
+
+        cuponService.eliminarCupon(cupon.getCuponId());
+        ResponseEntity<String> eliminado = get("/api/cupones/activos", etagUsado);
+        assertThat(eliminado.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(eliminado.getHeaders().getETag()).isNotEqualTo(etagUsado);
+        assertThat(eliminado.getBody()).doesNotContain("ETAGTEST");
+    }
+
+    private ResponseEntity<String> get(String ruta, String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        if (etag != null) {
+            headers.setIfNoneMatch(etag);
+        }
+        return restTemplate.exchange("http://localhost:" + port + ruta, HttpMethod.GET,
+                new HttpEntity<>(headers), String.class);
+    }
+}
@@ -10,7 +10,6 @@ interface Order {
     fechaPedido: string;
     estado: string;
     total: number;
-    detalles: any[];
     usuario: {
         nombre: string;
         apellido: string;
@@ -26,15 +25,19 @@ interface SellerOrdersProps {
 export function SellerOrders({ onNavigate }: SellerOrdersProps) {
     const [orders, setOrders] = useState<Order[]>([]);
     const [loading, setLoading] = useState(true);
+    // Cursor de la siguiente página; null cuando ya no quedan pedidos por cargar
+    const [siguienteCursor, setSiguienteCursor] = useState<string | null>(null);
+    const [cargandoMas, setCargandoMas] = useState(false);
 
     useEffect(() => {
         cargarPedidos();
     }, []);
 
-    const cargarPedidos = async () => {
+    const cargarPedidos = async (cursor?: string) => {
         try {
             const token = localStorage.getItem("token");
-            const response = await fetch(`${API_URL}/pedidos/vendedor`, {
+            const query = cursor ? `?cursor=${encodeURIComponent(cursor)}` : "";
+            const response = await fetch(`${API_URL}/pedidos/vendedor${query}`, {
                 headers: {
                     "Authorization": `Bearer ${token}`
                 }
@@ -42,7 +45,8 @@ export function SellerOrders({ onNavigate }: SellerOrdersProps) {
 
             if (response.ok) {
                 const data = await response.json();
-                setOrders(data);
+                setOrders((prev) => (cursor ? [...prev, ...data] : data));
+                setSiguienteCursor(response.headers.get("X-Siguiente-Cursor"));
             } else {
                 console.error("Error loading orders");
             }
@@ -53,6 +57,13 @@ export function SellerOrders({ onNavigate }: SellerOrdersProps) {
         }
     };
 
+    const cargarMas = async () => {
+        if (!siguienteCursor) return;
+        setCargandoMas(true);
+        await cargarPedidos(siguienteCursor);
+        setCargandoMas(false);
+    };
+
     const handleUpdateStatus = async (id: number, newStatus: string) => {
         try {
             const token = localStorage.getItem("token");
@@ -64,8 +75,8 @@ export function SellerOrders({ onNavigate }: SellerOrdersProps) {
             });
 
             if (response.ok) {
-                // Reload orders after successful update
-                cargarPedidos();
+                // Update in place so the pages already loaded are kept
+                setOrders((prev) => prev.map((o) => (o.pedidoId === id ? { ...o, estado: newStatus } : o)));
             } else {
                 alert("Error al actualizar el estado del pedido");
             }
@@ -145,6 +156,14 @@ export function SellerOrders({ onNavigate }: SellerOrdersProps) {
                         </Card>
                     ))}
                 </div>
+
+                {siguienteCursor && (
+                    <div className="flex justify-center mt-8">
+                        <Button variant="outline" onClick={cargarMas} disabled={cargandoMas}>
+                            {cargandoMas ? "Cargando..." : "Cargar más pedidos"}
+                        </Button>
+                    </div>
+                )}
             </div>
         </div>
     );